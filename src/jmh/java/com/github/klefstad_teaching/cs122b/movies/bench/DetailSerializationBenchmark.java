@@ -0,0 +1,45 @@
+package com.github.klefstad_teaching.cs122b.movies.bench;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.klefstad_teaching.cs122b.movies.model.response.MovieGetByMovieIdResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of writing the {@code GET /movie/{movieId}} body.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DetailSerializationBenchmark
+{
+    private ObjectMapper              mapper;
+    private MovieGetByMovieIdResponse response;
+
+    @Setup
+    public void setup() throws JsonProcessingException
+    {
+        mapper = new ObjectMapper();
+        response = mapper.readValue(Fixtures.movieById(), MovieGetByMovieIdResponse.class);
+    }
+
+    @Benchmark
+    public byte[] serializeMovieDetail() throws JsonProcessingException
+    {
+        return mapper.writeValueAsBytes(response);
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.klefstad_teaching.cs122b.movies.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Payloads captured in {@code src/test/resources/expected-models.json},
+ * stretched to any row count by cycling through the captured rows.
+ */
+final class Fixtures
+{
+    private static final JsonNode MODELS = load();
+
+    private Fixtures()
+    {
+    }
+
+    static String movies(ObjectMapper mapper, int rows)
+    {
+        return repeat(mapper, rows, "moviesSearchFullDefaultLimit", "moviesSearchFullDefaultLimitPage");
+    }
+
+    static String persons(ObjectMapper mapper, int rows)
+    {
+        return repeat(mapper, rows, "personSearchDefaultLimit", "personSearchDefaultLimitPage");
+    }
+
+    static String movieById()
+    {
+        return MODELS.get("movieById").toString();
+    }
+
+    private static String repeat(ObjectMapper mapper, int rows, String... models)
+    {
+        ArrayNode source = mapper.createArrayNode();
+        for (String model : models)
+        {
+            source.addAll((ArrayNode) MODELS.get(model));
+        }
+
+        ArrayNode out = mapper.createArrayNode();
+        for (int i = 0; i < rows; i++)
+        {
+            out.add(source.get(i % source.size()));
+        }
+        return out.toString();
+    }
+
+    private static JsonNode load()
+    {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/expected-models.json")) {
+            return new ObjectMapper().readTree(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.klefstad_teaching.cs122b.movies.bench;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.klefstad_teaching.cs122b.movies.repo.entity.Movie;
+import com.github.klefstad_teaching.cs122b.movies.repo.entity.PersonSearchModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a JSON_ARRAYAGG page back into entities, as the
+ * {@code json} result mapping does for every search.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonParseBenchmark
+{
+    @Param({"10", "25", "50", "100"})
+    public int rows;
+
+    private ObjectMapper mapper;
+    private String       movies;
+    private String       persons;
+
+    @Setup
+    public void setup()
+    {
+        mapper = new ObjectMapper();
+        movies = Fixtures.movies(mapper, rows);
+        persons = Fixtures.persons(mapper, rows);
+    }
+
+    @Benchmark
+    public Movie[] parseMovies() throws JsonProcessingException
+    {
+        return mapper.readValue(movies, Movie[].class);
+    }
+
+    @Benchmark
+    public PersonSearchModel[] parsePersons() throws JsonProcessingException
+    {
+        return mapper.readValue(persons, PersonSearchModel[].class);
+    }
+}
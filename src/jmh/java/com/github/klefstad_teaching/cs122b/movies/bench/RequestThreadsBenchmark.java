@@ -0,0 +1,209 @@
+package com.github.klefstad_teaching.cs122b.movies.bench;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.klefstad_teaching.cs122b.movies.config.MoviesServiceConfig;
+import com.github.klefstad_teaching.cs122b.movies.metrics.RepoMetrics;
+import com.github.klefstad_teaching.cs122b.movies.repo.Bulkheads;
+import com.github.klefstad_teaching.cs122b.movies.repo.LimitedDataSource;
+import com.github.klefstad_teaching.cs122b.movies.repo.MovieRepo;
+import com.github.klefstad_teaching.cs122b.movies.repo.QueryShapeCache;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.CastIndex;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.CreditGraph;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.FuzzyNameIndex;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.GenreDictionary;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.MovieCatalog;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.SubstringIndex;
+import com.github.klefstad_teaching.cs122b.movies.util.Validate;
+import com.github.klefstad_teaching.cs122b.movies.util.VirtualThreads;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Platform-thread pool against virtual threads for a burst of blocking
+ * requests. Each request waits {@code ioMillis} outside the database
+ * (auth, slow client, downstream call), then looks a person up through
+ * {@link MovieRepo#getPersonByPersonId} on a pool of {@code permits}
+ * connections behind a {@link LimitedDataSource}, as requests do under
+ * {@code movie.requests.threads}. The platform pool has Tomcat's default
+ * 200 threads.
+ *
+ * <p>Needs the MySQL of {@code application.yml} with the movies schema
+ * loaded, reached as {@code DB_USERNAME} / {@code DB_PASSWORD}.
+ *
+ * <p>The score is the time to drain a burst of {@code concurrency}
+ * requests, so lower is higher throughput; per-request p50/p99/p999 and
+ * failed lookups for the last iteration are printed at tear-down. Below
+ * Java 21 the virtual mode is skipped: its iterations return at once and
+ * say so at tear-down.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestThreadsBenchmark
+{
+    private static final int PLATFORM_THREADS = 200;
+
+    private static final long ROBERT_DOWNEY_JR_ID = 3223;
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"1000", "5000"})
+    public int concurrency;
+
+    @Param({"0", "20"})
+    public int ioMillis;
+
+    @Param({"10"})
+    public int permits;
+
+    private boolean          skipped;
+    private ExecutorService  executor;
+    private HikariDataSource pool;
+    private MovieRepo        repo;
+    private long[]           latencies;
+    private AtomicInteger    recorded;
+    private AtomicInteger    failed;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        latencies = new long[1 << 22];
+        recorded = new AtomicInteger();
+        failed = new AtomicInteger();
+
+        skipped = threads.equals("virtual") && !VirtualThreads.isSupported();
+        if (skipped)
+        {
+            return;
+        }
+        executor = threads.equals("virtual")
+                   ? VirtualThreads.newThreadPerTaskExecutor()
+                   : Executors.newFixedThreadPool(PLATFORM_THREADS);
+
+        pool = new HikariDataSource();
+        pool.setJdbcUrl("jdbc:mysql://localhost:3306");
+        pool.setUsername(System.getenv("DB_USERNAME"));
+        pool.setPassword(System.getenv("DB_PASSWORD"));
+        pool.setMaximumPoolSize(permits);
+        pool.setMinimumIdle(permits);
+        pool.setConnectionTimeout(60_000);
+        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(new LimitedDataSource(pool, permits, 60_000));
+
+        // As shipped in application.yml; every other setting keeps its @DefaultValue
+        MoviesServiceConfig config = new Binder(new MapConfigurationPropertySource(Map.of(
+            "movie.result-mapping", "rows"
+        ))).bind("movie", MoviesServiceConfig.class).get();
+
+        Bulkheads bulkheads = new Bulkheads(config, new SimpleMeterRegistry());
+        CreditGraph creditGraph = new CreditGraph(template, config, bulkheads);
+        repo = new MovieRepo(new ObjectMapper(), template, config, new Validate(),
+                             new MovieCatalog(template, config, bulkheads), new SubstringIndex(template, config, bulkheads),
+                             new QueryShapeCache(), new RepoMetrics(new SimpleMeterRegistry()), new GenreDictionary(template),
+                             new CastIndex(template, creditGraph, bulkheads, config), new FuzzyNameIndex(template, config, bulkheads),
+                             creditGraph);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetLatencies()
+    {
+        recorded.set(0);
+        failed.set(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        if (skipped)
+        {
+            System.out.printf("%nvirtual threads: skipped, they need Java 21 or later, running %s%n",
+                              System.getProperty("java.version"));
+            return;
+        }
+        executor.shutdownNow();
+        pool.close();
+
+        long[] sorted = Arrays.copyOf(latencies, Math.min(recorded.get(), latencies.length));
+        Arrays.sort(sorted);
+        if (sorted.length > 0)
+        {
+            System.out.printf("%n%s threads: p50 %.2f ms, p99 %.2f ms, p999 %.2f ms over %d requests, %d failed%n",
+                              threads,
+                              sorted[(int) (sorted.length * 0.5)] / 1e6,
+                              sorted[(int) (sorted.length * 0.99)] / 1e6,
+                              sorted[(int) (sorted.length * 0.999)] / 1e6,
+                              sorted.length,
+                              failed.get());
+        }
+    }
+
+    @Benchmark
+    public void burst() throws InterruptedException
+    {
+        if (skipped)
+        {
+            return;
+        }
+
+        CountDownLatch done = new CountDownLatch(concurrency);
+        for (int i = 0; i < concurrency; i++)
+        {
+            long submitted = System.nanoTime();
+            executor.execute(() -> {
+                try {
+                    request();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (JsonProcessingException | RuntimeException e) {
+                    failed.incrementAndGet();
+                } finally {
+                    int slot = recorded.getAndIncrement();
+                    if (slot < latencies.length)
+                    {
+                        latencies[slot] = System.nanoTime() - submitted;
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+
+    private void request() throws InterruptedException, JsonProcessingException
+    {
+        if (ioMillis > 0)
+        {
+            Thread.sleep(ioMillis);
+        }
+
+        repo.getPersonByPersonId(ROBERT_DOWNEY_JR_ID, false);
+    }
+}
@@ -0,0 +1,187 @@
+package com.github.klefstad_teaching.cs122b.movies.bench;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.klefstad_teaching.cs122b.movies.config.MoviesServiceConfig;
+import com.github.klefstad_teaching.cs122b.movies.metrics.RepoMetrics;
+import com.github.klefstad_teaching.cs122b.movies.repo.Bulkheads;
+import com.github.klefstad_teaching.cs122b.movies.repo.MovieRepo;
+import com.github.klefstad_teaching.cs122b.movies.repo.QueryShapeCache;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.CastIndex;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.CreditGraph;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.FuzzyNameIndex;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.GenreDictionary;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.MovieCatalog;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.SubstringIndex;
+import com.github.klefstad_teaching.cs122b.movies.repo.entity.Genre;
+import com.github.klefstad_teaching.cs122b.movies.repo.entity.Movie;
+import com.github.klefstad_teaching.cs122b.movies.repo.entity.MovieQuery;
+import com.github.klefstad_teaching.cs122b.movies.util.Validate;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Everything {@link MovieRepo#searchMovies} does on the Java side for each
+ * combination of title, year, director and genre filters: validation,
+ * binding, shape lookup and parsing an empty page. The template never
+ * touches a database, so only the repo's own overhead is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchSqlBenchmark
+{
+    private static final int TITLE    = 1;
+    private static final int YEAR     = 1 << 1;
+    private static final int DIRECTOR = 1 << 2;
+    private static final int GENRE    = 1 << 3;
+
+    /**
+     * Bitmask of the filters present: title, year, director, genre.
+     */
+    @Param({"0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13", "14", "15"})
+    public int filters;
+
+    private ObjectMapper        mapper;
+    private MovieRepo           repo;
+    private MovieQuery          query;
+    private StubTemplate        template;
+    private MoviesServiceConfig config;
+    private Bulkheads           bulkheads;
+    private Validate            validate;
+    private MovieCatalog        catalog;
+    private SubstringIndex      substringIndex;
+    private RepoMetrics         metrics;
+    private GenreDictionary     genres;
+    private CastIndex           castIndex;
+    private FuzzyNameIndex      fuzzyNames;
+    private CreditGraph         creditGraph;
+
+    @Setup
+    public void setup()
+    {
+        template = new StubTemplate();
+
+        // Every other setting keeps its @DefaultValue
+        config = new Binder(new MapConfigurationPropertySource(Map.of(
+            "movie.result-mapping", "json"
+        ))).bind("movie", MoviesServiceConfig.class).get();
+
+        mapper = new ObjectMapper();
+        validate = new Validate();
+        bulkheads = new Bulkheads(config, new SimpleMeterRegistry());
+        catalog = new MovieCatalog(template, config, bulkheads);
+        substringIndex = new SubstringIndex(template, config, bulkheads);
+        metrics = new RepoMetrics(new SimpleMeterRegistry());
+        genres = new GenreDictionary(template);
+        genres.reload();
+        fuzzyNames = new FuzzyNameIndex(template, config, bulkheads);
+        creditGraph = new CreditGraph(template, config, bulkheads);
+        castIndex = new CastIndex(template, creditGraph, bulkheads, config);
+        repo = repo(new QueryShapeCache());
+
+        query = new MovieQuery();
+        if ((filters & TITLE) != 0)
+        {
+            query.setTitle("love");
+        }
+        if ((filters & YEAR) != 0)
+        {
+            query.setYear(2010);
+        }
+        if ((filters & DIRECTOR) != 0)
+        {
+            query.setDirector("nolan");
+        }
+        if ((filters & GENRE) != 0)
+        {
+            query.setGenre("drama");
+        }
+    }
+
+    /**
+     * Steady state: the shape's SQL is already cached.
+     */
+    @Benchmark
+    public String searchMovies() throws JsonProcessingException
+    {
+        Movie[] movies = repo.searchMovies(query, false);
+        return template.lastSql + movies.length;
+    }
+
+    /**
+     * First request of a shape: the SQL text is built from scratch.
+     */
+    @Benchmark
+    public String searchMoviesColdShape() throws JsonProcessingException
+    {
+        Movie[] movies = repo(new QueryShapeCache()).searchMovies(query, false);
+        return template.lastSql + movies.length;
+    }
+
+    private MovieRepo repo(QueryShapeCache shapes)
+    {
+        return new MovieRepo(mapper, template, config, validate, catalog, substringIndex, shapes, metrics, genres, castIndex, fuzzyNames, creditGraph);
+    }
+
+    /**
+     * Records the statement text and answers every query with an empty
+     * JSON array. The only list query made is the genre dictionary load,
+     * which gets a fixed pair of genres.
+     */
+    private static final class StubTemplate extends NamedParameterJdbcTemplate
+    {
+        private String lastSql;
+
+        private StubTemplate()
+        {
+            super(new JdbcTemplate());
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T queryForObject(String sql, SqlParameterSource paramSource, RowMapper<T> rowMapper)
+        {
+            lastSql = sql;
+            return (T) "[]";
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> query(String sql, SqlParameterSource paramSource, RowMapper<T> rowMapper)
+        {
+            return (List<T>) List.of(genre(28, "Action"), genre(18, "Drama"));
+        }
+
+        private static Genre genre(long id, String name)
+        {
+            Genre genre = new Genre();
+            genre.setId(id);
+            genre.setName(name);
+            return genre;
+        }
+    }
+}
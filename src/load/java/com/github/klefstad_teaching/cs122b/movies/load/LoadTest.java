@@ -0,0 +1,372 @@
+package com.github.klefstad_teaching.cs122b.movies.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a request mix against a running MoviesService and reports
+ * throughput, latency percentiles and error rates per endpoint.
+ *
+ * <p>Without {@code --rate} the test is closed-loop: {@code --concurrency}
+ * workers each send the next request as soon as the last one returns. With
+ * {@code --rate} it is open-loop: requests are scheduled at that many per
+ * second (Poisson arrivals unless {@code --arrivals uniform}) whether or not
+ * earlier ones have returned, with at most {@code --concurrency} in flight.
+ * Latency is measured from the scheduled time, so time spent queued behind
+ * a slow server counts against it.
+ *
+ * <pre>
+ * mvn -P load test-compile exec:exec -Dload.args="--rate 200 --duration 120"
+ * </pre>
+ *
+ * Options: {@code --base-url}, {@code --workload} (repeatable),
+ * {@code --postman}, {@code --var key=value} (repeatable), {@code --users},
+ * {@code --concurrency}, {@code --rate}, {@code --arrivals},
+ * {@code --duration}, {@code --warmup}, {@code --timeout}, {@code --seed},
+ * {@code --out}.
+ */
+public final class LoadTest
+{
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpClient          client;
+    private final Workload            workload;
+    private final Map<String, String> tokens;
+    private final String              baseUrl;
+    private final Duration            timeout;
+
+    private final ConcurrentMap<String, EndpointStats> stats = new ConcurrentHashMap<>();
+
+    private volatile long measureFrom;
+
+    private LoadTest(Workload workload, Map<String, String> tokens, String baseUrl, Duration timeout)
+    {
+        this.client = HttpClient.newBuilder()
+                                .version(HttpClient.Version.HTTP_1_1)
+                                .connectTimeout(timeout)
+                                .build();
+        this.workload = workload;
+        this.tokens = tokens;
+        this.baseUrl = baseUrl;
+        this.timeout = timeout;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        Map<String, List<String>> options = parse(args);
+
+        List<Workload.Request> requests = new ArrayList<>();
+        Map<String, String> variables = new HashMap<>();
+        for (String variable : options.getOrDefault("var", List.of()))
+        {
+            int eq = variable.indexOf('=');
+            variables.put(variable.substring(0, eq), variable.substring(eq + 1));
+        }
+        for (String file : options.getOrDefault("postman", List.of()))
+        {
+            requests.addAll(Workload.fromPostman(MAPPER, Paths.get(file), variables));
+        }
+        List<String> workloads = options.getOrDefault("workload", options.containsKey("postman")
+                                                                  ? List.of()
+                                                                  : List.of("src/load/resources/workload.jsonl"));
+        for (String file : workloads)
+        {
+            requests.addAll(Workload.fromJsonLines(MAPPER, Paths.get(file)));
+        }
+
+        LoadTest test = new LoadTest(
+            new Workload(requests),
+            tokens(Paths.get(option(options, "users", "src/test/resources/users.json"))),
+            option(options, "base-url", "http://localhost:8082"),
+            Duration.ofMillis(Long.parseLong(option(options, "timeout", "10000")))
+        );
+
+        int concurrency = Integer.parseInt(option(options, "concurrency", "16"));
+        double rate = Double.parseDouble(option(options, "rate", "0"));
+        boolean poisson = !option(options, "arrivals", "poisson").equals("uniform");
+        long warmup = Long.parseLong(option(options, "warmup", "10"));
+        long duration = Long.parseLong(option(options, "duration", "60"));
+        long seed = Long.parseLong(option(options, "seed", String.valueOf(System.nanoTime())));
+
+        System.out.printf(Locale.ROOT, "%d requests in mix, %s, concurrency %d, warmup %ds, duration %ds%n",
+                          requests.size(),
+                          rate > 0 ? String.format(Locale.ROOT, "open loop at %.1f req/s", rate) : "closed loop",
+                          concurrency, warmup, duration);
+
+        long start = System.nanoTime();
+        test.measureFrom = start + Duration.ofSeconds(warmup).toNanos();
+        long end = test.measureFrom + Duration.ofSeconds(duration).toNanos();
+
+        if (rate > 0)
+        {
+            test.openLoop(rate, poisson, concurrency, end, new Random(seed));
+        }
+        else
+        {
+            test.closedLoop(concurrency, end, seed);
+        }
+
+        double seconds = (System.nanoTime() - test.measureFrom) / 1e9;
+        test.report(seconds);
+
+        if (options.containsKey("out"))
+        {
+            MAPPER.writerWithDefaultPrettyPrinter().writeValue(Paths.get(option(options, "out", null)).toFile(), test.summary(seconds));
+        }
+    }
+
+    private void closedLoop(int concurrency, long end, long seed) throws InterruptedException
+    {
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++)
+        {
+            Random random = new Random(seed + i);
+            Thread worker = new Thread(() -> {
+                while (System.nanoTime() < end)
+                {
+                    Workload.Request request = workload.next(random);
+                    long scheduled = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = client.send(build(request), HttpResponse.BodyHandlers.discarding());
+                        record(request, scheduled, response.statusCode());
+                    } catch (IOException e) {
+                        record(request, scheduled, -1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }, "load-" + i);
+            worker.start();
+            workers.add(worker);
+        }
+
+        for (Thread worker : workers)
+        {
+            worker.join();
+        }
+    }
+
+    private void openLoop(double rate, boolean poisson, int concurrency, long end, Random random) throws InterruptedException
+    {
+        Semaphore inFlight = new Semaphore(concurrency);
+        double meanGap = 1e9 / rate;
+        long scheduled = System.nanoTime();
+
+        while (true)
+        {
+            scheduled += (long) (poisson ? -Math.log(1 - random.nextDouble()) * meanGap : meanGap);
+            if (scheduled >= end)
+            {
+                break;
+            }
+
+            long wait;
+            while ((wait = scheduled - System.nanoTime()) > 0)
+            {
+                LockSupport.parkNanos(wait);
+            }
+
+            inFlight.acquire();
+            Workload.Request request = workload.next(random);
+            long at = scheduled;
+            client.sendAsync(build(request), HttpResponse.BodyHandlers.discarding())
+                  .whenComplete((response, error) -> {
+                      record(request, at, error == null ? response.statusCode() : -1);
+                      inFlight.release();
+                  });
+        }
+
+        inFlight.acquire(concurrency);
+    }
+
+    private HttpRequest build(Workload.Request request)
+    {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + request.pathAndQuery))
+                                                 .timeout(timeout)
+                                                 .method(request.method, HttpRequest.BodyPublishers.noBody());
+        String token = tokens.get(request.role.toLowerCase(Locale.ROOT));
+        if (token != null)
+        {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Records one response, or a transport failure as status {@code -1}.
+     * Anything scheduled before the warmup ended is discarded.
+     */
+    private void record(Workload.Request request, long scheduled, int status)
+    {
+        if (scheduled < measureFrom)
+        {
+            return;
+        }
+
+        long micros = (System.nanoTime() - scheduled) / 1_000;
+        stats.computeIfAbsent(request.endpoint, endpoint -> new EndpointStats())
+             .record(micros, status, status == request.expect);
+    }
+
+    private void report(double seconds)
+    {
+        System.out.printf(Locale.ROOT, "%n%-36s %9s %9s %9s %9s %9s %9s %8s%n",
+                          "endpoint", "requests", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "errors");
+
+        EndpointStats total = new EndpointStats();
+        for (Map.Entry<String, EndpointStats> entry : new TreeMap<>(stats).entrySet())
+        {
+            printRow(entry.getKey(), entry.getValue(), seconds);
+            total.merge(entry.getValue());
+        }
+        printRow("TOTAL", total, seconds);
+
+        for (Map.Entry<String, EndpointStats> entry : new TreeMap<>(stats).entrySet())
+        {
+            if (entry.getValue().errors.get() > 0)
+            {
+                System.out.println(entry.getKey() + " statuses: " + new TreeMap<>(entry.getValue().statuses));
+            }
+        }
+    }
+
+    private static void printRow(String endpoint, EndpointStats stats, double seconds)
+    {
+        long count = stats.latency.count();
+        System.out.printf(Locale.ROOT, "%-36s %9d %9.1f %9.2f %9.2f %9.2f %9.2f %7.2f%%%n",
+                          endpoint, count, count / seconds,
+                          stats.latency.percentile(0.5) / 1e3,
+                          stats.latency.percentile(0.99) / 1e3,
+                          stats.latency.percentile(0.999) / 1e3,
+                          stats.latency.max() / 1e3,
+                          count == 0 ? 0.0 : 100.0 * stats.errors.get() / count);
+    }
+
+    private Map<String, Object> summary(double seconds)
+    {
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        for (Map.Entry<String, EndpointStats> entry : new TreeMap<>(stats).entrySet())
+        {
+            EndpointStats endpoint = entry.getValue();
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("requests", endpoint.latency.count());
+            row.put("throughput", endpoint.latency.count() / seconds);
+            row.put("p50Micros", endpoint.latency.percentile(0.5));
+            row.put("p99Micros", endpoint.latency.percentile(0.99));
+            row.put("p999Micros", endpoint.latency.percentile(0.999));
+            row.put("maxMicros", endpoint.latency.max());
+            row.put("errors", endpoint.errors.get());
+            row.put("statuses", new TreeMap<>(endpoint.statuses));
+            endpoints.put(entry.getKey(), row);
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("seconds", seconds);
+        summary.put("endpoints", endpoints);
+        return summary;
+    }
+
+    /**
+     * Maps each role to its token, keyed by the part of the email before
+     * the {@code @}: {@code Admin@example.com} becomes {@code admin}.
+     */
+    private static Map<String, String> tokens(Path usersFile) throws IOException
+    {
+        Map<String, String> tokens = new HashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> users = MAPPER.readTree(usersFile.toFile()).fields();
+        while (users.hasNext())
+        {
+            Map.Entry<String, JsonNode> user = users.next();
+            String role = user.getKey().substring(0, user.getKey().indexOf('@')).toLowerCase(Locale.ROOT);
+            tokens.put(role, user.getValue().path("token").asText());
+        }
+        return tokens;
+    }
+
+    private static Map<String, List<String>> parse(String[] args)
+    {
+        Map<String, List<String>> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++)
+        {
+            if (!args[i].startsWith("--"))
+            {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+
+            String key = args[i].substring(2);
+            String value;
+            int eq = key.indexOf('=');
+            if (eq >= 0)
+            {
+                value = key.substring(eq + 1);
+                key = key.substring(0, eq);
+            }
+            else if (i + 1 < args.length)
+            {
+                value = args[++i];
+            }
+            else
+            {
+                throw new IllegalArgumentException("Missing value for --" + key);
+            }
+            options.computeIfAbsent(key, k -> new ArrayList<>()).add(value);
+        }
+        return options;
+    }
+
+    private static String option(Map<String, List<String>> options, String key, String fallback)
+    {
+        List<String> values = options.get(key);
+        return values == null ? fallback : values.get(values.size() - 1);
+    }
+
+    private static final class EndpointStats
+    {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong       errors  = new AtomicLong();
+
+        private final ConcurrentMap<Integer, AtomicLong> statuses = new ConcurrentHashMap<>();
+
+        void record(long micros, int status, boolean expected)
+        {
+            latency.record(micros);
+            statuses.computeIfAbsent(status, s -> new AtomicLong()).incrementAndGet();
+            if (!expected)
+            {
+                errors.incrementAndGet();
+            }
+        }
+
+        void merge(EndpointStats other)
+        {
+            latency.merge(other.latency);
+            errors.addAndGet(other.errors.get());
+            other.statuses.forEach((status, count) ->
+                statuses.computeIfAbsent(status, s -> new AtomicLong()).addAndGet(count.get()));
+        }
+    }
+}
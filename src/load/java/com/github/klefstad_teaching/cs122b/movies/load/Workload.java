@@ -0,0 +1,253 @@
+package com.github.klefstad_teaching.cs122b.movies.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.StringJoiner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A weighted mix of requests to replay. Mixes are read from JSON lines, one
+ * request per line:
+ *
+ * <pre>
+ * {"endpoint": "movie search", "path": "/movie/search", "query": {"title": "knight"},
+ *  "role": "admin", "weight": 5, "expect": 200}
+ * </pre>
+ *
+ * or from a Postman collection, whose enabled query parameters and bearer
+ * token variables are used as is.
+ */
+final class Workload
+{
+    private static final Pattern VARIABLE = Pattern.compile("\\{\\{([^}]+)}}");
+
+    static final class Request
+    {
+        final String endpoint;
+        final String method;
+        final String pathAndQuery;
+        final String role;
+        final int    weight;
+        final int    expect;
+
+        Request(String endpoint, String method, String pathAndQuery, String role, int weight, int expect)
+        {
+            this.endpoint = endpoint;
+            this.method = method;
+            this.pathAndQuery = pathAndQuery;
+            this.role = role;
+            this.weight = weight;
+            this.expect = expect;
+        }
+    }
+
+    private final List<Request> requests;
+    private final long[]        cumulative;
+
+    Workload(List<Request> requests)
+    {
+        if (requests.isEmpty())
+        {
+            throw new IllegalArgumentException("Workload has no requests");
+        }
+
+        this.requests = Collections.unmodifiableList(new ArrayList<>(requests));
+        this.cumulative = new long[requests.size()];
+
+        long sum = 0;
+        for (int i = 0; i < requests.size(); i++)
+        {
+            sum += requests.get(i).weight;
+            cumulative[i] = sum;
+        }
+    }
+
+    List<Request> requests()
+    {
+        return requests;
+    }
+
+    Request next(Random random)
+    {
+        long pick = (long) (random.nextDouble() * cumulative[cumulative.length - 1]);
+        int lo = 0;
+        int hi = cumulative.length - 1;
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (cumulative[mid] > pick)
+            {
+                hi = mid;
+            }
+            else
+            {
+                lo = mid + 1;
+            }
+        }
+        return requests.get(lo);
+    }
+
+    static List<Request> fromJsonLines(ObjectMapper mapper, Path file) throws IOException
+    {
+        List<Request> requests = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8))
+        {
+            if (line.isBlank() || line.startsWith("#"))
+            {
+                continue;
+            }
+
+            JsonNode node = mapper.readTree(line);
+            String path = node.path("path").asText();
+            requests.add(new Request(
+                node.path("endpoint").asText(path),
+                node.path("method").asText("GET"),
+                path + queryString(node.path("query")),
+                node.path("role").asText("admin"),
+                node.path("weight").asInt(1),
+                node.path("expect").asInt(200)
+            ));
+        }
+        return requests;
+    }
+
+    /**
+     * Reads every request of a Postman collection, substituting
+     * {@code {{variable}}} from {@code variables} first and the collection's
+     * own variables second. The role is taken from the bearer token
+     * variable name, so {@code {{employee_token}}} replays as employee.
+     * Requests whose path still has an empty segment (an id left blank in
+     * the collection) are skipped with a warning.
+     */
+    static List<Request> fromPostman(ObjectMapper mapper, Path file, Map<String, String> variables) throws IOException
+    {
+        JsonNode collection = mapper.readTree(file.toFile());
+
+        Map<String, String> resolved = new HashMap<>();
+        for (JsonNode variable : collection.path("variable"))
+        {
+            resolved.put(variable.path("key").asText(), variable.path("value").asText());
+        }
+        resolved.putAll(variables);
+
+        List<Request> requests = new ArrayList<>();
+        collectPostman(collection.path("item"), collection.path("auth"), resolved, requests);
+        return requests;
+    }
+
+    private static void collectPostman(JsonNode items, JsonNode auth, Map<String, String> variables, List<Request> out)
+    {
+        for (JsonNode item : items)
+        {
+            JsonNode itemAuth = item.has("auth") ? item.get("auth") : auth;
+            if (item.has("item"))
+            {
+                collectPostman(item.get("item"), itemAuth, variables, out);
+                continue;
+            }
+
+            JsonNode request = item.path("request");
+            JsonNode url = request.path("url");
+            if (request.has("auth"))
+            {
+                itemAuth = request.get("auth");
+            }
+
+            StringJoiner path = new StringJoiner("/", "/", "");
+            boolean blankSegment = false;
+            for (JsonNode segment : url.path("path"))
+            {
+                String value = substitute(segment.asText(), variables);
+                blankSegment |= value.isEmpty();
+                path.add(value);
+            }
+
+            if (blankSegment)
+            {
+                System.err.println("Skipping Postman request '" + item.path("name").asText() +
+                                   "': its path has an empty segment");
+                continue;
+            }
+
+            StringJoiner query = new StringJoiner("&", "?", "").setEmptyValue("");
+            for (JsonNode param : url.path("query"))
+            {
+                if (!param.path("disabled").asBoolean(false))
+                {
+                    query.add(encode(param.path("key").asText()) + "=" +
+                              encode(substitute(param.path("value").asText(""), variables)));
+                }
+            }
+
+            out.add(new Request(
+                item.path("name").asText(),
+                request.path("method").asText("GET"),
+                path + query.toString(),
+                role(itemAuth),
+                1,
+                200
+            ));
+        }
+    }
+
+    private static String role(JsonNode auth)
+    {
+        for (JsonNode entry : auth.path("bearer"))
+        {
+            if (entry.path("key").asText().equals("token"))
+            {
+                Matcher matcher = VARIABLE.matcher(entry.path("value").asText());
+                if (matcher.matches() && matcher.group(1).endsWith("_token"))
+                {
+                    String variable = matcher.group(1);
+                    return variable.substring(0, variable.length() - "_token".length());
+                }
+            }
+        }
+        return "admin";
+    }
+
+    private static String substitute(String text, Map<String, String> variables)
+    {
+        Matcher matcher = VARIABLE.matcher(text);
+        StringBuffer out = new StringBuffer();
+        while (matcher.find())
+        {
+            String value = variables.getOrDefault(matcher.group(1), "");
+            matcher.appendReplacement(out, Matcher.quoteReplacement(value));
+        }
+        matcher.appendTail(out);
+        return out.toString();
+    }
+
+    private static String queryString(JsonNode query)
+    {
+        StringJoiner joiner = new StringJoiner("&", "?", "").setEmptyValue("");
+        Iterator<Map.Entry<String, JsonNode>> fields = query.fields();
+        while (fields.hasNext())
+        {
+            Map.Entry<String, JsonNode> field = fields.next();
+            joiner.add(encode(field.getKey()) + "=" + encode(field.getValue().asText()));
+        }
+        return joiner.toString();
+    }
+
+    private static String encode(String value)
+    {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
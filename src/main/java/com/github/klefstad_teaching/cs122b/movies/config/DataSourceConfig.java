@@ -0,0 +1,217 @@
+package com.github.klefstad_teaching.cs122b.movies.config;
+
+import com.github.klefstad_teaching.cs122b.movies.repo.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies the {@code movie.pool.*} and {@code movie.driver.*} settings to
+ * the Hikari pool and the MySQL driver, sets up the read replicas, and
+ * checks at startup that the pool can serve the threads that will ask it
+ * for connections.
+ */
+@Configuration
+public class DataSourceConfig
+{
+    private static final Logger LOG = LoggerFactory.getLogger(DataSourceConfig.class);
+
+    private final MoviesServiceConfig config;
+    private final ServerProperties    server;
+
+    @Autowired
+    public DataSourceConfig(MoviesServiceConfig config, ServerProperties server)
+    {
+        this.config = config;
+        this.server = server;
+    }
+
+    /**
+     * Tunes the pool before its first connection is opened, and sets the
+     * fetch size on the {@link JdbcTemplate}.
+     */
+    @Bean
+    public static BeanPostProcessor dataSourceTuning(ObjectProvider<MoviesServiceConfig> config)
+    {
+        return new BeanPostProcessor()
+        {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName)
+            {
+                if (bean instanceof HikariDataSource)
+                {
+                    tune((HikariDataSource) bean, config.getObject());
+                }
+                else if (bean instanceof JdbcTemplate && config.getObject().getDriver().getFetchSize() > 0)
+                {
+                    ((JdbcTemplate) bean).setFetchSize(config.getObject().getDriver().getFetchSize());
+                }
+                return bean;
+            }
+        };
+    }
+
+    /**
+     * Wraps the primary in a {@link ReplicaRoutingDataSource} when
+     * {@code movie.replica.urls} is set. Ordered, so it runs before the
+     * unordered {@code jdbcPermits} wrapper and the permits cover replica
+     * connections too.
+     */
+    @Bean
+    public static BeanPostProcessor replicaRouting(ObjectProvider<MoviesServiceConfig> config,
+                                                   ObjectProvider<DataSourceProperties> properties,
+                                                   ObjectProvider<MeterRegistry> registry)
+    {
+        return new ReplicaRoutingPostProcessor(config, properties, registry);
+    }
+
+    private static void tune(HikariDataSource pool, MoviesServiceConfig config)
+    {
+        MoviesServiceConfig.Pool settings = config.getPool();
+        pool.setMaximumPoolSize(settings.getMaximumSize());
+        pool.setMinimumIdle(settings.getMinimumIdle() < 0 ? settings.getMaximumSize() : settings.getMinimumIdle());
+        pool.setIdleTimeout(settings.getIdleTimeoutMillis());
+        pool.setMaxLifetime(settings.getMaxLifetimeMillis());
+        pool.setLeakDetectionThreshold(settings.getLeakDetectionMillis());
+        pool.setConnectionTimeout(settings.getConnectionTimeoutMillis());
+
+        MoviesServiceConfig.Driver driver = config.getDriver();
+        pool.addDataSourceProperty("useServerPrepStmts", driver.isServerPreparedStatements());
+        pool.addDataSourceProperty("cachePrepStmts", driver.getPreparedStatementCacheSize() > 0);
+        pool.addDataSourceProperty("prepStmtCacheSize", driver.getPreparedStatementCacheSize());
+        pool.addDataSourceProperty("prepStmtCacheSqlLimit", driver.getPreparedStatementCacheSqlLimit());
+        pool.addDataSourceProperty("rewriteBatchedStatements", driver.isRewriteBatchedStatements());
+        if (driver.getFetchSize() > 0)
+        {
+            pool.addDataSourceProperty("useCursorFetch", true);
+        }
+    }
+
+    private static final class ReplicaRoutingPostProcessor implements BeanPostProcessor, Ordered
+    {
+        private final ObjectProvider<MoviesServiceConfig>  config;
+        private final ObjectProvider<DataSourceProperties> properties;
+        private final ObjectProvider<MeterRegistry>        registry;
+
+        private ReplicaRoutingPostProcessor(ObjectProvider<MoviesServiceConfig> config,
+                                            ObjectProvider<DataSourceProperties> properties,
+                                            ObjectProvider<MeterRegistry> registry)
+        {
+            this.config = config;
+            this.properties = properties;
+            this.registry = registry;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName)
+        {
+            if (!(bean instanceof HikariDataSource))
+            {
+                return bean;
+            }
+
+            MoviesServiceConfig movies = config.getObject();
+            MoviesServiceConfig.Replica settings = movies.getReplica();
+            List<String> urls = settings.getUrls() == null ? List.of() : settings.getUrls();
+
+            Map<String, DataSource> replicas = new LinkedHashMap<>();
+            for (String url : urls)
+            {
+                if (url.isBlank())
+                {
+                    continue;
+                }
+
+                String name = "replica-" + (replicas.size() + 1);
+                HikariDataSource replica = new HikariDataSource();
+                replica.setPoolName(name);
+                replica.setJdbcUrl(url.trim());
+                replica.setUsername(properties.getObject().determineUsername());
+                replica.setPassword(properties.getObject().determinePassword());
+                replica.setReadOnly(true);
+                replica.setMetricRegistry(registry.getObject());
+                tune(replica, movies);
+                replicas.put(name, replica);
+            }
+
+            if (replicas.isEmpty())
+            {
+                return bean;
+            }
+
+            LOG.info("Routing MovieRepo reads to {} replicas: {}", replicas.size(), urls);
+            return new ReplicaRoutingDataSource(
+                (DataSource) bean,
+                replicas,
+                settings.getMaxLagSeconds(),
+                settings.getCheckMillis(),
+                settings.isStandaloneIsCurrent(),
+                registry.getObject()
+            );
+        }
+
+        @Override
+        public int getOrder()
+        {
+            return Ordered.HIGHEST_PRECEDENCE;
+        }
+    }
+
+    /**
+     * Warns when more threads can ask for a connection at once than the
+     * pool holds; the rest queue inside Hikari, where it only shows up as
+     * {@code hikaricp.connections.pending}.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void checkPoolSize()
+    {
+        int pool = config.getPool().getMaximumSize();
+
+        MoviesServiceConfig.Bulkhead bulkhead = config.getBulkhead();
+        int bulkheads = bulkhead.getLookupThreads() + bulkhead.getSearchThreads();
+        if (bulkhead.getLookupThreads() > 0 && bulkhead.getSearchThreads() > 0)
+        {
+            if (bulkheads > pool)
+            {
+                LOG.warn("Bulkheads run {} lookup and {} search threads but movie.pool.maximum-size is {}; " +
+                         "the bulkheads no longer keep their own connections",
+                         bulkhead.getLookupThreads(), bulkhead.getSearchThreads(), pool);
+            }
+            return;
+        }
+
+        if (config.getRequests().getThreads() == MoviesServiceConfig.RequestThreads.VIRTUAL)
+        {
+            if (config.getRequests().getJdbcPermits() > pool)
+            {
+                LOG.warn("movie.requests.jdbc-permits is {} but movie.pool.maximum-size is {}", config.getRequests().getJdbcPermits(), pool);
+            }
+            return;
+        }
+
+        int webThreads = server.getTomcat().getThreads().getMax();
+        if (webThreads > pool)
+        {
+            LOG.warn("Up to {} web threads share {} connections (movie.pool.maximum-size); under load requests " +
+                     "will wait up to {}ms for a connection. Raise the pool, lower server.tomcat.threads.max " +
+                     "or configure the bulkheads", webThreads, pool, config.getPool().getConnectionTimeoutMillis());
+        }
+    }
+}
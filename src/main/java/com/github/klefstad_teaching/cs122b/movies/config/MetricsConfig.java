@@ -0,0 +1,20 @@
+package com.github.klefstad_teaching.cs122b.movies.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfig
+{
+    /**
+     * Enables {@code @Timed} on beans such as
+     * {@link com.github.klefstad_teaching.cs122b.movies.repo.MovieRepo}.
+     */
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry registry)
+    {
+        return new TimedAspect(registry);
+    }
+}
@@ -2,9 +2,823 @@ package com.github.klefstad_teaching.cs122b.movies.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
 
+import java.util.List;
+
+/**
+ * The {@code movie.*} settings. Everything but the engine choices is
+ * grouped by the component it tunes, one nested type per group, so a new
+ * setting only touches its own group.
+ */
 @ConstructorBinding
 @ConfigurationProperties(prefix = "movie")
 public class MoviesServiceConfig
 {
+    /**
+     * Where {@code /movie/search} is evaluated.
+     */
+    public enum SearchEngine
+    {
+        SQL,
+        IN_MEMORY
+    }
+
+    /**
+     * How search rows get from MySQL into entities: aggregated into one JSON
+     * document and parsed, or mapped column by column from the result set.
+     */
+    public enum ResultMapping
+    {
+        JSON,
+        ROWS
+    }
+
+    /**
+     * What Tomcat runs each request on: its pool of platform threads, or a
+     * new virtual thread per request (Java 21 or later).
+     */
+    public enum RequestThreads
+    {
+        PLATFORM,
+        VIRTUAL
+    }
+
+    /**
+     * What a full bulkhead does with one more call: fail at once, or wait a
+     * bounded time for queue space.
+     */
+    public enum BulkheadRejection
+    {
+        FAIL,
+        WAIT
+    }
+
+    private final SearchEngine  searchEngine;
+    private final ResultMapping resultMapping;
+    private final int           roleCacheSize;
+    private final int           batchMaxIds;
+
+    private final Catalog        catalog;
+    private final SubstringIndex substringIndex;
+    private final DetailCache    detailCache;
+    private final CastIndex      castIndex;
+    private final Requests       requests;
+    private final Bulkhead       bulkhead;
+    private final Pool           pool;
+    private final Driver         driver;
+    private final Replica        replica;
+    private final TotalCount     totalCount;
+    private final Suggest        suggest;
+    private final Fuzzy          fuzzy;
+    private final CreditGraph    creditGraph;
+
+    public MoviesServiceConfig(@DefaultValue("sql") SearchEngine searchEngine,
+                               @DefaultValue("json") ResultMapping resultMapping,
+                               @DefaultValue("10000") int roleCacheSize,
+                               @DefaultValue("50") int batchMaxIds,
+                               @DefaultValue Catalog catalog,
+                               @DefaultValue SubstringIndex substringIndex,
+                               @DefaultValue DetailCache detailCache,
+                               @DefaultValue CastIndex castIndex,
+                               @DefaultValue Requests requests,
+                               @DefaultValue Bulkhead bulkhead,
+                               @DefaultValue Pool pool,
+                               @DefaultValue Driver driver,
+                               @DefaultValue Replica replica,
+                               @DefaultValue TotalCount totalCount,
+                               @DefaultValue Suggest suggest,
+                               @DefaultValue Fuzzy fuzzy,
+                               @DefaultValue CreditGraph creditGraph)
+    {
+        this.searchEngine = searchEngine;
+        this.resultMapping = resultMapping;
+        this.roleCacheSize = roleCacheSize;
+        this.batchMaxIds = batchMaxIds;
+        this.catalog = catalog;
+        this.substringIndex = substringIndex;
+        this.detailCache = detailCache;
+        this.castIndex = castIndex;
+        this.requests = requests;
+        this.bulkhead = bulkhead;
+        this.pool = pool;
+        this.driver = driver;
+        this.replica = replica;
+        this.totalCount = totalCount;
+        this.suggest = suggest;
+        this.fuzzy = fuzzy;
+        this.creditGraph = creditGraph;
+    }
+
+    public SearchEngine getSearchEngine()
+    {
+        return searchEngine;
+    }
+
+    public ResultMapping getResultMapping()
+    {
+        return resultMapping;
+    }
+
+    /**
+     * Tokens whose resolved roles are remembered.
+     */
+    public int getRoleCacheSize()
+    {
+        return roleCacheSize;
+    }
+
+    /**
+     * Most movie ids accepted by one {@code GET /movie/batch} request.
+     */
+    public int getBatchMaxIds()
+    {
+        return batchMaxIds;
+    }
+
+    public Catalog getCatalog()
+    {
+        return catalog;
+    }
+
+    public SubstringIndex getSubstringIndex()
+    {
+        return substringIndex;
+    }
+
+    public DetailCache getDetailCache()
+    {
+        return detailCache;
+    }
+
+    public CastIndex getCastIndex()
+    {
+        return castIndex;
+    }
+
+    public Requests getRequests()
+    {
+        return requests;
+    }
+
+    public Bulkhead getBulkhead()
+    {
+        return bulkhead;
+    }
+
+    public Pool getPool()
+    {
+        return pool;
+    }
+
+    public Driver getDriver()
+    {
+        return driver;
+    }
+
+    public Replica getReplica()
+    {
+        return replica;
+    }
+
+    public TotalCount getTotalCount()
+    {
+        return totalCount;
+    }
+
+    public Suggest getSuggest()
+    {
+        return suggest;
+    }
+
+    public Fuzzy getFuzzy()
+    {
+        return fuzzy;
+    }
+
+    public CreditGraph getCreditGraph()
+    {
+        return creditGraph;
+    }
+
+    /**
+     * {@code movie.catalog.*}: the in-memory movie catalog.
+     */
+    public static class Catalog
+    {
+        private final long rebuildMillis;
+
+        public Catalog(@DefaultValue("300000") long rebuildMillis)
+        {
+            this.rebuildMillis = rebuildMillis;
+        }
+
+        /**
+         * How often the catalog is rebuilt in the background, picking up
+         * rows changed without an invalidation; 0 only rebuilds it after
+         * invalidations.
+         */
+        public long getRebuildMillis()
+        {
+            return rebuildMillis;
+        }
+    }
+
+    /**
+     * {@code movie.substring-index.*}: the trigram prefilter for
+     * {@code LIKE '%term%'} filters.
+     */
+    public static class SubstringIndex
+    {
+        private final boolean enabled;
+        private final int     maxCandidates;
+        private final long    rebuildMillis;
+        private final long    maxStalenessMillis;
+
+        public SubstringIndex(@DefaultValue("false") boolean enabled,
+                              @DefaultValue("1000") int maxCandidates,
+                              @DefaultValue("30000") long rebuildMillis,
+                              @DefaultValue("60000") long maxStalenessMillis)
+        {
+            this.enabled = enabled;
+            this.maxCandidates = maxCandidates;
+            this.rebuildMillis = rebuildMillis;
+            this.maxStalenessMillis = maxStalenessMillis;
+        }
+
+        /**
+         * Whether {@code LIKE '%term%'} filters are narrowed with the
+         * trigram index before going to MySQL.
+         */
+        public boolean isEnabled()
+        {
+            return enabled;
+        }
+
+        /**
+         * Above this many candidate ids the {@code IN (...)} list costs more
+         * than the scan it replaces, so the plain {@code LIKE} is used
+         * instead.
+         */
+        public int getMaxCandidates()
+        {
+            return maxCandidates;
+        }
+
+        /**
+         * How often the indexes are rebuilt in the background, picking up
+         * rows changed without an invalidation; 0 builds them once.
+         */
+        public long getRebuildMillis()
+        {
+            return rebuildMillis;
+        }
+
+        /**
+         * Oldest an index may be and still narrow a filter. Rows written
+         * without an invalidation are only seen once a rebuild reads them,
+         * so past this age the plain {@code LIKE} runs instead; {@code 0}
+         * always uses the index.
+         */
+        public long getMaxStalenessMillis()
+        {
+            return maxStalenessMillis;
+        }
+    }
+
+    /**
+     * {@code movie.detail-cache.*}: the movie and person detail caches.
+     */
+    public static class DetailCache
+    {
+        private final int size;
+
+        public DetailCache(@DefaultValue("0") int size)
+        {
+            this.size = size;
+        }
+
+        /**
+         * Entries kept per detail cache; {@code 0} disables caching.
+         */
+        public int getSize()
+        {
+            return size;
+        }
+    }
+
+    /**
+     * {@code movie.cast-index.*}: the popularity-ordered cast lists.
+     */
+    public static class CastIndex
+    {
+        private final boolean enabled;
+        private final long    rebuildMillis;
+
+        public CastIndex(@DefaultValue("false") boolean enabled,
+                         @DefaultValue("300000") long rebuildMillis)
+        {
+            this.enabled = enabled;
+            this.rebuildMillis = rebuildMillis;
+        }
+
+        /**
+         * Whether cast lists are served from the in-memory, popularity
+         * ordered {@code CastIndex} instead of joining and sorting per
+         * request. The index takes who is in each movie from
+         * {@code CreditGraph}, loading it on first use even when
+         * {@link CreditGraph#isEnabled()} is off.
+         */
+        public boolean isEnabled()
+        {
+            return enabled;
+        }
+
+        /**
+         * How often the credited persons' names and popularity are re-read
+         * in the background, picking up persons changed without a refresh;
+         * {@code 0} loads them once.
+         */
+        public long getRebuildMillis()
+        {
+            return rebuildMillis;
+        }
+    }
+
+    /**
+     * {@code movie.requests.*}: the threads requests run on.
+     */
+    public static class Requests
+    {
+        private final RequestThreads threads;
+        private final int            jdbcPermits;
+        private final long           jdbcPermitTimeoutMillis;
+
+        public Requests(@DefaultValue("platform") RequestThreads threads,
+                        @DefaultValue("0") int jdbcPermits,
+                        @DefaultValue("30000") long jdbcPermitTimeoutMillis)
+        {
+            this.threads = threads;
+            this.jdbcPermits = jdbcPermits;
+            this.jdbcPermitTimeoutMillis = jdbcPermitTimeoutMillis;
+        }
+
+        public RequestThreads getThreads()
+        {
+            return threads;
+        }
+
+        /**
+         * Connections that may be checked out at once when requests run on
+         * virtual threads; {@code 0} uses the pool's maximum size.
+         */
+        public int getJdbcPermits()
+        {
+            return jdbcPermits;
+        }
+
+        public long getJdbcPermitTimeoutMillis()
+        {
+            return jdbcPermitTimeoutMillis;
+        }
+    }
+
+    /**
+     * {@code movie.bulkhead.*}: the per query class bulkheads. Catalog and
+     * index loads run in the search bulkhead.
+     */
+    public static class Bulkhead
+    {
+        private final int               lookupThreads;
+        private final int               lookupQueue;
+        private final BulkheadRejection lookupRejection;
+        private final int               searchThreads;
+        private final int               searchQueue;
+        private final BulkheadRejection searchRejection;
+        private final long              waitMillis;
+
+        public Bulkhead(@DefaultValue("0") int lookupThreads,
+                        @DefaultValue("200") int lookupQueue,
+                        @DefaultValue("wait") BulkheadRejection lookupRejection,
+                        @DefaultValue("0") int searchThreads,
+                        @DefaultValue("50") int searchQueue,
+                        @DefaultValue("fail") BulkheadRejection searchRejection,
+                        @DefaultValue("1000") long waitMillis)
+        {
+            this.lookupThreads = lookupThreads;
+            this.lookupQueue = lookupQueue;
+            this.lookupRejection = lookupRejection;
+            this.searchThreads = searchThreads;
+            this.searchQueue = searchQueue;
+            this.searchRejection = searchRejection;
+            this.waitMillis = waitMillis;
+        }
+
+        /**
+         * Threads, and so at most connections, for id lookups; {@code 0}
+         * runs them on the request thread.
+         */
+        public int getLookupThreads()
+        {
+            return lookupThreads;
+        }
+
+        public int getLookupQueue()
+        {
+            return lookupQueue;
+        }
+
+        public BulkheadRejection getLookupRejection()
+        {
+            return lookupRejection;
+        }
+
+        /**
+         * Threads, and so at most connections, for searches; {@code 0} runs
+         * them on the request thread.
+         */
+        public int getSearchThreads()
+        {
+            return searchThreads;
+        }
+
+        public int getSearchQueue()
+        {
+            return searchQueue;
+        }
+
+        public BulkheadRejection getSearchRejection()
+        {
+            return searchRejection;
+        }
+
+        /**
+         * How long a {@code wait} bulkhead holds a call for queue space.
+         */
+        public long getWaitMillis()
+        {
+            return waitMillis;
+        }
+    }
+
+    /**
+     * {@code movie.pool.*}: the Hikari connection pool.
+     */
+    public static class Pool
+    {
+        private final int  maximumSize;
+        private final int  minimumIdle;
+        private final long idleTimeoutMillis;
+        private final long maxLifetimeMillis;
+        private final long leakDetectionMillis;
+        private final long connectionTimeoutMillis;
+
+        public Pool(@DefaultValue("10") int maximumSize,
+                    @DefaultValue("-1") int minimumIdle,
+                    @DefaultValue("600000") long idleTimeoutMillis,
+                    @DefaultValue("1800000") long maxLifetimeMillis,
+                    @DefaultValue("0") long leakDetectionMillis,
+                    @DefaultValue("30000") long connectionTimeoutMillis)
+        {
+            this.maximumSize = maximumSize;
+            this.minimumIdle = minimumIdle;
+            this.idleTimeoutMillis = idleTimeoutMillis;
+            this.maxLifetimeMillis = maxLifetimeMillis;
+            this.leakDetectionMillis = leakDetectionMillis;
+            this.connectionTimeoutMillis = connectionTimeoutMillis;
+        }
+
+        /**
+         * Most connections the pool opens.
+         */
+        public int getMaximumSize()
+        {
+            return maximumSize;
+        }
+
+        /**
+         * Idle connections kept open; {@code -1} keeps the pool at its
+         * maximum size.
+         */
+        public int getMinimumIdle()
+        {
+            return minimumIdle;
+        }
+
+        public long getIdleTimeoutMillis()
+        {
+            return idleTimeoutMillis;
+        }
+
+        /**
+         * Retire connections before MySQL's {@code wait_timeout} does.
+         */
+        public long getMaxLifetimeMillis()
+        {
+            return maxLifetimeMillis;
+        }
+
+        /**
+         * Log a connection held longer than this; {@code 0} disables it.
+         */
+        public long getLeakDetectionMillis()
+        {
+            return leakDetectionMillis;
+        }
+
+        /**
+         * How long a caller waits for a connection before failing.
+         */
+        public long getConnectionTimeoutMillis()
+        {
+            return connectionTimeoutMillis;
+        }
+    }
+
+    /**
+     * {@code movie.driver.*}: MySQL Connector/J properties.
+     */
+    public static class Driver
+    {
+        private final boolean serverPreparedStatements;
+        private final int     preparedStatementCacheSize;
+        private final int     preparedStatementCacheSqlLimit;
+        private final boolean rewriteBatchedStatements;
+        private final int     fetchSize;
+
+        public Driver(@DefaultValue("true") boolean serverPreparedStatements,
+                      @DefaultValue("256") int preparedStatementCacheSize,
+                      @DefaultValue("4096") int preparedStatementCacheSqlLimit,
+                      @DefaultValue("false") boolean rewriteBatchedStatements,
+                      @DefaultValue("0") int fetchSize)
+        {
+            this.serverPreparedStatements = serverPreparedStatements;
+            this.preparedStatementCacheSize = preparedStatementCacheSize;
+            this.preparedStatementCacheSqlLimit = preparedStatementCacheSqlLimit;
+            this.rewriteBatchedStatements = rewriteBatchedStatements;
+            this.fetchSize = fetchSize;
+        }
+
+        /**
+         * {@code useServerPrepStmts}: prepare statements on the server and
+         * send only parameters on each execution.
+         */
+        public boolean isServerPreparedStatements()
+        {
+            return serverPreparedStatements;
+        }
+
+        /**
+         * {@code prepStmtCacheSize} per connection; {@code 0} disables
+         * {@code cachePrepStmts}.
+         */
+        public int getPreparedStatementCacheSize()
+        {
+            return preparedStatementCacheSize;
+        }
+
+        /**
+         * Longest statement text, in characters, the cache keeps.
+         */
+        public int getPreparedStatementCacheSqlLimit()
+        {
+            return preparedStatementCacheSqlLimit;
+        }
+
+        /**
+         * {@code rewriteBatchedStatements}: send JDBC batches as multi-row
+         * statements.
+         */
+        public boolean isRewriteBatchedStatements()
+        {
+            return rewriteBatchedStatements;
+        }
+
+        /**
+         * Rows fetched per round trip; {@code 0} reads the whole result at
+         * once. Above zero Connector/J needs {@code useCursorFetch}, which
+         * is turned on with it.
+         */
+        public int getFetchSize()
+        {
+            return fetchSize;
+        }
+    }
+
+    /**
+     * {@code movie.replica.*}: read replica routing.
+     */
+    public static class Replica
+    {
+        private final List<String> urls;
+        private final long         maxLagSeconds;
+        private final long         checkMillis;
+        private final boolean      detailsOnPrimary;
+        private final boolean      standaloneIsCurrent;
+
+        public Replica(@DefaultValue("") List<String> urls,
+                       @DefaultValue("10") long maxLagSeconds,
+                       @DefaultValue("5000") long checkMillis,
+                       @DefaultValue("false") boolean detailsOnPrimary,
+                       @DefaultValue("false") boolean standaloneIsCurrent)
+        {
+            this.urls = urls;
+            this.maxLagSeconds = maxLagSeconds;
+            this.checkMillis = checkMillis;
+            this.detailsOnPrimary = detailsOnPrimary;
+            this.standaloneIsCurrent = standaloneIsCurrent;
+        }
+
+        /**
+         * JDBC URLs of read replicas that serve the search and detail
+         * queries in {@code MovieRepo}; empty sends everything to the
+         * primary.
+         */
+        public List<String> getUrls()
+        {
+            return urls;
+        }
+
+        /**
+         * Replication lag past which a replica is taken out of rotation
+         * until it catches up.
+         */
+        public long getMaxLagSeconds()
+        {
+            return maxLagSeconds;
+        }
+
+        /**
+         * How often each replica's lag is checked.
+         */
+        public long getCheckMillis()
+        {
+            return checkMillis;
+        }
+
+        /**
+         * Whether movie and person detail lookups read the primary
+         * (read-your-writes). Off, they go to a replica like the searches,
+         * and a lookup right after an update may cache the replica's older
+         * row until the movie or person is next invalidated.
+         */
+        public boolean isDetailsOnPrimary()
+        {
+            return detailsOnPrimary;
+        }
+
+        /**
+         * Whether a server reporting no replication status at all counts
+         * as current, so independent instances loaded from the same dump
+         * can stand in for replicas. Off, such a server stays out of
+         * rotation.
+         */
+        public boolean isStandaloneIsCurrent()
+        {
+            return standaloneIsCurrent;
+        }
+    }
+
+    /**
+     * {@code movie.total-count.*}: cached search totals.
+     */
+    public static class TotalCount
+    {
+        private final int  cacheSize;
+        private final long ttlMillis;
+
+        public TotalCount(@DefaultValue("10000") int cacheSize,
+                          @DefaultValue("60000") long ttlMillis)
+        {
+            this.cacheSize = cacheSize;
+            this.ttlMillis = ttlMillis;
+        }
+
+        /**
+         * Filter signatures whose search total is cached; {@code 0} counts
+         * on every request.
+         */
+        public int getCacheSize()
+        {
+            return cacheSize;
+        }
+
+        /**
+         * How long a cached search total is served before it is counted
+         * again.
+         */
+        public long getTtlMillis()
+        {
+            return ttlMillis;
+        }
+    }
+
+    /**
+     * {@code movie.suggest.*}: typeahead on the suggest endpoints.
+     */
+    public static class Suggest
+    {
+        private final int  maxResults;
+        private final long rebuildMillis;
+
+        public Suggest(@DefaultValue("10") int maxResults,
+                       @DefaultValue("300000") long rebuildMillis)
+        {
+            if (maxResults < 1)
+            {
+                throw new IllegalArgumentException("movie.suggest.max-results must be at least 1, was " + maxResults);
+            }
+            this.maxResults = maxResults;
+            this.rebuildMillis = rebuildMillis;
+        }
+
+        /**
+         * The most completions a suggest call can ask for; each trie node
+         * keeps this many precomputed.
+         */
+        public int getMaxResults()
+        {
+            return maxResults;
+        }
+
+        /**
+         * How often the tries are rebuilt from the database; {@code 0}
+         * builds them once.
+         */
+        public long getRebuildMillis()
+        {
+            return rebuildMillis;
+        }
+    }
+
+    /**
+     * {@code movie.fuzzy.*}: typo tolerant person name search.
+     */
+    public static class Fuzzy
+    {
+        private final int maxEdits;
+        private final int maxCandidates;
+
+        public Fuzzy(@DefaultValue("2") int maxEdits,
+                     @DefaultValue("1000") int maxCandidates)
+        {
+            this.maxEdits = maxEdits;
+            this.maxCandidates = maxCandidates;
+        }
+
+        /**
+         * The most edits a word of a fuzzy name search may be from a name
+         * word; short words allow fewer.
+         */
+        public int getMaxEdits()
+        {
+            return maxEdits;
+        }
+
+        /**
+         * The most persons a fuzzy name search ranks; the closest are kept.
+         */
+        public int getMaxCandidates()
+        {
+            return maxCandidates;
+        }
+    }
+
+    /**
+     * {@code movie.credit-graph.*}: the in-memory {@code movie_person}
+     * graph.
+     */
+    public static class CreditGraph
+    {
+        private final boolean enabled;
+        private final int     maxPersons;
+
+        public CreditGraph(@DefaultValue("false") boolean enabled,
+                           @DefaultValue("5000") int maxPersons)
+        {
+            this.enabled = enabled;
+            this.maxPersons = maxPersons;
+        }
+
+        /**
+         * Whether movie and person relationship lookups use the in-memory
+         * {@code CreditGraph} instead of joining {@code movie_person}. With
+         * the cast index off, detail casts then read only their persons'
+         * names from MySQL.
+         */
+        public boolean isEnabled()
+        {
+            return enabled;
+        }
+
+        /**
+         * Above this many persons credited on the movies matching a person
+         * search's movie title, the id list costs more than the join it
+         * replaces, so the join is used instead.
+         */
+        public int getMaxPersons()
+        {
+            return maxPersons;
+        }
+    }
 }
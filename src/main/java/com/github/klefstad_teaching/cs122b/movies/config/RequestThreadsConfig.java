@@ -0,0 +1,71 @@
+package com.github.klefstad_teaching.cs122b.movies.config;
+
+import com.github.klefstad_teaching.cs122b.movies.repo.LimitedDataSource;
+import com.github.klefstad_teaching.cs122b.movies.util.VirtualThreads;
+import org.apache.coyote.ProtocolHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Applies {@code movie.requests.threads}. In virtual mode Tomcat hands each
+ * request to a new virtual thread, and the data source is wrapped in a
+ * {@link LimitedDataSource} so the unbounded number of request threads
+ * queues for connections in order rather than all at once.
+ */
+@Configuration
+public class RequestThreadsConfig
+{
+    private static final Logger LOG = LoggerFactory.getLogger(RequestThreadsConfig.class);
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> requestThreadsCustomizer(MoviesServiceConfig config)
+    {
+        return protocolHandler -> {
+            if (config.getRequests().getThreads() != MoviesServiceConfig.RequestThreads.VIRTUAL)
+            {
+                return;
+            }
+            if (!VirtualThreads.isSupported())
+            {
+                LOG.warn("movie.requests.threads is virtual but Java {} has no virtual threads; " +
+                         "staying on platform threads", System.getProperty("java.version"));
+                return;
+            }
+            protocolHandler.setExecutor(VirtualThreads.newThreadPerTaskExecutor());
+        };
+    }
+
+    @Bean
+    public static BeanPostProcessor jdbcPermits(ObjectProvider<MoviesServiceConfig> config)
+    {
+        return new BeanPostProcessor()
+        {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName)
+            {
+                if (!(bean instanceof DataSource) || bean instanceof LimitedDataSource)
+                {
+                    return bean;
+                }
+
+                MoviesServiceConfig movies = config.getObject();
+                if (movies.getRequests().getThreads() != MoviesServiceConfig.RequestThreads.VIRTUAL ||
+                    !VirtualThreads.isSupported())
+                {
+                    return bean;
+                }
+
+                MoviesServiceConfig.Requests requests = movies.getRequests();
+                int permits = requests.getJdbcPermits() > 0 ? requests.getJdbcPermits() : movies.getPool().getMaximumSize();
+                return new LimitedDataSource((DataSource) bean, permits, requests.getJdbcPermitTimeoutMillis());
+            }
+        };
+    }
+}
@@ -0,0 +1,27 @@
+package com.github.klefstad_teaching.cs122b.movies.config;
+
+import com.github.klefstad_teaching.cs122b.movies.security.CallerRolesResolver;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer
+{
+    private final CallerRolesResolver callerRolesResolver;
+
+    @Autowired
+    public WebConfig(CallerRolesResolver callerRolesResolver)
+    {
+        this.callerRolesResolver = callerRolesResolver;
+    }
+
+    @Override
+    public void addArgumentResolvers(List<HandlerMethodArgumentResolver> resolvers)
+    {
+        resolvers.add(callerRolesResolver);
+    }
+}
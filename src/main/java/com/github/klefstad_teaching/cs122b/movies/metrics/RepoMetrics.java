@@ -0,0 +1,53 @@
+package com.github.klefstad_teaching.cs122b.movies.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per-method meters for {@link com.github.klefstad_teaching.cs122b.movies.repo.MovieRepo}
+ * beyond its {@code movies.repo} latency timer: rows returned and the time
+ * Jackson spends parsing the JSON documents MySQL hands back. Together with
+ * {@code hikaricp.connections.acquire} this separates SQL time, parse time
+ * and pool wait. Response sizes are recorded by {@link ResponseSizeFilter}.
+ */
+@Component
+public class RepoMetrics
+{
+    public static final String REPO_TIMER = "movies.repo";
+
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    private final MeterRegistry registry;
+
+    private final ConcurrentMap<String, DistributionSummary> rows      = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Timer>               jsonParse = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RepoMetrics(MeterRegistry registry)
+    {
+        this.registry = registry;
+    }
+
+    public void rows(String method, int count)
+    {
+        rows.computeIfAbsent(method, m -> DistributionSummary.builder("movies.repo.rows")
+                                                            .tag("method", m)
+                                                            .publishPercentiles(PERCENTILES)
+                                                            .register(registry))
+            .record(count);
+    }
+
+    public Timer jsonParse(String method)
+    {
+        return jsonParse.computeIfAbsent(method, m -> Timer.builder("movies.repo.json.parse")
+                                                          .tag("method", m)
+                                                          .publishPercentiles(PERCENTILES)
+                                                          .register(registry));
+    }
+}
@@ -0,0 +1,161 @@
+package com.github.klefstad_teaching.cs122b.movies.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Records {@code movies.response.bytes}, the size of each response body as
+ * written to the client, tagged with the matched route. Counts the bytes as
+ * they pass through rather than buffering the body, so responses still
+ * stream.
+ */
+@Component
+public class ResponseSizeFilter extends OncePerRequestFilter
+{
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    private final MeterRegistry registry;
+
+    private final ConcurrentMap<String, DistributionSummary> sizes = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ResponseSizeFilter(MeterRegistry registry)
+    {
+        this.registry = registry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+        throws ServletException, IOException
+    {
+        CountingResponse counting = new CountingResponse(response);
+        try {
+            chain.doFilter(request, counting);
+        } finally {
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            String uri = pattern == null ? "UNKNOWN" : pattern.toString();
+            sizes.computeIfAbsent(uri, u -> DistributionSummary.builder("movies.response.bytes")
+                                                               .baseUnit("bytes")
+                                                               .tag("uri", u)
+                                                               .publishPercentiles(PERCENTILES)
+                                                               .register(registry))
+                 .record(counting.bytes());
+        }
+    }
+
+    private static final class CountingResponse extends HttpServletResponseWrapper
+    {
+        private CountingStream stream;
+        private PrintWriter    writer;
+
+        private CountingResponse(HttpServletResponse response)
+        {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException
+        {
+            if (stream == null)
+            {
+                stream = new CountingStream(super.getOutputStream());
+            }
+            return stream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException
+        {
+            if (writer == null)
+            {
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException
+        {
+            if (writer != null)
+            {
+                writer.flush();
+            }
+            super.flushBuffer();
+        }
+
+        private long bytes()
+        {
+            if (writer != null)
+            {
+                writer.flush();
+            }
+            return stream == null ? 0 : stream.count;
+        }
+    }
+
+    private static final class CountingStream extends ServletOutputStream
+    {
+        private final ServletOutputStream delegate;
+        private long count;
+
+        private CountingStream(ServletOutputStream delegate)
+        {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            delegate.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            delegate.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            delegate.close();
+        }
+
+        @Override
+        public boolean isReady()
+        {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener)
+        {
+            delegate.setWriteListener(listener);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.klefstad_teaching.cs122b.movies.model.response;
+
+import com.github.klefstad_teaching.cs122b.movies.util.BoundedCache;
+
+public class CacheStatsResponse {
+    private BoundedCache.Stats movies;
+    private BoundedCache.Stats persons;
+    private BoundedCache.Stats totals;
+
+    public BoundedCache.Stats getMovies() {
+        return movies;
+    }
+
+    public void setMovies(BoundedCache.Stats movies) {
+        this.movies = movies;
+    }
+
+    public BoundedCache.Stats getPersons() {
+        return persons;
+    }
+
+    public void setPersons(BoundedCache.Stats persons) {
+        this.persons = persons;
+    }
+
+    public BoundedCache.Stats getTotals() {
+        return totals;
+    }
+
+    public void setTotals(BoundedCache.Stats totals) {
+        this.totals = totals;
+    }
+}
@@ -0,0 +1,24 @@
+package com.github.klefstad_teaching.cs122b.movies.model.response;
+
+import com.github.klefstad_teaching.cs122b.core.result.Result;
+
+public class MovieBatchResponse {
+    private Result result;
+    private MovieGetByMovieIdResponse[] movies;
+
+    public Result getResult() {
+        return result;
+    }
+
+    public void setResult(Result result) {
+        this.result = result;
+    }
+
+    public MovieGetByMovieIdResponse[] getMovies() {
+        return movies;
+    }
+
+    public void setMovies(MovieGetByMovieIdResponse[] movies) {
+        this.movies = movies;
+    }
+}
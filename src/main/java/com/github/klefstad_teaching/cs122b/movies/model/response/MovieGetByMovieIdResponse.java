@@ -1,10 +1,12 @@
 package com.github.klefstad_teaching.cs122b.movies.model.response;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.github.klefstad_teaching.cs122b.core.result.Result;
 import com.github.klefstad_teaching.cs122b.movies.repo.entity.Genre;
 import com.github.klefstad_teaching.cs122b.movies.repo.entity.Movie;
 import com.github.klefstad_teaching.cs122b.movies.repo.entity.Person;
 
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class MovieGetByMovieIdResponse {
     private Result result;
     private Movie movie;
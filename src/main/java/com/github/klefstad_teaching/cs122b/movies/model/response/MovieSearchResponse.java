@@ -1,13 +1,17 @@
 package com.github.klefstad_teaching.cs122b.movies.model.response;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.github.klefstad_teaching.cs122b.core.result.MoviesResults;
 import com.github.klefstad_teaching.cs122b.core.result.Result;
 import com.github.klefstad_teaching.cs122b.movies.repo.entity.Movie;
 
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class MovieSearchResponse {
 
     private Result result;
     private Movie[] movies;
+    private String cursor;
+    private Long total;
 
     public Result getResult() {
         return result;
@@ -24,4 +28,20 @@ public class MovieSearchResponse {
     public void setMovies(Movie[] movies) {
         this.movies = movies;
     }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public Long getTotal() {
+        return total;
+    }
+
+    public void setTotal(Long total) {
+        this.total = total;
+    }
 }
@@ -9,6 +9,8 @@ public class PersonSearchResponse {
     private Result result;
     private PersonSearchModel[] persons;
     private PersonSearchModel person;
+    private String cursor;
+    private Long total;
 
     public Result getResult() {
         return result;
@@ -33,4 +35,20 @@ public class PersonSearchResponse {
     public void setPerson(PersonSearchModel person) {
         this.person = person;
     }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public Long getTotal() {
+        return total;
+    }
+
+    public void setTotal(Long total) {
+        this.total = total;
+    }
 }
@@ -0,0 +1,88 @@
+package com.github.klefstad_teaching.cs122b.movies.model.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PoolStatsResponse {
+    private int     active;
+    private int     idle;
+    private int     pending;
+    private int     total;
+    private int     maxSize;
+    private double  acquireMeanMillis;
+    private double  acquireMaxMillis;
+    private Integer jdbcPermitsAvailable;
+    private Integer jdbcPermitsWaiting;
+
+    public int getActive() {
+        return active;
+    }
+
+    public void setActive(int active) {
+        this.active = active;
+    }
+
+    public int getIdle() {
+        return idle;
+    }
+
+    public void setIdle(int idle) {
+        this.idle = idle;
+    }
+
+    public int getPending() {
+        return pending;
+    }
+
+    public void setPending(int pending) {
+        this.pending = pending;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public double getAcquireMeanMillis() {
+        return acquireMeanMillis;
+    }
+
+    public void setAcquireMeanMillis(double acquireMeanMillis) {
+        this.acquireMeanMillis = acquireMeanMillis;
+    }
+
+    public double getAcquireMaxMillis() {
+        return acquireMaxMillis;
+    }
+
+    public void setAcquireMaxMillis(double acquireMaxMillis) {
+        this.acquireMaxMillis = acquireMaxMillis;
+    }
+
+    public Integer getJdbcPermitsAvailable() {
+        return jdbcPermitsAvailable;
+    }
+
+    public void setJdbcPermitsAvailable(Integer jdbcPermitsAvailable) {
+        this.jdbcPermitsAvailable = jdbcPermitsAvailable;
+    }
+
+    public Integer getJdbcPermitsWaiting() {
+        return jdbcPermitsWaiting;
+    }
+
+    public void setJdbcPermitsWaiting(Integer jdbcPermitsWaiting) {
+        this.jdbcPermitsWaiting = jdbcPermitsWaiting;
+    }
+}
@@ -0,0 +1,27 @@
+package com.github.klefstad_teaching.cs122b.movies.model.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.github.klefstad_teaching.cs122b.core.result.Result;
+import com.github.klefstad_teaching.cs122b.movies.repo.entity.Suggestion;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SuggestResponse {
+    private Result result;
+    private Suggestion[] suggestions;
+
+    public Result getResult() {
+        return result;
+    }
+
+    public void setResult(Result result) {
+        this.result = result;
+    }
+
+    public Suggestion[] getSuggestions() {
+        return suggestions;
+    }
+
+    public void setSuggestions(Suggestion[] suggestions) {
+        this.suggestions = suggestions;
+    }
+}
@@ -0,0 +1,30 @@
+package com.github.klefstad_teaching.cs122b.movies.repo;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Runs a {@link MovieRepo} method on the executor of its query class, see
+ * {@link Bulkheads}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Bulkhead
+{
+    QueryClass value();
+
+    enum QueryClass
+    {
+        /**
+         * Primary key lookups: cheap, latency sensitive.
+         */
+        LOOKUP,
+
+        /**
+         * Filtered and wildcard searches: may scan.
+         */
+        SEARCH
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.klefstad_teaching.cs122b.movies.repo;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs each {@link Bulkhead} annotated method on the executor of its query
+ * class, see {@link Bulkheads}.
+ *
+ * <p>Ordered ahead of {@link ReplicaReadAspect}, so replica routing is
+ * decided on the bulkhead thread.
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+public class BulkheadAspect
+{
+    private final Bulkheads bulkheads;
+
+    @Autowired
+    public BulkheadAspect(Bulkheads bulkheads)
+    {
+        this.bulkheads = bulkheads;
+    }
+
+    @Around(value = "@annotation(bulkhead)", argNames = "joinPoint,bulkhead")
+    public Object isolate(ProceedingJoinPoint joinPoint, Bulkhead bulkhead) throws Throwable
+    {
+        return bulkheads.run(bulkhead.value(), joinPoint::proceed);
+    }
+}
@@ -0,0 +1,16 @@
+package com.github.klefstad_teaching.cs122b.movies.repo;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * A bulkhead had no thread free and no queue space for the request.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class BulkheadFullException extends RuntimeException
+{
+    public BulkheadFullException(Bulkhead.QueryClass queryClass)
+    {
+        super("The " + queryClass.name().toLowerCase() + " bulkhead is full");
+    }
+}
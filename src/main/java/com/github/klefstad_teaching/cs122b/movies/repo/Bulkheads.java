@@ -0,0 +1,227 @@
+package com.github.klefstad_teaching.cs122b.movies.repo;
+
+import com.github.klefstad_teaching.cs122b.movies.config.MoviesServiceConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * One bounded executor per query class, so a burst of expensive searches
+ * can hold at most the search threads' worth of connections and never
+ * queues in front of id lookups. Size the two thread counts to add up to
+ * no more than the connection pool, so each class effectively has its own
+ * share of connections.
+ *
+ * <p>{@link BulkheadAspect} runs the annotated {@link MovieRepo} methods
+ * here; the catalog indexes run their loads through {@link #load}, so a
+ * rebuild takes a search thread and its connection like the searches it
+ * stands in for, instead of taking one from outside every bulkhead.
+ *
+ * <p>When a bulkhead's threads are busy and its queue is full, the call
+ * either fails at once ({@code fail}) or waits up to
+ * {@code movie.bulkhead.wait-millis} for queue space ({@code wait}); either
+ * way it then fails with {@link BulkheadFullException}. A bulkhead with zero
+ * threads is off and runs calls on the calling thread, as does a call made
+ * from one of its own threads.
+ *
+ * <p>Publishes {@code movies.bulkhead.active}, {@code .queued},
+ * {@code .threads} and {@code .queue.capacity} gauges, a
+ * {@code .rejected} counter and a {@code .wait} timer, tagged with the
+ * bulkhead.
+ */
+@Component
+public class Bulkheads implements DisposableBean
+{
+    private static final ThreadLocal<Bulkhead.QueryClass> CURRENT = new ThreadLocal<>();
+
+    private final Map<Bulkhead.QueryClass, Pool> pools = new EnumMap<>(Bulkhead.QueryClass.class);
+
+    @Autowired
+    public Bulkheads(MoviesServiceConfig config, MeterRegistry registry)
+    {
+        MoviesServiceConfig.Bulkhead settings = config.getBulkhead();
+        pools.put(Bulkhead.QueryClass.LOOKUP, new Pool(
+            Bulkhead.QueryClass.LOOKUP,
+            settings.getLookupThreads(),
+            settings.getLookupQueue(),
+            settings.getLookupRejection(),
+            settings.getWaitMillis(),
+            registry
+        ));
+        pools.put(Bulkhead.QueryClass.SEARCH, new Pool(
+            Bulkhead.QueryClass.SEARCH,
+            settings.getSearchThreads(),
+            settings.getSearchQueue(),
+            settings.getSearchRejection(),
+            settings.getWaitMillis(),
+            registry
+        ));
+    }
+
+    /**
+     * Runs {@code work} on a thread of the {@code queryClass} bulkhead and
+     * waits for it.
+     *
+     * @throws BulkheadFullException when the bulkhead has no room for it
+     */
+    public <T> T run(Bulkhead.QueryClass queryClass, Work<T> work) throws Throwable
+    {
+        return pools.get(queryClass).run(work);
+    }
+
+    /**
+     * Runs an index load in the {@link Bulkhead.QueryClass#SEARCH}
+     * bulkhead.
+     *
+     * @throws BulkheadFullException when the bulkhead has no room for it
+     */
+    public <T> T load(Supplier<T> load)
+    {
+        try {
+            return run(Bulkhead.QueryClass.SEARCH, load::get);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (InterruptedException e) {
+            throw new IllegalStateException("Interrupted waiting for an index load", e);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    @Override
+    public void destroy()
+    {
+        pools.values().forEach(Pool::shutdown);
+    }
+
+    @FunctionalInterface
+    public interface Work<T>
+    {
+        T run() throws Throwable;
+    }
+
+    private static final class Pool
+    {
+        private final Bulkhead.QueryClass queryClass;
+        private final ThreadPoolExecutor  executor;
+        private final Counter             rejected;
+        private final Timer               wait;
+
+        private Pool(Bulkhead.QueryClass queryClass, int threads, int queue,
+                     MoviesServiceConfig.BulkheadRejection rejection, long waitMillis, MeterRegistry registry)
+        {
+            this.queryClass = queryClass;
+            String tag = queryClass.name().toLowerCase();
+
+            this.rejected = Counter.builder("movies.bulkhead.rejected").tag("bulkhead", tag).register(registry);
+            this.wait = Timer.builder("movies.bulkhead.wait")
+                             .tag("bulkhead", tag)
+                             .publishPercentiles(0.5, 0.95, 0.99)
+                             .register(registry);
+
+            if (threads <= 0)
+            {
+                this.executor = null;
+                return;
+            }
+
+            AtomicInteger count = new AtomicInteger();
+            RejectedExecutionHandler handler = rejection == MoviesServiceConfig.BulkheadRejection.WAIT
+                ? (task, pool) -> {
+                    try {
+                        if (pool.isShutdown() || !pool.getQueue().offer(task, waitMillis, TimeUnit.MILLISECONDS))
+                        {
+                            throw new RejectedExecutionException();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException(e);
+                    }
+                }
+                : new ThreadPoolExecutor.AbortPolicy();
+
+            this.executor = new ThreadPoolExecutor(
+                threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queue)),
+                task -> {
+                    Thread thread = new Thread(() -> {
+                        CURRENT.set(queryClass);
+                        task.run();
+                    }, tag + "-bulkhead-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                handler
+            );
+
+            Gauge.builder("movies.bulkhead.active", executor, ThreadPoolExecutor::getActiveCount)
+                 .tag("bulkhead", tag).register(registry);
+            Gauge.builder("movies.bulkhead.queued", executor, pool -> pool.getQueue().size())
+                 .tag("bulkhead", tag).register(registry);
+            Gauge.builder("movies.bulkhead.threads", executor, ThreadPoolExecutor::getMaximumPoolSize)
+                 .tag("bulkhead", tag).register(registry);
+            Gauge.builder("movies.bulkhead.queue.capacity", executor, pool -> pool.getQueue().remainingCapacity() + pool.getQueue().size())
+                 .tag("bulkhead", tag).register(registry);
+        }
+
+        private <T> T run(Work<T> work) throws Throwable
+        {
+            if (executor == null || CURRENT.get() == queryClass)
+            {
+                return work.run();
+            }
+
+            long submitted = System.nanoTime();
+            Future<T> result;
+            try {
+                result = executor.submit(() -> {
+                    wait.record(System.nanoTime() - submitted, TimeUnit.NANOSECONDS);
+                    try {
+                        return work.run();
+                    } catch (Exception | Error e) {
+                        throw e;
+                    } catch (Throwable t) {
+                        throw new ExecutionException(t);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                rejected.increment();
+                throw new BulkheadFullException(queryClass);
+            }
+
+            try {
+                return result.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof ExecutionException ? e.getCause().getCause() : e.getCause();
+            } catch (InterruptedException e) {
+                result.cancel(true);
+                Thread.currentThread().interrupt();
+                throw e;
+            }
+        }
+
+        private void shutdown()
+        {
+            if (executor != null)
+            {
+                executor.shutdownNow();
+            }
+        }
+    }
+}
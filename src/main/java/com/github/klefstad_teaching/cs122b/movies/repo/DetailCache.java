@@ -0,0 +1,170 @@
+package com.github.klefstad_teaching.cs122b.movies.repo;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.github.klefstad_teaching.cs122b.movies.config.MoviesServiceConfig;
+import com.github.klefstad_teaching.cs122b.movies.model.response.MovieGetByMovieIdResponse;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.CastIndex;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.CreditGraph;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.FuzzyNameIndex;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.MovieCatalog;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.SubstringIndex;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.SuggestIndex;
+import com.github.klefstad_teaching.cs122b.movies.repo.entity.PersonSearchModel;
+import com.github.klefstad_teaching.cs122b.movies.util.BoundedCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * LRU cache in front of the movie and person detail lookups. Keys carry the
+ * caller's {@code showHidden} flag, so a hidden movie loaded for an admin or
+ * employee is never served to anyone else.
+ */
+@Component
+public class DetailCache
+{
+    private final MovieRepo repo;
+    private final CastIndex castIndex;
+    private final FuzzyNameIndex fuzzyNames;
+    private final CreditGraph creditGraph;
+    private final SubstringIndex substringIndex;
+    private final MovieCatalog catalog;
+    private final SuggestIndex suggestIndex;
+
+    private final BoundedCache<String, MovieGetByMovieIdResponse> movies;
+    private final BoundedCache<String, PersonSearchModel>         persons;
+
+    @Autowired
+    public DetailCache(MovieRepo repo, CastIndex castIndex, FuzzyNameIndex fuzzyNames, CreditGraph creditGraph,
+                       SubstringIndex substringIndex, MovieCatalog catalog, SuggestIndex suggestIndex,
+                       MoviesServiceConfig config)
+    {
+        this.repo = repo;
+        this.castIndex = castIndex;
+        this.fuzzyNames = fuzzyNames;
+        this.creditGraph = creditGraph;
+        this.substringIndex = substringIndex;
+        this.catalog = catalog;
+        this.suggestIndex = suggestIndex;
+        this.movies = new BoundedCache<>(config.getDetailCache().getSize());
+        this.persons = new BoundedCache<>(config.getDetailCache().getSize());
+    }
+
+    /**
+     * Returns a fresh response holding the cached movie, genres and persons;
+     * the caller is free to set its result.
+     */
+    public MovieGetByMovieIdResponse getMovieDetails(Long movieId, boolean showHidden) throws JsonProcessingException
+    {
+        return copy(movies.get(key(movieId, showHidden), () -> repo.getMovieDetails(movieId, showHidden)));
+    }
+
+    /**
+     * Batch form of {@link #getMovieDetails(Long, boolean)}. Cached movies
+     * are served from the cache and the rest are loaded together, then
+     * cached. Responses follow the order of {@code movieIds}; ids that do
+     * not exist or are hidden from the caller are skipped.
+     */
+    public List<MovieGetByMovieIdResponse> getMovieDetails(List<Long> movieIds, boolean showHidden) throws JsonProcessingException
+    {
+        Map<Long, MovieGetByMovieIdResponse> found = new HashMap<>();
+        Set<Long> missing = new LinkedHashSet<>();
+        for (Long movieId : new LinkedHashSet<>(movieIds))
+        {
+            MovieGetByMovieIdResponse cached = movies.getIfPresent(key(movieId, showHidden));
+            if (cached != null)
+            {
+                found.put(movieId, cached);
+            }
+            else
+            {
+                missing.add(movieId);
+            }
+        }
+
+        long started = movies.generation();
+        repo.getMovieDetails(missing, showHidden).forEach((movieId, response) -> {
+            movies.put(key(movieId, showHidden), response, started);
+            found.put(movieId, response);
+        });
+
+        return movieIds.stream()
+                       .distinct()
+                       .filter(found::containsKey)
+                       .map(movieId -> copy(found.get(movieId)))
+                       .collect(Collectors.toList());
+    }
+
+    public PersonSearchModel getPersonByPersonId(Long personId, boolean showHidden) throws JsonProcessingException
+    {
+        return persons.get(key(personId, showHidden), () -> repo.getPersonByPersonId(personId, showHidden));
+    }
+
+    /**
+     * Drops the movie and re-reads its cast and credits, picking up credit
+     * changes. The substring index stops ruling it out by its old title,
+     * and the movie catalog and suggest tries take its hidden flag at once
+     * and are rebuilt.
+     */
+    public void invalidateMovie(Long movieId)
+    {
+        creditGraph.refreshMovie(movieId);
+        castIndex.refreshMovie(movieId);
+        substringIndex.refreshMovie(movieId);
+        catalog.refreshMovie(movieId);
+        suggestIndex.refreshMovie(movieId);
+        movies.invalidate(key(movieId, true));
+        movies.invalidate(key(movieId, false));
+    }
+
+    /**
+     * Drops the person and, since cast lists embed person names and are
+     * ordered by popularity, re-sorts their casts and drops every cached
+     * movie. The fuzzy name index picks up the new name and popularity and
+     * the credit graph their credits; the substring index stops ruling them
+     * out by their old name, and the movie catalog, which holds director
+     * names, and the suggest tries are rebuilt.
+     */
+    public void invalidatePerson(Long personId)
+    {
+        creditGraph.refreshPerson(personId);
+        castIndex.refreshPerson(personId);
+        fuzzyNames.refreshPerson(personId);
+        substringIndex.refreshPerson(personId);
+        catalog.refreshPerson(personId);
+        suggestIndex.refreshPerson(personId);
+        persons.invalidate(key(personId, true));
+        persons.invalidate(key(personId, false));
+        movies.clear();
+    }
+
+    public BoundedCache.Stats movieStats()
+    {
+        return movies.stats();
+    }
+
+    public BoundedCache.Stats personStats()
+    {
+        return persons.stats();
+    }
+
+    private static MovieGetByMovieIdResponse copy(MovieGetByMovieIdResponse cached)
+    {
+        MovieGetByMovieIdResponse response = new MovieGetByMovieIdResponse();
+        response.setMovie(cached.getMovie());
+        response.setGenres(cached.getGenres());
+        response.setPersons(cached.getPersons());
+        return response;
+    }
+
+    private static String key(Long id, boolean showHidden)
+    {
+        return id + (showHidden ? ":all" : ":visible");
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.klefstad_teaching.cs122b.movies.repo;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Caps the number of connections checked out at once with a fair
+ * semaphore. With a thread per request and no bound on threads, this keeps
+ * the queue for MySQL in the service, in arrival order, instead of piling
+ * every request onto the pool. A permit is held from
+ * {@code getConnection()} until the connection is closed.
+ */
+public class LimitedDataSource extends DelegatingDataSource
+{
+    private final Semaphore permits;
+    private final int       maxPermits;
+    private final long      timeoutMillis;
+
+    public LimitedDataSource(DataSource target, int permits, long timeoutMillis)
+    {
+        super(target);
+        this.permits = new Semaphore(permits, true);
+        this.maxPermits = permits;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException
+    {
+        acquire();
+        try {
+            return limited(super.getConnection());
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException
+    {
+        acquire();
+        try {
+            return limited(super.getConnection(username, password));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public int getMaxPermits()
+    {
+        return maxPermits;
+    }
+
+    public int getAvailablePermits()
+    {
+        return permits.availablePermits();
+    }
+
+    public int getWaiting()
+    {
+        return permits.getQueueLength();
+    }
+
+    private void acquire() throws SQLException
+    {
+        try {
+            if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS))
+            {
+                throw new SQLTransientConnectionException(
+                    "No JDBC permit available within " + timeoutMillis + "ms (" + maxPermits + " permits)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted waiting for a JDBC permit", e);
+        }
+    }
+
+    /**
+     * Wraps {@code connection} so that its first {@code close()} returns the
+     * permit.
+     */
+    private Connection limited(Connection connection)
+    {
+        AtomicBoolean released = new AtomicBoolean();
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getName().equals("close") && released.compareAndSet(false, true))
+            {
+                try {
+                    return invoke(connection, method, args);
+                } finally {
+                    permits.release();
+                }
+            }
+            return invoke(connection, method, args);
+        };
+        return (Connection) Proxy.newProxyInstance(
+            Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+
+    private static Object invoke(Connection connection, Method method, Object[] args) throws Throwable
+    {
+        try {
+            return method.invoke(connection, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
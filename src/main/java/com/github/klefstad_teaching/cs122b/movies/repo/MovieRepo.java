@@ -4,257 +4,463 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.klefstad_teaching.cs122b.core.error.ResultError;
 import com.github.klefstad_teaching.cs122b.core.result.MoviesResults;
+import com.github.klefstad_teaching.cs122b.core.result.Result;
+import com.github.klefstad_teaching.cs122b.movies.config.MoviesServiceConfig;
+import com.github.klefstad_teaching.cs122b.movies.metrics.RepoMetrics;
+import com.github.klefstad_teaching.cs122b.movies.model.response.MovieGetByMovieIdResponse;
 import com.github.klefstad_teaching.cs122b.movies.model.response.MovieSearchResponse;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.CastIndex;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.CreditGraph;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.FuzzyNameIndex;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.GenreDictionary;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.MovieCatalog;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.SubstringIndex;
 import com.github.klefstad_teaching.cs122b.movies.repo.entity.*;
+import com.github.klefstad_teaching.cs122b.movies.util.Validate;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Component;
 
 import java.lang.reflect.Type;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Component
 public class MovieRepo
 {
     private final NamedParameterJdbcTemplate template;
     private final ObjectMapper objectMapper;
+    private final MoviesServiceConfig config;
+    private final Validate validate;
+    private final MovieCatalog catalog;
+    private final SubstringIndex substringIndex;
+    private final QueryShapeCache shapes;
+    private final RepoMetrics metrics;
+    private final GenreDictionary genres;
+    private final CastIndex castIndex;
+    private final FuzzyNameIndex fuzzyNames;
+    private final CreditGraph creditGraph;
+
+    private static final String MOVIE_JSON =
+        "JSON_OBJECT('id', s.id, 'title', s.title, 'year', s.year, 'director', s.director_name, 'rating', s.rating, 'backdropPath', s.backdrop_path, 'posterPath', s.poster_path, 'hidden', s.hidden)";
+
+    private static final String MOVIE_DETAIL_JSON =
+        "JSON_OBJECT('id', m.id, 'title', m.title, 'year', m.year, 'director', director.name, 'rating', m.rating, 'numVotes', m.num_votes, 'budget', m.budget, 'revenue', m.revenue, 'overview', m.overview, 'backdropPath', m.backdrop_path, 'posterPath', m.poster_path, 'hidden', m.hidden)";
+
+    private static final String PERSON_JSON =
+        "JSON_OBJECT('id', s.id, 'name', s.name, 'birthday', s.birthday, 'biography', s.biography, 'birthplace', s.birthplace, 'popularity', s.popularity, 'profilePath', s.profile_path)";
+
+    /**
+     * Maps the {@code id, title, year, director_name, rating, backdrop_path,
+     * poster_path, hidden} columns of the movie search queries.
+     */
+    private static final RowMapper<Movie> MOVIE_ROW = (rs, rowNum) -> {
+        Movie movie = new Movie();
+        movie.setId(rs.getLong(1));
+        movie.setTitle(rs.getString(2));
+        movie.setYear(rs.getInt(3));
+        movie.setDirector(rs.getString(4));
+        movie.setRating(rs.getDouble(5));
+        movie.setBackdropPath(rs.getString(6));
+        movie.setPosterPath(rs.getString(7));
+        movie.setHidden(rs.getBoolean(8));
+        return movie;
+    };
+
+    /**
+     * Maps the {@code id, name, birthday, biography, birthplace, popularity,
+     * profile_path} columns of the person queries.
+     */
+    private static final RowMapper<PersonSearchModel> PERSON_ROW = (rs, rowNum) -> {
+        PersonSearchModel person = new PersonSearchModel();
+        person.setId(rs.getLong(1));
+        person.setName(rs.getString(2));
+        person.setBirthday(rs.getString(3));
+        person.setBiography(rs.getString(4));
+        person.setBirthplace(rs.getString(5));
+        float popularity = rs.getFloat(6);
+        person.setPopularity(rs.wasNull() ? null : popularity);
+        person.setProfilePath(rs.getString(7));
+        return person;
+    };
 
     @Autowired
-    public MovieRepo(ObjectMapper objectMapper, NamedParameterJdbcTemplate template)
+    public MovieRepo(ObjectMapper objectMapper, NamedParameterJdbcTemplate template,
+                     MoviesServiceConfig config, Validate validate, MovieCatalog catalog,
+                     SubstringIndex substringIndex, QueryShapeCache shapes, RepoMetrics metrics,
+                     GenreDictionary genres, CastIndex castIndex, FuzzyNameIndex fuzzyNames,
+                     CreditGraph creditGraph)
     {
         this.template = template;
         this.objectMapper = objectMapper;
+        this.config = config;
+        this.validate = validate;
+        this.catalog = catalog;
+        this.substringIndex = substringIndex;
+        this.shapes = shapes;
+        this.metrics = metrics;
+        this.genres = genres;
+        this.castIndex = castIndex;
+        this.fuzzyNames = fuzzyNames;
+        this.creditGraph = creditGraph;
     }
 
+    @Timed(value = RepoMetrics.REPO_TIMER, extraTags = {"method", "searchMovies"}, percentiles = {0.5, 0.95, 0.99})
+    @Bulkhead(Bulkhead.QueryClass.SEARCH)
     public Movie[] searchMovies(MovieQuery movieQuery, boolean showHidden) throws JsonProcessingException {
+        // Relevance ranking only exists in the catalog's full-text index.
+        if (config.getSearchEngine() == MoviesServiceConfig.SearchEngine.IN_MEMORY || movieQuery.getQ() != null)
+        {
+            return searchMoviesInMemory(movieQuery, showHidden);
+        }
+
+        String orderBy = validate.orderBy(movieQuery.getOrderBy(), "title", Validate.MOVIE_ORDER_BY);
+        boolean descending = validate.isDescending(movieQuery.getDirection());
+        int limit = validate.limit(movieQuery.getLimit());
+        int offset = validate.offset(movieQuery.getPage(), limit);
+
         MapSqlParameterSource source = new MapSqlParameterSource();
+        int flags = bindMovieFilters(movieQuery, showHidden, source);
+
+        if (movieQuery.getCursor() != null)
+        {
+            SearchCursor cursor = SearchCursor.decode(movieQuery.getCursor(), orderBy, descending);
+            cursor.bind(source, movieSqlType(orderBy));
+            flags |= QueryShapeCache.CURSOR | (cursor.hasValue() ? QueryShapeCache.CURSOR_VALUE : 0);
+            offset = 0;
+        }
+
+        if (descending)
+        {
+            flags |= QueryShapeCache.DESCENDING;
+        }
+
+        source.addValue("limit", limit, Types.INTEGER);
+        source.addValue("offset", offset, Types.INTEGER);
+
+        int shape = flags;
+        boolean rows = config.getResultMapping() == MoviesServiceConfig.ResultMapping.ROWS;
+        String sql = shapes.sql(rows ? "searchMovies:rows" : "searchMovies", shape, orderBy,
+                                () -> rows ? buildSearchMoviesSql(shape, orderBy) : aggregate(MOVIE_JSON, buildSearchMoviesSql(shape, orderBy)));
+
+        if (rows)
+        {
+            return queryRows("searchMovies", sql, source, MOVIE_ROW, new Movie[0], MoviesResults.NO_MOVIES_FOUND_WITHIN_SEARCH);
+        }
+
+        String jsonArrayString = this.template.queryForObject(sql, source, (rs,rowNum)-> rs.getString(1));
+
+        if (jsonArrayString == null) {
+            throw new ResultError(MoviesResults.NO_MOVIES_FOUND_WITHIN_SEARCH);
+        }
+
+        return readJsonArray("searchMovies", jsonArrayString, Movie[].class);
+
+    }
+
+    static String buildSearchMoviesSql(int flags, String orderBy)
+    {
         String sql =
-                "SELECT JSON_ARRAYAGG(JSON_OBJECT('id', s.id, 'title', s.title, 'year', s.year, 'director', s.name, 'rating', s.rating, 'backdropPath', s.backdrop_path, 'posterPath', s.poster_path, 'hidden', s.hidden)) " +
-                "FROM (SELECT m.id, m.title, m.year, director.name, m.rating, m.backdrop_path, m.poster_path, m.hidden " +
+                "SELECT m.id, m.title, m.year, director.name AS director_name, m.rating, m.backdrop_path, m.poster_path, m.hidden " +
                 "FROM movies.movie m " +
                 "JOIN movies.person director ON director.id = m.director_id ";
-        if (movieQuery.getGenre() != null)
+
+        List<String> where = new ArrayList<>();
+        if ((flags & QueryShapeCache.TITLE_IDS) != 0)
+        {
+            where.add(inIds("m.id", "titleIds"));
+        }
+        if ((flags & QueryShapeCache.TITLE) != 0)
+        {
+            where.add("m.title LIKE :title");
+        }
+        if ((flags & QueryShapeCache.GENRE) != 0)
+        {
+            // A semi-join, so a movie in several matching genres is listed once.
+            where.add("EXISTS (SELECT 1 FROM movies.movie_genre mg WHERE mg.movie_id = m.id AND " + inIds("mg.genre_id", "genreIds") + ")");
+        }
+        if ((flags & QueryShapeCache.DIRECTOR_IDS) != 0)
+        {
+            where.add(inIds("director.id", "directorIds"));
+        }
+        if ((flags & QueryShapeCache.DIRECTOR) != 0)
+        {
+            where.add("director.name LIKE :director");
+        }
+        if ((flags & QueryShapeCache.YEAR) != 0)
+        {
+            where.add("m.year = :year");
+        }
+        if ((flags & QueryShapeCache.HIDE_HIDDEN) != 0)
         {
-            sql += "JOIN movies.movie_genre mg on mg.movie_id = m.id JOIN movies.genre g on g.id = mg.genre_id ";
+            where.add("m.hidden = 0");
         }
-        boolean whereAdded = false;
+
+        return sql + pageClause(where, flags, "m." + orderBy, "m.id");
+    }
+
+    private Movie[] searchMoviesInMemory(MovieQuery movieQuery, boolean showHidden)
+    {
+        String orderBy = validate.orderBy(movieQuery.getOrderBy(), "title", Validate.MOVIE_ORDER_BY);
+        boolean descending = validate.isDescending(movieQuery.getDirection());
+        int limit = validate.limit(movieQuery.getLimit());
+        int offset = validate.offset(movieQuery.getPage(), limit);
+
+        SearchCursor cursor = null;
+        if (movieQuery.getCursor() != null && movieQuery.getQ() == null)
+        {
+            cursor = SearchCursor.decode(movieQuery.getCursor(), orderBy, descending);
+            offset = 0;
+        }
+
+        Movie[] movies = catalog.searchMovies(movieQuery, orderBy, descending, limit, offset, cursor, showHidden);
+        metrics.rows("searchMovies", movies.length);
+
+        if (movies.length == 0) {
+            throw new ResultError(MoviesResults.NO_MOVIES_FOUND_WITHIN_SEARCH);
+        }
+
+        return movies;
+    }
+
+    /**
+     * Number of rows {@link #searchMovies} pages through for the filters of
+     * {@code movieQuery}; ordering, paging and cursor are ignored.
+     */
+    @Timed(value = RepoMetrics.REPO_TIMER, extraTags = {"method", "countMovies"}, percentiles = {0.5, 0.95, 0.99})
+    @Bulkhead(Bulkhead.QueryClass.SEARCH)
+    public long countMovies(MovieQuery movieQuery, boolean showHidden) {
+        if (config.getSearchEngine() == MoviesServiceConfig.SearchEngine.IN_MEMORY || movieQuery.getQ() != null)
+        {
+            return catalog.countMovies(movieQuery, showHidden);
+        }
+
+        MapSqlParameterSource source = new MapSqlParameterSource();
+        int flags = bindMovieFilters(movieQuery, showHidden, source) | QueryShapeCache.COUNT;
+        return count("searchMovies", flags, source, () -> buildSearchMoviesSql(flags, "title"));
+    }
+
+    /**
+     * Binds the filters of {@code movieQuery} to {@code source} and returns
+     * their shape flags. Fails fast when a filter cannot match anything.
+     */
+    private int bindMovieFilters(MovieQuery movieQuery, boolean showHidden, MapSqlParameterSource source)
+    {
+        int flags = 0;
+
         if (movieQuery.getTitle() != null)
         {
-            if (whereAdded)
+            flags |= QueryShapeCache.TITLE;
+            if (bindCandidates(source, "titleIds", movieTitleCandidates(movieQuery.getTitle())))
             {
-                sql += "AND ";
-            } else {
-                sql += "WHERE ";
-                whereAdded = true;
+                flags |= QueryShapeCache.TITLE_IDS;
             }
-            sql += "m.title LIKE :title ";
             String wildcardSearch = '%' + movieQuery.getTitle() + "%";
             source.addValue("title", wildcardSearch, Types.VARCHAR);
         }
 
         if (movieQuery.getGenre() != null)
         {
-            if (whereAdded)
+            flags |= QueryShapeCache.GENRE;
+            int[] genreIds = genres.idsMatching(movieQuery.getGenre());
+            if (genreIds.length == 0)
             {
-                sql += "AND ";
-            } else {
-                sql += "WHERE ";
-                whereAdded = true;
+                throw new ResultError(MoviesResults.NO_MOVIES_FOUND_WITHIN_SEARCH);
             }
-            sql += "g.name LIKE :genre ";
-            String wildcardSearch = '%' + movieQuery.getGenre() + "%";
-            source.addValue("genre", wildcardSearch, Types.VARCHAR);
+            bindIds(source, "genreIds", genreIds);
         }
 
         if (movieQuery.getDirector() != null)
         {
-            if (whereAdded)
+            flags |= QueryShapeCache.DIRECTOR;
+            if (bindCandidates(source, "directorIds", personNameCandidates(movieQuery.getDirector())))
             {
-                sql += "AND ";
-            } else {
-                sql += "WHERE ";
-                whereAdded = true;
+                flags |= QueryShapeCache.DIRECTOR_IDS;
             }
-            sql += "director.name LIKE :director ";
             String wildcardSearch = '%' + movieQuery.getDirector() + '%';
             source.addValue("director", wildcardSearch, Types.VARCHAR);
         }
 
         if (movieQuery.getYear() != null)
         {
-            if (whereAdded)
-            {
-                sql += "AND ";
-            } else {
-                sql += "WHERE ";
-                whereAdded = true;
-            }
-            sql += "m.year = :year ";
+            flags |= QueryShapeCache.YEAR;
             source.addValue("year", movieQuery.getYear(), Types.INTEGER);
         }
 
         if (showHidden == false)
         {
-            if (whereAdded)
+            flags |= QueryShapeCache.HIDE_HIDDEN;
+        }
+        return flags;
+    }
+
+    @Timed(value = RepoMetrics.REPO_TIMER, extraTags = {"method", "searchMoviesByPersonId"}, percentiles = {0.5, 0.95, 0.99})
+    @Bulkhead(Bulkhead.QueryClass.SEARCH)
+    public Movie[] searchMoviesByPersonId(Long personId, MovieByPersonIdQuery movieByPersonIdQuery, boolean showHidden) throws JsonProcessingException {
+        String orderBy = validate.orderBy(movieByPersonIdQuery.getOrderBy(), "title", Validate.MOVIE_ORDER_BY);
+        boolean descending = validate.isDescending(movieByPersonIdQuery.getDirection());
+        int limit = validate.limit(movieByPersonIdQuery.getLimit());
+        int offset = validate.offset(movieByPersonIdQuery.getPage(), limit);
+
+        MapSqlParameterSource source = new MapSqlParameterSource();
+        source.addValue("personId", personId, Types.INTEGER);
+        int flags = 0;
+
+        if (config.getCreditGraph().isEnabled())
+        {
+            int[] movieIds = creditGraph.moviesOf(personId);
+            if (movieIds.length == 0)
             {
-                sql += "AND ";
-            } else {
-                sql += "WHERE ";
-                whereAdded = true;
+                throw new ResultError(MoviesResults.NO_MOVIES_WITH_PERSON_ID_FOUND);
             }
-            sql += "m.hidden = 0 ";
+            bindIds(source, "creditMovieIds", movieIds);
+            flags |= QueryShapeCache.CREDIT_IDS;
         }
 
-        sql += "ORDER BY ";
-        if (movieQuery.getOrderBy() == null)
+        if (showHidden == false)
         {
-            sql += "m.title ";
-        } else {
-            if (movieQuery.getOrderBy() != "title" && movieQuery.getOrderBy() != "rating" && movieQuery.getOrderBy() != "year") {
-                throw new ResultError(MoviesResults.INVALID_ORDER_BY);
-            } else {
-                sql += "m." + movieQuery.getOrderBy() + " ";
-            }
+            flags |= QueryShapeCache.HIDE_HIDDEN;
         }
 
-        if (movieQuery.getDirection() == null)
+        if (movieByPersonIdQuery.getCursor() != null)
         {
-            sql += "ASC, m.id ";
-        } else {
-            if (movieQuery.getDirection() != "asc" && movieQuery.getDirection() != "desc") {
-                throw new ResultError(MoviesResults.INVALID_DIRECTION);
-            } else {
-                sql += movieQuery.getDirection() + ", m.id ";
-            }
+            SearchCursor cursor = SearchCursor.decode(movieByPersonIdQuery.getCursor(), orderBy, descending);
+            cursor.bind(source, movieSqlType(orderBy));
+            flags |= QueryShapeCache.CURSOR | (cursor.hasValue() ? QueryShapeCache.CURSOR_VALUE : 0);
+            offset = 0;
         }
 
-        sql += "LIMIT ";
-        Integer limit;
-        if (movieQuery.getLimit() == null)
+        if (descending)
         {
-            sql += "10 ";
-            limit = 10;
-        } else {
-            if (movieQuery.getLimit() != 10 && movieQuery.getLimit() != 25 && movieQuery.getLimit()!=50 && movieQuery.getLimit() != 100)
-            {
-                throw new ResultError(MoviesResults.INVALID_LIMIT);
-            } else {
-                sql += movieQuery.getLimit() + " ";
-                limit = movieQuery.getLimit();
-            }
+            flags |= QueryShapeCache.DESCENDING;
         }
 
-        sql += "OFFSET ";
-        if (movieQuery.getPage() == null) {
-            sql += "0) s;";
-        } else {
-            if (((movieQuery.getPage() - 1) * limit) < 1)
-            {
-                throw new ResultError(MoviesResults.INVALID_PAGE);
-            }
-            else {
-                sql += String.valueOf((movieQuery.getPage() - 1) * limit);
-                sql += ") s;";
+        source.addValue("limit", limit, Types.INTEGER);
+        source.addValue("offset", offset, Types.INTEGER);
 
-            }
-        }
+        int shape = flags;
+        boolean rows = config.getResultMapping() == MoviesServiceConfig.ResultMapping.ROWS;
+        String sql = shapes.sql(rows ? "searchMoviesByPersonId:rows" : "searchMoviesByPersonId", shape, orderBy,
+                                () -> rows ? buildSearchMoviesByPersonIdSql(shape, orderBy) : aggregate(MOVIE_JSON, buildSearchMoviesByPersonIdSql(shape, orderBy)));
 
-        System.out.println(sql);
+        if (rows)
+        {
+            return queryRows("searchMoviesByPersonId", sql, source, MOVIE_ROW, new Movie[0], MoviesResults.NO_MOVIES_WITH_PERSON_ID_FOUND);
+        }
 
         String jsonArrayString = this.template.queryForObject(sql, source, (rs,rowNum)-> rs.getString(1));
-
         if (jsonArrayString == null) {
-            throw new ResultError(MoviesResults.NO_MOVIES_FOUND_WITHIN_SEARCH);
+            throw new ResultError(MoviesResults.NO_MOVIES_WITH_PERSON_ID_FOUND);
         }
 
-        return objectMapper.readValue(jsonArrayString, Movie[].class);
-
+        return readJsonArray("searchMoviesByPersonId", jsonArrayString, Movie[].class);
     }
 
-    public Movie[] searchMoviesByPersonId(Long personId, MovieByPersonIdQuery movieByPersonIdQuery, boolean showHidden) throws JsonProcessingException {
-        MapSqlParameterSource source = new MapSqlParameterSource();
+    static String buildSearchMoviesByPersonIdSql(int flags, String orderBy)
+    {
         String sql =
-                "SELECT JSON_ARRAYAGG(JSON_OBJECT('id', s.id, 'title', s.title, 'year', s.year, 'director', s.director_name, 'rating', s.rating, 'backdropPath', s.backdrop_path, 'posterPath', s.poster_path, 'hidden', s.hidden)) " +
-                "FROM (SELECT m.id, m.title, m.year, director.name AS director_name, m.rating, m.backdrop_path, m.poster_path, m.hidden " +
-                "FROM movies.movie_person p " +
-                "JOIN movies.movie m ON m.id = p.movie_id " +
-                "JOIN movies.person director ON director.id = m.director_id " +
-                "WHERE p.person_id = :personId ";
+                "SELECT m.id, m.title, m.year, director.name AS director_name, m.rating, m.backdrop_path, m.poster_path, m.hidden ";
 
-        source.addValue("personId", personId, Types.INTEGER);
-
-        if (showHidden == false)
+        List<String> where = new ArrayList<>();
+        if ((flags & QueryShapeCache.CREDIT_IDS) != 0)
         {
-            sql += "AND m.hidden = 0 ";
+            sql += "FROM movies.movie m ";
+            where.add(inIds("m.id", "creditMovieIds"));
         }
-
-        sql += "ORDER BY ";
-        if (movieByPersonIdQuery.getOrderBy() == null)
+        else
         {
-            sql += "m.title ";
-        } else {
-            if (movieByPersonIdQuery.getOrderBy() != "title" && movieByPersonIdQuery.getOrderBy() != "rating" && movieByPersonIdQuery.getOrderBy() != "year") {
-                throw new ResultError(MoviesResults.INVALID_ORDER_BY);
-            } else {
-                sql += "m." + movieByPersonIdQuery.getOrderBy() + " ";
-            }
+            sql += "FROM movies.movie_person p " +
+                   "JOIN movies.movie m ON m.id = p.movie_id ";
+            where.add("p.person_id = :personId");
         }
-
-        if (movieByPersonIdQuery.getDirection() == null)
+        sql += "JOIN movies.person director ON director.id = m.director_id ";
+        if ((flags & QueryShapeCache.HIDE_HIDDEN) != 0)
         {
-            sql += "ASC, m.id ";
-        } else {
-            if (movieByPersonIdQuery.getDirection() != "asc" && movieByPersonIdQuery.getDirection() != "desc") {
-                throw new ResultError(MoviesResults.INVALID_DIRECTION);
-            } else {
-                sql += movieByPersonIdQuery.getDirection() + ", m.id ";
-            }
+            where.add("m.hidden = 0");
         }
 
-        sql += "LIMIT ";
-        Integer limit;
-        if (movieByPersonIdQuery.getLimit() == null)
+        return sql + pageClause(where, flags, "m." + orderBy, "m.id");
+    }
+
+    @Timed(value = RepoMetrics.REPO_TIMER, extraTags = {"method", "countMoviesByPersonId"}, percentiles = {0.5, 0.95, 0.99})
+    @Bulkhead(Bulkhead.QueryClass.SEARCH)
+    public long countMoviesByPersonId(Long personId, boolean showHidden) {
+        MapSqlParameterSource source = new MapSqlParameterSource();
+        source.addValue("personId", personId, Types.INTEGER);
+        int flags = QueryShapeCache.COUNT | (showHidden ? 0 : QueryShapeCache.HIDE_HIDDEN);
+        if (config.getCreditGraph().isEnabled())
         {
-            sql += "10 ";
-            limit = 10;
-        } else {
-            if (movieByPersonIdQuery.getLimit() != 10 && movieByPersonIdQuery.getLimit() != 25 && movieByPersonIdQuery.getLimit()!=50 && movieByPersonIdQuery.getLimit() != 100)
+            int[] movieIds = creditGraph.moviesOf(personId);
+            if (movieIds.length == 0)
             {
-                throw new ResultError(MoviesResults.INVALID_LIMIT);
-            } else {
-                sql += movieByPersonIdQuery.getLimit() + " ";
-                limit = movieByPersonIdQuery.getLimit();
+                return 0;
             }
+            bindIds(source, "creditMovieIds", movieIds);
+            flags |= QueryShapeCache.CREDIT_IDS;
         }
-
-        sql += "OFFSET ";
-        if (movieByPersonIdQuery.getPage() == null) {
-            sql += "0) s;";
-        } else {
-            if (((movieByPersonIdQuery.getPage() - 1) * limit) < 1)
-            {
-                throw new ResultError(MoviesResults.INVALID_PAGE);
-            }
-            else {
-                sql += String.valueOf((movieByPersonIdQuery.getPage() - 1) * limit);
-                sql += ") s;";
-
-            }
-        }
-        String jsonArrayString = this.template.queryForObject(sql, source, (rs,rowNum)-> rs.getString(1));
-        if (jsonArrayString == null) {
-            throw new ResultError(MoviesResults.NO_MOVIES_WITH_PERSON_ID_FOUND);
-        }
-
-        return objectMapper.readValue(jsonArrayString, Movie[].class);
+        int shape = flags;
+        return count("searchMoviesByPersonId", shape, source, () -> buildSearchMoviesByPersonIdSql(shape, "title"));
     }
 
-    public Movie getMovieDetail(Long movieId, boolean showHidden) throws JsonProcessingException {
+    /**
+     * Fetches a movie together with its genres and cast in a single round
+     * trip. The genre and cast sub-queries key directly on
+     * {@code movie_id} rather than re-joining {@code movie}, and genre names
+     * come from the {@link GenreDictionary}.
+     */
+    @Timed(value = RepoMetrics.REPO_TIMER, extraTags = {"method", "getMovieDetails"}, percentiles = {0.5, 0.95, 0.99})
+    @Bulkhead(Bulkhead.QueryClass.LOOKUP)
+    public MovieGetByMovieIdResponse getMovieDetails(Long movieId, boolean showHidden) throws JsonProcessingException {
         MapSqlParameterSource source = new MapSqlParameterSource();
+        String castSql;
+        if (config.getCastIndex().isEnabled())
+        {
+            castSql = "NULL ";
+        }
+        else if (config.getCreditGraph().isEnabled())
+        {
+            // The credit graph names the cast; only their names are read.
+            int[] personIds = creditGraph.personsOf(movieId);
+            castSql = personIds.length == 0
+                      ? "NULL "
+                      : "(SELECT JSON_ARRAYAGG(JSON_OBJECT('id', s.id, 'name', s.name)) " +
+                        "FROM (SELECT p.id, p.name " +
+                        "FROM movies.person p " +
+                        "WHERE " + inIds("p.id", "castIds") + " " +
+                        "ORDER BY p.popularity DESC, p.id) s) ";
+            bindIds(source, "castIds", personIds);
+        }
+        else
+        {
+            castSql = "(SELECT JSON_ARRAYAGG(JSON_OBJECT('id', s.id, 'name', s.name)) " +
+                      "FROM (SELECT p.id, p.name " +
+                      "FROM movies.movie_person mp " +
+                      "JOIN movies.person p ON p.id = mp.person_id " +
+                      "WHERE mp.movie_id = :movieId " +
+                      "ORDER BY p.popularity DESC, p.id) s) ";
+        }
         String sql =
-                "SELECT JSON_OBJECT('id', m.id, 'title', m.title, 'year', m.year, 'director', director.name, 'rating', m.rating, 'numVotes', m.num_votes, 'budget', m.budget, 'revenue', m.revenue, 'overview', m.overview, 'backdropPath', m.backdrop_path, 'posterPath', m.poster_path, 'hidden', m.hidden) " +
+                "SELECT " + MOVIE_DETAIL_JSON + ", " +
+                        "(SELECT JSON_ARRAYAGG(mg.genre_id) " +
+                        "FROM movies.movie_genre mg " +
+                        "WHERE mg.movie_id = :movieId), " +
+                        castSql +
                         "FROM movies.movie m " +
                         "JOIN movies.person director ON director.id = m.director_id " +
                         "WHERE m.id = :movieId ";
@@ -263,189 +469,468 @@ public class MovieRepo
         {
             sql += "AND m.hidden = 0 ";
         }
-        String jsonArrayString = this.template.queryForObject(sql, source, (rs, rowNum)-> rs.getString(1));
-        if (jsonArrayString == null) {
+
+        String[] json = this.template.queryForObject(sql, source, (rs, rowNum) -> new String[]{
+            rs.getString(1), rs.getString(2), rs.getString(3)
+        });
+        if (json == null || json[0] == null) {
             throw new ResultError(MoviesResults.NO_MOVIE_WITH_ID_FOUND);
         }
-//        System.out.println(jsonArrayString);
 
-        return objectMapper.readValue(jsonArrayString, Movie.class);
+        MovieGetByMovieIdResponse response = new MovieGetByMovieIdResponse();
+        response.setMovie(objectMapper.readValue(json[0], Movie.class));
+        response.setGenres(json[1] == null ? new Genre[0] : genres.genres(objectMapper.readValue(json[1], int[].class)));
+        if (config.getCastIndex().isEnabled())
+        {
+            response.setPersons(castIndex.cast(movieId));
+        }
+        else
+        {
+            response.setPersons(json[2] == null ? new Person[0] : objectMapper.readValue(json[2], Person[].class));
+        }
+        return response;
     }
 
-    public Genre[] getMovieGenres(Long movieId) throws JsonProcessingException {
+    /**
+     * Batch form of {@link #getMovieDetails(Long, boolean)}: one query each
+     * for the movies, their genres and (unless the cast index serves them)
+     * their casts, however many ids are asked for. Ids that do not exist or
+     * are hidden from the caller are absent from the result.
+     */
+    @Timed(value = RepoMetrics.REPO_TIMER, extraTags = {"method", "getMovieDetailsBatch"}, percentiles = {0.5, 0.95, 0.99})
+    @Bulkhead(Bulkhead.QueryClass.LOOKUP)
+    public Map<Long, MovieGetByMovieIdResponse> getMovieDetails(Collection<Long> movieIds, boolean showHidden) throws JsonProcessingException {
+        Map<Long, MovieGetByMovieIdResponse> responses = new LinkedHashMap<>();
+        if (movieIds.isEmpty())
+        {
+            return responses;
+        }
+
         MapSqlParameterSource source = new MapSqlParameterSource();
+        bindIds(source, "movieIds", movieIds);
         String sql =
-                "SELECT JSON_ARRAYAGG(JSON_OBJECT('id', s.id, 'name', s.name)) " +
-                        "FROM (SELECT DISTINCT g.id, g.name " +
-                        "FROM movies.genre g " +
-                        "JOIN movies.movie_genre mg ON mg.genre_id = g.id " +
-                        "JOIN movies.movie m ON m.id = mg.movie_id " +
-                        "WHERE m.id = :movieId " +
-                        "ORDER BY g.name) s";
-        source.addValue("movieId", movieId, Types.INTEGER);
-//        if (showHidden == false)
-//        {
-//            sql += "AND m.hidden = 0 ";
-//        }
-        String jsonArrayString = this.template.queryForObject(sql, source, (rs, rowNum)-> rs.getString(1));
-        if (jsonArrayString == null) {
-            throw new ResultError(MoviesResults.NO_MOVIE_WITH_ID_FOUND);
+                "SELECT JSON_ARRAYAGG(" + MOVIE_DETAIL_JSON + ") " +
+                        "FROM movies.movie m " +
+                        "JOIN movies.person director ON director.id = m.director_id " +
+                        "WHERE " + inIds("m.id", "movieIds") + " ";
+        if (showHidden == false)
+        {
+            sql += "AND m.hidden = 0 ";
+        }
+
+        String jsonArrayString = this.template.queryForObject(sql, source, (rs, rowNum) -> rs.getString(1));
+        if (jsonArrayString == null)
+        {
+            return responses;
+        }
+
+        for (Movie movie : readJsonArray("getMovieDetailsBatch", jsonArrayString, Movie[].class))
+        {
+            MovieGetByMovieIdResponse response = new MovieGetByMovieIdResponse();
+            response.setMovie(movie);
+            response.setGenres(new Genre[0]);
+            response.setPersons(new Person[0]);
+            responses.put(movie.getId(), response);
+        }
+
+        MapSqlParameterSource found = bindIds(new MapSqlParameterSource(), "movieIds", responses.keySet());
+
+        Map<Long, List<Integer>> genreIds = new HashMap<>();
+        this.template.query(
+            "SELECT mg.movie_id, mg.genre_id FROM movies.movie_genre mg WHERE " + inIds("mg.movie_id", "movieIds"),
+            found,
+            rs -> {
+                genreIds.computeIfAbsent(rs.getLong(1), id -> new ArrayList<>()).add(rs.getInt(2));
+            }
+        );
+        genreIds.forEach((movieId, ids) -> responses.get(movieId).setGenres(
+            genres.genres(ids.stream().mapToInt(Integer::intValue).toArray())
+        ));
+
+        if (config.getCastIndex().isEnabled())
+        {
+            responses.forEach((movieId, response) -> response.setPersons(castIndex.cast(movieId)));
+            return responses;
         }
-        return objectMapper.readValue(jsonArrayString, Genre[].class);
+
+        if (config.getCreditGraph().isEnabled())
+        {
+            creditedCasts(responses);
+            return responses;
+        }
+
+        Map<Long, List<Person>> casts = new HashMap<>();
+        this.template.query(
+            "SELECT mp.movie_id, p.id, p.name " +
+                    "FROM movies.movie_person mp " +
+                    "JOIN movies.person p ON p.id = mp.person_id " +
+                    "WHERE " + inIds("mp.movie_id", "movieIds") + " " +
+                    "ORDER BY mp.movie_id, p.popularity DESC, p.id",
+            found,
+            rs -> {
+                Person person = new Person();
+                person.setId(rs.getLong(2));
+                person.setName(rs.getString(3));
+                casts.computeIfAbsent(rs.getLong(1), id -> new ArrayList<>()).add(person);
+            }
+        );
+        casts.forEach((movieId, cast) -> responses.get(movieId).setPersons(cast.toArray(new Person[0])));
+        return responses;
+    }
+
+    /**
+     * Fills in the casts of {@code responses} from {@link CreditGraph}: one
+     * query reads every credited person's name, in cast order, and each
+     * movie takes its own persons in that order.
+     */
+    private void creditedCasts(Map<Long, MovieGetByMovieIdResponse> responses)
+    {
+        Map<Long, int[]> personIds = new HashMap<>();
+        responses.keySet().forEach(movieId -> personIds.put(movieId, creditGraph.personsOf(movieId)));
+
+        List<Integer> allPersonIds = personIds.values()
+                                              .stream()
+                                              .flatMapToInt(Arrays::stream)
+                                              .distinct()
+                                              .boxed()
+                                              .collect(Collectors.toList());
+        if (allPersonIds.isEmpty())
+        {
+            return;
+        }
+
+        Map<Integer, Person> persons = new LinkedHashMap<>();
+        this.template.query(
+            "SELECT p.id, p.name " +
+                    "FROM movies.person p " +
+                    "WHERE " + inIds("p.id", "personIds") + " " +
+                    "ORDER BY p.popularity DESC, p.id",
+            bindIds(new MapSqlParameterSource(), "personIds", allPersonIds),
+            rs -> {
+                Person person = new Person();
+                person.setId(rs.getLong(1));
+                person.setName(rs.getString(2));
+                persons.put(rs.getInt(1), person);
+            }
+        );
+
+        Map<Integer, Integer> rank = new HashMap<>();
+        persons.keySet().forEach(personId -> rank.put(personId, rank.size()));
+        personIds.forEach((movieId, ids) -> responses.get(movieId).setPersons(
+            Arrays.stream(ids)
+                  .boxed()
+                  .filter(rank::containsKey)
+                  .sorted(Comparator.comparingInt(rank::get))
+                  .map(persons::get)
+                  .toArray(Person[]::new)
+        ));
     }
 
-    public Person[] getMoviePersons(Long movieId) throws JsonProcessingException {
+    @Timed(value = RepoMetrics.REPO_TIMER, extraTags = {"method", "searchPerson"}, percentiles = {0.5, 0.95, 0.99})
+    @Bulkhead(Bulkhead.QueryClass.SEARCH)
+    public PersonSearchModel[]  searchPerson(PersonQuery personQuery, boolean showHidden) throws JsonProcessingException {
+        if (isFuzzy(personQuery))
+        {
+            return searchPersonFuzzy(personQuery, showHidden);
+        }
+
+        String orderBy = validate.orderBy(personQuery.getOrderBy(), "name", Validate.PERSON_ORDER_BY);
+        boolean descending = validate.isDescending(personQuery.getDirection());
+        int limit = validate.limit(personQuery.getLimit());
+        int offset = validate.offset(personQuery.getPage(), limit);
+
         MapSqlParameterSource source = new MapSqlParameterSource();
-        String sql =
-                "SELECT JSON_ARRAYAGG(JSON_OBJECT('id', s.id,'name', s.name)) " +
-                        "FROM (SELECT DISTINCT p.id, p.name, p.popularity " +
-                        "FROM movies.person p " +
-                        "JOIN movies.movie_person mp ON mp.person_id = p.id " +
-                        "JOIN movies.movie m ON m.id = mp.movie_id " +
-                        "WHERE m.id = :movieId " +
-                        "ORDER BY p.popularity DESC, p.id) s";
-        source.addValue("movieId", movieId, Types.INTEGER);
-//        if (showHidden == false)
-//        {
-//            sql += "AND m.hidden = 0 ";
-//        }
-        String jsonArrayString = this.template.queryForObject(sql, source, (rs, rowNum)-> rs.getString(1));
+        int flags = bindPersonFilters(personQuery, showHidden, source);
+
+        if (personQuery.getCursor() != null)
+        {
+            SearchCursor cursor = SearchCursor.decode(personQuery.getCursor(), orderBy, descending);
+            cursor.bind(source, personSqlType(orderBy));
+            flags |= QueryShapeCache.CURSOR | (cursor.hasValue() ? QueryShapeCache.CURSOR_VALUE : 0);
+            offset = 0;
+        }
+
+        if (descending)
+        {
+            flags |= QueryShapeCache.DESCENDING;
+        }
+
+        source.addValue("limit", limit, Types.INTEGER);
+        source.addValue("offset", offset, Types.INTEGER);
+
+        int shape = flags;
+        boolean rows = config.getResultMapping() == MoviesServiceConfig.ResultMapping.ROWS;
+        String sql = shapes.sql(rows ? "searchPerson:rows" : "searchPerson", shape, orderBy,
+                                () -> rows ? buildSearchPersonSql(shape, orderBy) : aggregate(PERSON_JSON, buildSearchPersonSql(shape, orderBy)));
+
+        if (rows)
+        {
+            return queryRows("searchPerson", sql, source, PERSON_ROW, new PersonSearchModel[0], MoviesResults.NO_PERSONS_FOUND_WITHIN_SEARCH);
+        }
+
+        String jsonArrayString = this.template.queryForObject(sql, source, (rs,rowNum)-> rs.getString(1));
         if (jsonArrayString == null) {
-            throw new ResultError(MoviesResults.NO_MOVIE_WITH_ID_FOUND);
+            throw new ResultError(MoviesResults.NO_PERSONS_FOUND_WITHIN_SEARCH);
         }
-        return objectMapper.readValue(jsonArrayString, Person[].class);
+
+        return readJsonArray("searchPerson", jsonArrayString, PersonSearchModel[].class);
     }
 
-    public PersonSearchModel[]  searchPerson(PersonQuery personQuery, boolean showHidden) throws JsonProcessingException {
+    /**
+     * Fuzzy name search. Persons are ranked by {@link FuzzyNameIndex},
+     * closest name first, which SQL cannot sort by, so the page is cut from
+     * the ranked ids and only its persons are read; {@code orderBy},
+     * {@code direction} and {@code cursor} do not apply. With a birthday or
+     * movie title filter as well, the ids passing it are read first.
+     */
+    private PersonSearchModel[] searchPersonFuzzy(PersonQuery personQuery, boolean showHidden) throws JsonProcessingException
+    {
+        int limit = validate.limit(personQuery.getLimit());
+        int offset = validate.offset(personQuery.getPage(), limit);
+
         MapSqlParameterSource source = new MapSqlParameterSource();
-        String sql =
-                "SELECT JSON_ARRAYAGG(JSON_OBJECT('id', s.id, 'name', s.name, 'birthday', s.birthday, 'biography', s.biography, 'birthplace', s.birthplace, 'popularity', s.popularity, 'profilePath', s.profile_path))\n" +
-                        "FROM (SELECT DISTINCT p.id, p.name, p.birthday, p.biography, p.birthplace, p.popularity, p.profile_path " +
-                        "FROM movies.person p ";
-        if (personQuery.getMovieTitle() != null) {
-            sql += "JOIN movies.movie_person mp ON p.id = mp.person_id JOIN movies.movie m on m.id = mp.movie_id ";
+        int flags = bindPersonFilters(personQuery, showHidden, source);
+
+        // The candidates bindPersonFilters bound, best first.
+        List<Integer> ranked = Arrays.stream(objectMapper.readValue((String) source.getValue("nameIds"), int[].class))
+                                     .boxed()
+                                     .collect(Collectors.toList());
+        if ((flags & (QueryShapeCache.BIRTHDAY | QueryShapeCache.TITLE)) != 0)
+        {
+            int shape = flags;
+            String sql = shapes.sql("searchPerson:ids", shape, "", () -> buildPersonIdsSql(shape));
+            Set<Integer> passing = new HashSet<>(this.template.queryForList(sql, source, Integer.class));
+            ranked.removeIf(personId -> !passing.contains(personId));
+        }
+
+        List<Integer> page = ranked.stream()
+                                   .skip(offset)
+                                   .limit(limit)
+                                   .collect(Collectors.toList());
+        if (page.isEmpty())
+        {
+            throw new ResultError(MoviesResults.NO_PERSONS_FOUND_WITHIN_SEARCH);
+        }
+
+        Map<Long, Integer> rank = new HashMap<>();
+        page.forEach(personId -> rank.put(personId.longValue(), rank.size()));
+
+        MapSqlParameterSource pageSource = bindIds(new MapSqlParameterSource(), "nameIds", page)
+            .addValue("limit", page.size(), Types.INTEGER)
+            .addValue("offset", 0, Types.INTEGER);
+
+        int shape = QueryShapeCache.NAME_IDS;
+        boolean rows = config.getResultMapping() == MoviesServiceConfig.ResultMapping.ROWS;
+        String sql = shapes.sql(rows ? "searchPerson:rows" : "searchPerson", shape, "name",
+                                () -> rows ? buildSearchPersonSql(shape, "name") : aggregate(PERSON_JSON, buildSearchPersonSql(shape, "name")));
+
+        PersonSearchModel[] persons;
+        if (rows)
+        {
+            persons = queryRows("searchPerson", sql, pageSource, PERSON_ROW, new PersonSearchModel[0], MoviesResults.NO_PERSONS_FOUND_WITHIN_SEARCH);
+        }
+        else
+        {
+            String jsonArrayString = this.template.queryForObject(sql, pageSource, (rs,rowNum)-> rs.getString(1));
+            if (jsonArrayString == null) {
+                throw new ResultError(MoviesResults.NO_PERSONS_FOUND_WITHIN_SEARCH);
+            }
+            persons = readJsonArray("searchPerson", jsonArrayString, PersonSearchModel[].class);
         }
-        boolean whereAdded = false;
-        if (personQuery.getName() != null) {
-            if (whereAdded) {
-                sql += "AND ";
-            } else{
-                sql += "WHERE ";
-                whereAdded = true;
+
+        Arrays.sort(persons, Comparator.comparingInt(person -> rank.get(person.getId())));
+        return persons;
+    }
+
+    /**
+     * Number of persons {@link #searchPerson} pages through for the filters
+     * of {@code personQuery}; ordering, paging and cursor are ignored.
+     */
+    @Timed(value = RepoMetrics.REPO_TIMER, extraTags = {"method", "countPersons"}, percentiles = {0.5, 0.95, 0.99})
+    @Bulkhead(Bulkhead.QueryClass.SEARCH)
+    public long countPersons(PersonQuery personQuery, boolean showHidden) {
+        MapSqlParameterSource source = new MapSqlParameterSource();
+        int flags = bindPersonFilters(personQuery, showHidden, source) | QueryShapeCache.COUNT;
+        return count("searchPerson", flags, source, () -> buildPersonIdsSql(flags));
+    }
+
+    private int bindPersonFilters(PersonQuery personQuery, boolean showHidden, MapSqlParameterSource source)
+    {
+        int flags = 0;
+
+        if (isFuzzy(personQuery)) {
+            // Fuzzy matches need not contain the term, so there is no LIKE.
+            flags |= QueryShapeCache.NAME_IDS;
+            int[] personIds = fuzzyNames.match(personQuery.getName());
+            if (personIds.length == 0)
+            {
+                throw new ResultError(MoviesResults.NO_PERSONS_FOUND_WITHIN_SEARCH);
+            }
+            bindIds(source, "nameIds", personIds);
+        } else if (personQuery.getName() != null) {
+            flags |= QueryShapeCache.NAME;
+            if (bindCandidates(source, "nameIds", personNameCandidates(personQuery.getName())))
+            {
+                flags |= QueryShapeCache.NAME_IDS;
             }
-            sql += "p.name LIKE :name ";
             String wildCardSearch = "%" + personQuery.getName() + "%";
             source.addValue("name", wildCardSearch, Types.VARCHAR);
         }
 
         if (personQuery.getBirthday() != null) {
-            if (whereAdded) {
-                sql += "AND ";
-            } else{
-                sql += "WHERE ";
-                whereAdded = true;
-            }
-            sql += "p.birthday = :birthday ";
+            flags |= QueryShapeCache.BIRTHDAY;
             source.addValue("birthday", personQuery.getBirthday(), Types.VARCHAR);
         }
 
         if (personQuery.getMovieTitle() != null) {
-            if (whereAdded) {
-                sql += "AND ";
-            } else{
-                sql += "WHERE ";
-                whereAdded = true;
+            flags |= QueryShapeCache.TITLE;
+            if (bindCandidates(source, "titleIds", movieTitleCandidates(personQuery.getMovieTitle())))
+            {
+                flags |= QueryShapeCache.TITLE_IDS;
             }
-            sql += "m.title LIKE :title ";
             String wildCardSearch = "%" + personQuery.getMovieTitle() + "%";
             source.addValue("title", wildCardSearch, Types.VARCHAR);
         }
 
         if (showHidden == false)
         {
-            if (whereAdded)
-            {
-                sql += "AND ";
-            } else {
-                sql += "WHERE ";
-                whereAdded = true;
-            }
-            sql += "m.hidden = 0 ";
+            flags |= QueryShapeCache.HIDE_HIDDEN;
         }
 
-        sql += "ORDER BY ";
-        if (personQuery.getOrderBy() == null)
+        if ((flags & QueryShapeCache.TITLE) != 0 && config.getCreditGraph().isEnabled())
         {
-            sql += "p.name ";
-        } else {
-            if (personQuery.getOrderBy() != "name" && personQuery.getOrderBy() != "popularity" && personQuery.getOrderBy() != "birthday") {
-                throw new ResultError(MoviesResults.INVALID_ORDER_BY);
-            } else {
-                sql += "p." + personQuery.getOrderBy() + " ";
-            }
+            flags |= bindCreditedPersons(flags, source);
         }
+        return flags;
+    }
 
-        if (personQuery.getDirection() == null)
+    /**
+     * Resolves the title filter to the persons credited on the matching
+     * movies through {@link CreditGraph}, so the person query need not join
+     * {@code movie_person}. Returns {@link QueryShapeCache#CREDIT_IDS} when
+     * {@code creditPersonIds} was bound, 0 when there are too many persons
+     * and the join is kept.
+     */
+    private int bindCreditedPersons(int flags, MapSqlParameterSource source)
+    {
+        int shape = flags & (QueryShapeCache.TITLE_IDS | QueryShapeCache.HIDE_HIDDEN);
+        String sql = shapes.sql("creditedMovieIds", shape, "id", () -> buildCreditedMovieIdsSql(shape));
+        List<Integer> movieIds = this.template.queryForList(sql, source, Integer.class);
+        if (movieIds.isEmpty())
         {
-            sql += "ASC, p.id ";
-        } else {
-            if (personQuery.getDirection() != "asc" && personQuery.getDirection() != "desc") {
-                throw new ResultError(MoviesResults.INVALID_DIRECTION);
-            } else {
-                sql += personQuery.getDirection() + ", p.id ";
-            }
+            throw new ResultError(MoviesResults.NO_PERSONS_FOUND_WITHIN_SEARCH);
         }
 
-        sql += "LIMIT ";
-        Integer limit;
-        if (personQuery.getLimit() == null)
+        int[] personIds = creditGraph.personsOfMovies(movieIds);
+        if (personIds.length > config.getCreditGraph().getMaxPersons())
         {
-            sql += "10 ";
-            limit = 10;
-        } else {
-            if (personQuery.getLimit() != 10 && personQuery.getLimit() != 25 && personQuery.getLimit()!=50 && personQuery.getLimit() != 100)
-            {
-                throw new ResultError(MoviesResults.INVALID_LIMIT);
-            } else {
-                sql += personQuery.getLimit() + " ";
-                limit = personQuery.getLimit();
-            }
+            return 0;
         }
+        if (personIds.length == 0)
+        {
+            throw new ResultError(MoviesResults.NO_PERSONS_FOUND_WITHIN_SEARCH);
+        }
+        bindIds(source, "creditPersonIds", personIds);
+        return QueryShapeCache.CREDIT_IDS;
+    }
 
-        sql += "OFFSET ";
-        if (personQuery.getPage() == null) {
-            sql += "0) s;";
-        } else {
-            if (((personQuery.getPage() - 1) * limit) < 1)
-            {
-                throw new ResultError(MoviesResults.INVALID_PAGE);
-            }
-            else {
-                sql += String.valueOf((personQuery.getPage() - 1) * limit);
-                sql += ") s;";
+    static String buildCreditedMovieIdsSql(int flags)
+    {
+        String sql = "SELECT m.id FROM movies.movie m WHERE m.title LIKE :title ";
+        if ((flags & QueryShapeCache.TITLE_IDS) != 0)
+        {
+            sql += "AND " + inIds("m.id", "titleIds") + " ";
+        }
+        if ((flags & QueryShapeCache.HIDE_HIDDEN) != 0)
+        {
+            sql += "AND m.hidden = 0 ";
+        }
+        return sql;
+    }
 
-            }
+    private static boolean isFuzzy(PersonQuery personQuery)
+    {
+        return Boolean.TRUE.equals(personQuery.getFuzzy()) && personQuery.getName() != null;
+    }
+
+    static String buildSearchPersonSql(int flags, String orderBy)
+    {
+        return personSql("p.id, p.name, p.birthday, p.biography, p.birthplace, p.popularity, p.profile_path", flags, orderBy);
+    }
+
+    /**
+     * Ids of every person passing the filters of {@code flags}, unordered;
+     * {@link QueryShapeCache#COUNT} leaves out ordering and paging.
+     */
+    static String buildPersonIdsSql(int flags)
+    {
+        return personSql("p.id", flags | QueryShapeCache.COUNT, "name");
+    }
+
+    private static String personSql(String columns, int flags, String orderBy)
+    {
+        String sql =
+                "SELECT DISTINCT " + columns + " " +
+                        "FROM movies.person p ";
+        boolean credited = (flags & QueryShapeCache.CREDIT_IDS) != 0;
+        boolean movieJoined = (flags & QueryShapeCache.TITLE) != 0 && !credited;
+        if (movieJoined) {
+            sql += "JOIN movies.movie_person mp ON p.id = mp.person_id JOIN movies.movie m on m.id = mp.movie_id ";
         }
 
-        String jsonArrayString = this.template.queryForObject(sql, source, (rs,rowNum)-> rs.getString(1));
-        if (jsonArrayString == null) {
-            throw new ResultError(MoviesResults.NO_PERSONS_FOUND_WITHIN_SEARCH);
+        List<String> where = new ArrayList<>();
+        if ((flags & QueryShapeCache.NAME_IDS) != 0)
+        {
+            where.add(inIds("p.id", "nameIds"));
+        }
+        if ((flags & QueryShapeCache.NAME) != 0)
+        {
+            where.add("p.name LIKE :name");
+        }
+        if ((flags & QueryShapeCache.BIRTHDAY) != 0)
+        {
+            where.add("p.birthday = :birthday");
+        }
+        if (credited)
+        {
+            where.add(inIds("p.id", "creditPersonIds"));
+        }
+        if (movieJoined && (flags & QueryShapeCache.TITLE_IDS) != 0)
+        {
+            where.add(inIds("m.id", "titleIds"));
+        }
+        if (movieJoined)
+        {
+            where.add("m.title LIKE :title");
+        }
+        // Hidden movies only matter when persons are matched through a movie.
+        if (movieJoined && (flags & QueryShapeCache.HIDE_HIDDEN) != 0)
+        {
+            where.add("m.hidden = 0");
         }
 
-        return objectMapper.readValue(jsonArrayString, PersonSearchModel[].class);
+        return sql + pageClause(where, flags, "p." + orderBy, "p.id");
     }
 
+    @Timed(value = RepoMetrics.REPO_TIMER, extraTags = {"method", "getPersonByPersonId"}, percentiles = {0.5, 0.95, 0.99})
+    @Bulkhead(Bulkhead.QueryClass.LOOKUP)
     public PersonSearchModel getPersonByPersonId(Long personId, boolean showHidden) throws JsonProcessingException {
         MapSqlParameterSource source = new MapSqlParameterSource();
+        source.addValue("id", personId, Types.INTEGER);
+
+        if (config.getResultMapping() == MoviesServiceConfig.ResultMapping.ROWS)
+        {
+            return this.template.queryForObject(
+                "SELECT p.id, p.name, p.birthday, p.biography, p.birthplace, p.popularity, p.profile_path " +
+                    "FROM movies.person p " +
+                    "WHERE p.id = :id",
+                source, PERSON_ROW);
+        }
+
         String sql =
                 "SELECT JSON_OBJECT('id', p.id, 'name', p.name, 'birthday', p.birthday, 'biography', p.biography, 'birthplace', p.birthplace, 'popularity', p.popularity, 'profilePath', p.profile_path) " +
                         "FROM movies.person p " +
                         "WHERE p.id = :id";
-        source.addValue("id", personId, Types.INTEGER);
-        if (showHidden == false)
-        {
-            sql += "AND m.hidden = 0 ";
-        }
         String jsonArrayString = this.template.queryForObject(sql, source, (rs, rowNum)-> rs.getString(1));
         if (jsonArrayString == null) {
             throw new ResultError(MoviesResults.NO_PERSON_WITH_ID_FOUND);
@@ -457,4 +942,202 @@ public class MovieRepo
 
     }
 
+    /**
+     * Cursor for the page after {@code movies}, or {@code null} when it was
+     * the last page.
+     */
+    public String nextMovieCursor(Movie[] movies, String orderBy, String direction, Integer limit)
+    {
+        String column = validate.orderBy(orderBy, "title", Validate.MOVIE_ORDER_BY);
+        if (movies.length < validate.limit(limit))
+        {
+            return null;
+        }
+
+        Movie last = movies[movies.length - 1];
+        Object value;
+        switch (column)
+        {
+            case "rating":
+                value = last.getRating();
+                break;
+            case "year":
+                value = last.getYear();
+                break;
+            default:
+                value = last.getTitle();
+        }
+        return SearchCursor.encode(column, validate.isDescending(direction), last.getId(), value);
+    }
+
+    /**
+     * Cursor for the page after {@code persons}, or {@code null} when it was
+     * the last page.
+     */
+    public String nextPersonCursor(PersonSearchModel[] persons, String orderBy, String direction, Integer limit)
+    {
+        String column = validate.orderBy(orderBy, "name", Validate.PERSON_ORDER_BY);
+        if (persons.length < validate.limit(limit))
+        {
+            return null;
+        }
+
+        PersonSearchModel last = persons[persons.length - 1];
+        Object value;
+        switch (column)
+        {
+            case "popularity":
+                value = last.getPopularity();
+                break;
+            case "birthday":
+                value = last.getBirthday();
+                break;
+            default:
+                value = last.getName();
+        }
+        return SearchCursor.encode(column, validate.isDescending(direction), last.getId(), value);
+    }
+
+    private static int movieSqlType(String orderBy)
+    {
+        switch (orderBy)
+        {
+            case "rating":
+                return Types.DECIMAL;
+            case "year":
+                return Types.INTEGER;
+            default:
+                return Types.VARCHAR;
+        }
+    }
+
+    private static int personSqlType(String orderBy)
+    {
+        return orderBy.equals("popularity") ? Types.DECIMAL : Types.VARCHAR;
+    }
+
+    /**
+     * Appends the WHERE clause, the cursor seek when the shape has one, and
+     * the ORDER BY / LIMIT / OFFSET tail shared by every search shape. A
+     * {@link QueryShapeCache#COUNT} shape gets the WHERE clause only.
+     */
+    private static String pageClause(List<String> where, int flags, String column, String idColumn)
+    {
+        if ((flags & QueryShapeCache.COUNT) != 0)
+        {
+            return where.isEmpty() ? "" : "WHERE " + String.join(" AND ", where);
+        }
+
+        boolean descending = (flags & QueryShapeCache.DESCENDING) != 0;
+        if ((flags & QueryShapeCache.CURSOR) != 0)
+        {
+            where.add(SearchCursor.seekSql(column, idColumn, descending, (flags & QueryShapeCache.CURSOR_VALUE) != 0));
+        }
+
+        String sql = where.isEmpty() ? "" : "WHERE " + String.join(" AND ", where) + " ";
+        return sql + "ORDER BY " + column + (descending ? " DESC" : " ASC") + ", " + idColumn + " " +
+               "LIMIT :limit OFFSET :offset";
+    }
+
+    /**
+     * Wraps a row query so MySQL returns the whole page as one JSON array.
+     */
+    private static String aggregate(String jsonObject, String rowSql)
+    {
+        return "SELECT JSON_ARRAYAGG(" + jsonObject + ") FROM (" + rowSql + ") s;";
+    }
+
+    /**
+     * Counts the rows of a search shape built with
+     * {@link QueryShapeCache#COUNT}.
+     */
+    private long count(String query, int flags, MapSqlParameterSource source, Supplier<String> builder)
+    {
+        String sql = shapes.sql(query + ":count", flags, "", () -> "SELECT COUNT(*) FROM (" + builder.get() + ") s");
+        Long count = this.template.queryForObject(sql, source, Long.class);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Maps each row straight into an entity, skipping the JSON round trip.
+     */
+    private <T> T[] queryRows(String method, String sql, MapSqlParameterSource source, RowMapper<T> mapper, T[] empty, Result notFound)
+    {
+        List<T> rows = this.template.query(sql, source, mapper);
+        metrics.rows(method, rows.size());
+        if (rows.isEmpty())
+        {
+            throw new ResultError(notFound);
+        }
+        return rows.toArray(empty);
+    }
+
+    /**
+     * Parses a JSON_ARRAYAGG page, recording its row count and parse time.
+     */
+    private <T> T[] readJsonArray(String method, String json, Class<T[]> type) throws JsonProcessingException
+    {
+        Timer.Sample sample = Timer.start();
+        T[] rows = objectMapper.readValue(json, type);
+        sample.stop(metrics.jsonParse(method));
+        metrics.rows(method, rows.length);
+        return rows;
+    }
+
+    private int[] movieTitleCandidates(String term)
+    {
+        return config.getSubstringIndex().isEnabled() ? substringIndex.movieTitleCandidates(term) : null;
+    }
+
+    private int[] personNameCandidates(String term)
+    {
+        return config.getSubstringIndex().isEnabled() ? substringIndex.personNameCandidates(term) : null;
+    }
+
+    /**
+     * Binds the trigram index candidates for a {@code LIKE '%term%'} filter
+     * so MySQL can seek on the primary key; the {@code LIKE} itself is kept
+     * to preserve exact semantics. Returns whether an id list was bound.
+     * The index only knows rows as of its last rebuild plus the refreshed
+     * ones, so it gives no list once it is older than
+     * {@code movie.substring-index.max-staleness-millis}, and an empty list
+     * is not trusted to mean no match; either way the plain {@code LIKE}
+     * runs instead.
+     */
+    private boolean bindCandidates(MapSqlParameterSource source, String param, int[] ids)
+    {
+        if (ids == null || ids.length == 0 || ids.length > config.getSubstringIndex().getMaxCandidates())
+        {
+            return false;
+        }
+        bindIds(source, param, ids);
+        return true;
+    }
+
+    /**
+     * {@code column IN} the ids {@link #bindIds} bound to {@code param}.
+     * They arrive as one JSON array rather than one placeholder each, so
+     * the statement text, and its server-side prepared statement, is the
+     * same however many ids a request has.
+     */
+    static String inIds(String column, String param)
+    {
+        return column + " IN (SELECT ids.id FROM JSON_TABLE(:" + param + ", '$[*]' COLUMNS (id INT PATH '$')) ids)";
+    }
+
+    /**
+     * Binds {@code ids} to {@code param} as the JSON array {@link #inIds}
+     * reads.
+     */
+    private static MapSqlParameterSource bindIds(MapSqlParameterSource source, String param, int[] ids)
+    {
+        return bindIds(source, param, Arrays.stream(ids).boxed().collect(Collectors.toList()));
+    }
+
+    private static MapSqlParameterSource bindIds(MapSqlParameterSource source, String param, Collection<? extends Number> ids)
+    {
+        StringJoiner json = new StringJoiner(",", "[", "]");
+        ids.forEach(id -> json.add(Long.toString(id.longValue())));
+        return source.addValue(param, json.toString(), Types.VARCHAR);
+    }
 }
@@ -0,0 +1,52 @@
+package com.github.klefstad_teaching.cs122b.movies.repo;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * SQL text for each query shape, built once. A shape is the set of filters
+ * present plus ordering; everything that varies per request, including
+ * {@code LIMIT} and {@code OFFSET}, is bound as a parameter so the same
+ * statement text (and its server-side prepared statement) is reused.
+ */
+@Component
+public class QueryShapeCache
+{
+    public static final int TITLE        = 1;
+    public static final int TITLE_IDS    = 1 << 1;
+    public static final int GENRE        = 1 << 2;
+    public static final int DIRECTOR     = 1 << 3;
+    public static final int DIRECTOR_IDS = 1 << 4;
+    public static final int YEAR         = 1 << 5;
+    public static final int NAME         = 1 << 6;
+    public static final int NAME_IDS     = 1 << 7;
+    public static final int BIRTHDAY     = 1 << 8;
+    public static final int HIDE_HIDDEN  = 1 << 9;
+    public static final int DESCENDING   = 1 << 10;
+    public static final int CURSOR       = 1 << 11;
+    public static final int CURSOR_VALUE = 1 << 12;
+    // Counts the matching rows instead of returning a page; ordering,
+    // paging and cursor flags do not apply.
+    public static final int COUNT        = 1 << 13;
+    // Ids from the credit graph stand in for the movie_person join.
+    public static final int CREDIT_IDS   = 1 << 14;
+
+    private final ConcurrentMap<String, String> shapes = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the SQL for {@code query} with the given flags and ordering,
+     * building it with {@code builder} the first time the shape is seen.
+     */
+    public String sql(String query, int flags, String orderBy, Supplier<String> builder)
+    {
+        return shapes.computeIfAbsent(query + ':' + flags + ':' + orderBy, shape -> builder.get());
+    }
+
+    public int size()
+    {
+        return shapes.size();
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.klefstad_teaching.cs122b.movies.repo;
+
+import com.github.klefstad_teaching.cs122b.movies.config.MoviesServiceConfig;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+/**
+ * Marks the public {@link MovieRepo} reads as safe to serve from a read
+ * replica. Runs innermost, so the mark is set on the bulkhead thread that
+ * actually queries.
+ * <p>
+ * {@link MovieRepo#getMovieDetails} and {@link MovieRepo#getPersonByPersonId}
+ * go to a replica too, unless
+ * {@link MoviesServiceConfig.Replica#isDetailsOnPrimary()} keeps them on
+ * the primary for read-your-writes. The catalog indexes load lazily inside
+ * the first search that needs them and so on the marked thread; they take
+ * their connections through {@link ReplicaRoutingDataSource#onPrimary}
+ * instead.
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class ReplicaReadAspect
+{
+    private static final Set<String> DETAIL_LOOKUPS = Set.of("getMovieDetails", "getPersonByPersonId");
+
+    private final boolean detailsOnPrimary;
+
+    @Autowired
+    public ReplicaReadAspect(MoviesServiceConfig config)
+    {
+        this.detailsOnPrimary = config.getReplica().isDetailsOnPrimary();
+    }
+
+    @Around("execution(public * com.github.klefstad_teaching.cs122b.movies.repo.MovieRepo.*(..))")
+    public Object onReplica(ProceedingJoinPoint joinPoint) throws Throwable
+    {
+        if (detailsOnPrimary && DETAIL_LOOKUPS.contains(joinPoint.getSignature().getName()))
+        {
+            return joinPoint.proceed();
+        }
+        return ReplicaRoutingDataSource.onReplica(joinPoint::proceed);
+    }
+}
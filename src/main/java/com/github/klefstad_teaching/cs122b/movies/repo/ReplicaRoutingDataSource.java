@@ -0,0 +1,297 @@
+package com.github.klefstad_teaching.cs122b.movies.repo;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Sends connections requested inside {@link #onReplica} to one of a set of
+ * read replicas, round robin, and everything else to the primary it wraps.
+ * {@link #onPrimary} sends a nested block back to the primary.
+ *
+ * <p>Each replica's lag is checked every {@code checkMillis}. A replica is
+ * in rotation only while its last check succeeded and showed it no more
+ * than {@code maxLagSeconds} behind; a replica whose connection fails is
+ * taken out at once. A server that reports no replication status at all
+ * is left out too, unless {@code standaloneIsCurrent} is set so that
+ * independent local instances loaded from the same dump can stand in for
+ * replicas. With no replica in rotation, reads go to the primary.
+ *
+ * <p>Publishes a {@code movies.replica.lag} gauge (seconds, {@code -1} when
+ * unknown) and a {@code movies.replica.available} gauge per replica, and a
+ * {@code movies.replica.fallback} counter of reads sent to the primary
+ * because no replica could serve them.
+ */
+public class ReplicaRoutingDataSource extends DelegatingDataSource implements Closeable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    private static final ThreadLocal<Boolean> READ_ONLY = ThreadLocal.withInitial(() -> false);
+
+    private final List<Replica> replicas = new ArrayList<>();
+    private final AtomicInteger next     = new AtomicInteger();
+    private final long          maxLagSeconds;
+    private final boolean       standaloneIsCurrent;
+    private final Counter       fallbacks;
+
+    private final ScheduledExecutorService checker;
+
+    public ReplicaRoutingDataSource(DataSource primary,
+                                    Map<String, DataSource> replicas,
+                                    long maxLagSeconds,
+                                    long checkMillis,
+                                    boolean standaloneIsCurrent,
+                                    MeterRegistry registry)
+    {
+        super(primary);
+        this.maxLagSeconds = maxLagSeconds;
+        this.standaloneIsCurrent = standaloneIsCurrent;
+        this.fallbacks = Counter.builder("movies.replica.fallback").register(registry);
+
+        replicas.forEach((name, dataSource) -> {
+            Replica replica = new Replica(name, dataSource);
+            this.replicas.add(replica);
+            Gauge.builder("movies.replica.lag", replica, r -> r.lagSeconds)
+                 .tag("replica", name)
+                 .baseUnit("seconds")
+                 .register(registry);
+            Gauge.builder("movies.replica.available", replica, r -> r.available ? 1 : 0)
+                 .tag("replica", name)
+                 .register(registry);
+        });
+
+        this.checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-lag-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.checker.scheduleWithFixedDelay(this::checkReplicas, 0, checkMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs {@code query} with connections taken from a replica when one is
+     * available. Connections must be obtained and closed on the calling
+     * thread.
+     */
+    public static <T> T onReplica(Query<T> query) throws Throwable
+    {
+        boolean outer = !READ_ONLY.get();
+        READ_ONLY.set(true);
+        try {
+            return query.run();
+        } finally {
+            if (outer)
+            {
+                READ_ONLY.remove();
+            }
+        }
+    }
+
+    /**
+     * Runs {@code load} with connections taken from the primary, even when
+     * called inside {@link #onReplica}. Used by the in-memory indexes, whose
+     * first load happens inside whichever repository call needs them and
+     * must not capture a lagging replica's rows until their next rebuild.
+     */
+    public static <T> T onPrimary(Supplier<T> load)
+    {
+        boolean replica = READ_ONLY.get();
+        READ_ONLY.set(false);
+        try {
+            return load.get();
+        } finally {
+            if (replica)
+            {
+                READ_ONLY.set(true);
+            }
+            else
+            {
+                READ_ONLY.remove();
+            }
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException
+    {
+        if (!READ_ONLY.get() || replicas.isEmpty())
+        {
+            return super.getConnection();
+        }
+
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++)
+        {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (!replica.available)
+            {
+                continue;
+            }
+
+            try {
+                return replica.dataSource.getConnection();
+            } catch (SQLException e) {
+                eject(replica, e.getMessage());
+            }
+        }
+
+        fallbacks.increment();
+        return super.getConnection();
+    }
+
+    public List<Replica> getReplicas()
+    {
+        return replicas;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        checker.shutdownNow();
+        for (Replica replica : replicas)
+        {
+            if (replica.dataSource instanceof Closeable)
+            {
+                ((Closeable) replica.dataSource).close();
+            }
+        }
+        if (getTargetDataSource() instanceof Closeable)
+        {
+            ((Closeable) getTargetDataSource()).close();
+        }
+    }
+
+    private void checkReplicas()
+    {
+        for (Replica replica : replicas)
+        {
+            try (Connection connection = replica.dataSource.getConnection()) {
+                Double lag = lagSeconds(connection, standaloneIsCurrent);
+                replica.lagSeconds = lag == null ? -1 : lag;
+                if (lag == null)
+                {
+                    eject(replica, "replication is not running");
+                }
+                else if (lag > maxLagSeconds)
+                {
+                    eject(replica, lag + "s behind");
+                }
+                else
+                {
+                    if (!replica.available)
+                    {
+                        LOG.info("Replica {} is back in rotation, {}s behind", replica.name, lag);
+                    }
+                    replica.available = true;
+                }
+            } catch (SQLException | RuntimeException e) {
+                replica.lagSeconds = -1;
+                eject(replica, e.getMessage());
+            }
+        }
+    }
+
+    private void eject(Replica replica, String reason)
+    {
+        if (replica.available)
+        {
+            LOG.warn("Replica {} taken out of rotation: {}", replica.name, reason);
+        }
+        replica.available = false;
+    }
+
+    /**
+     * Seconds the server is behind its source, or {@code null} when
+     * replication is stopped. A server that is not replicating at all is
+     * {@code 0} behind when {@code standaloneIsCurrent}, else {@code null}.
+     * Needs the {@code REPLICATION CLIENT} privilege.
+     */
+    private static Double lagSeconds(Connection connection, boolean standaloneIsCurrent) throws SQLException
+    {
+        try (Statement statement = connection.createStatement()) {
+            ResultSet rs;
+            try {
+                rs = statement.executeQuery("SHOW REPLICA STATUS");
+            } catch (SQLException e) {
+                // Before MySQL 8.0.22
+                rs = statement.executeQuery("SHOW SLAVE STATUS");
+            }
+
+            try (ResultSet status = rs) {
+                if (!status.next())
+                {
+                    return standaloneIsCurrent ? 0.0 : null;
+                }
+
+                ResultSetMetaData meta = status.getMetaData();
+                for (int i = 1; i <= meta.getColumnCount(); i++)
+                {
+                    String column = meta.getColumnLabel(i);
+                    if ("Seconds_Behind_Source".equalsIgnoreCase(column) ||
+                        "Seconds_Behind_Master".equalsIgnoreCase(column))
+                    {
+                        long lag = status.getLong(i);
+                        return status.wasNull() ? null : (double) lag;
+                    }
+                }
+                return null;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Query<T>
+    {
+        T run() throws Throwable;
+    }
+
+    public static class Replica
+    {
+        private final String     name;
+        private final DataSource dataSource;
+
+        private volatile boolean available;
+        private volatile double  lagSeconds = -1;
+
+        private Replica(String name, DataSource dataSource)
+        {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public boolean isAvailable()
+        {
+            return available;
+        }
+
+        public double getLagSeconds()
+        {
+            return lagSeconds;
+        }
+    }
+}
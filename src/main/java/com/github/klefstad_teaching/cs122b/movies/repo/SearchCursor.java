@@ -0,0 +1,140 @@
+package com.github.klefstad_teaching.cs122b.movies.repo;
+
+import com.github.klefstad_teaching.cs122b.core.error.ResultError;
+import com.github.klefstad_teaching.cs122b.core.result.MoviesResults;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Types;
+import java.util.Base64;
+
+/**
+ * Opaque keyset pagination token. It records the orderBy value and id of
+ * the last row of a page, so the next page can seek straight past it
+ * instead of reading and discarding {@code OFFSET} rows.
+ */
+public final class SearchCursor
+{
+    private static final String SEPARATOR = "|";
+
+    private final String  orderBy;
+    private final boolean descending;
+    private final long    id;
+    private final String  value;
+
+    private SearchCursor(String orderBy, boolean descending, long id, String value)
+    {
+        this.orderBy = orderBy;
+        this.descending = descending;
+        this.id = id;
+        this.value = value;
+    }
+
+    public static String encode(String orderBy, boolean descending, Long id, Object value)
+    {
+        String raw = orderBy + SEPARATOR +
+                     (descending ? "desc" : "asc") + SEPARATOR +
+                     id + SEPARATOR +
+                     (value == null ? "n" : "v" + value);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes {@code token} and checks that it was issued for the same
+     * ordering as the current request.
+     */
+    public static SearchCursor decode(String token, String orderBy, boolean descending)
+    {
+        SearchCursor cursor;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 4);
+            cursor = new SearchCursor(
+                parts[0],
+                parts[1].equals("desc"),
+                Long.parseLong(parts[2]),
+                parts[3].startsWith("v") ? parts[3].substring(1) : null
+            );
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            throw new ResultError(MoviesResults.INVALID_PAGE);
+        }
+
+        if (!cursor.orderBy.equals(orderBy) || cursor.descending != descending)
+        {
+            throw new ResultError(MoviesResults.INVALID_PAGE);
+        }
+        return cursor;
+    }
+
+    public long getId()
+    {
+        return id;
+    }
+
+    public String getValue()
+    {
+        return value;
+    }
+
+    public boolean hasValue()
+    {
+        return value != null;
+    }
+
+    /**
+     * Binds {@code :cursorValue} and {@code :cursorId} for
+     * {@link #seekSql(String, String, boolean, boolean)}.
+     */
+    public void bind(MapSqlParameterSource source, int sqlType)
+    {
+        source.addValue("cursorId", id, Types.INTEGER);
+        if (value != null)
+        {
+            source.addValue("cursorValue", parse(sqlType), sqlType);
+        }
+    }
+
+    /**
+     * Returns the predicate selecting rows strictly after the cursor under
+     * {@code ORDER BY column [ASC|DESC], idColumn ASC}. MySQL sorts NULL
+     * first ascending and last descending, which the NULL branches follow.
+     * The text depends only on its arguments, so it can be part of a cached
+     * statement.
+     */
+    public static String seekSql(String column, String idColumn, boolean descending, boolean hasValue)
+    {
+        if (!hasValue)
+        {
+            return descending
+                   ? "(" + column + " IS NULL AND " + idColumn + " > :cursorId)"
+                   : "((" + column + " IS NULL AND " + idColumn + " > :cursorId) OR " + column + " IS NOT NULL)";
+        }
+
+        if (!descending)
+        {
+            return "(" + column + ", " + idColumn + ") > (:cursorValue, :cursorId)";
+        }
+
+        // The id tie-breaker stays ascending, so a plain row comparison
+        // does not apply when the primary column is descending.
+        return "(" + column + " < :cursorValue OR (" + column + " = :cursorValue AND " + idColumn + " > :cursorId) " +
+               "OR " + column + " IS NULL)";
+    }
+
+    private Object parse(int sqlType)
+    {
+        try {
+            switch (sqlType)
+            {
+                case Types.INTEGER:
+                    return Integer.valueOf(value);
+                case Types.DECIMAL:
+                    return Double.valueOf(value);
+                default:
+                    return value;
+            }
+        } catch (NumberFormatException e) {
+            throw new ResultError(MoviesResults.INVALID_PAGE);
+        }
+    }
+}
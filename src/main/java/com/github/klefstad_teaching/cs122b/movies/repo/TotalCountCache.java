@@ -0,0 +1,88 @@
+package com.github.klefstad_teaching.cs122b.movies.repo;
+
+import com.github.klefstad_teaching.cs122b.movies.config.MoviesServiceConfig;
+import com.github.klefstad_teaching.cs122b.movies.repo.entity.MovieQuery;
+import com.github.klefstad_teaching.cs122b.movies.repo.entity.PersonQuery;
+import com.github.klefstad_teaching.cs122b.movies.util.BoundedCache;
+import com.github.klefstad_teaching.cs122b.movies.util.LikePattern;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Caches search totals for a while, keyed on the filters alone. Ordering,
+ * paging and cursors do not change a total, so every page of a search,
+ * for every caller who sees the same rows, shares one count. Terms are
+ * case and accent folded the way the columns' collation compares them.
+ */
+@Component
+public class TotalCountCache
+{
+    private final MovieRepo repo;
+
+    private final BoundedCache<String, Long> totals;
+
+    @Autowired
+    public TotalCountCache(MovieRepo repo, MoviesServiceConfig config)
+    {
+        this.repo = repo;
+        this.totals = new BoundedCache<>(config.getTotalCount().getCacheSize(), config.getTotalCount().getTtlMillis());
+    }
+
+    public long countMovies(MovieQuery movieQuery, boolean showHidden)
+    {
+        String key = "movies" +
+                     term(movieQuery.getTitle()) +
+                     term(movieQuery.getGenre()) +
+                     term(movieQuery.getDirector()) +
+                     term(movieQuery.getYear() == null ? null : movieQuery.getYear().toString()) +
+                     term(movieQuery.getQ()) +
+                     visibility(showHidden);
+        return totals.get(key, () -> repo.countMovies(movieQuery, showHidden));
+    }
+
+    public long countMoviesByPersonId(Long personId, boolean showHidden)
+    {
+        String key = "moviesByPerson" + term(personId.toString()) + visibility(showHidden);
+        return totals.get(key, () -> repo.countMoviesByPersonId(personId, showHidden));
+    }
+
+    public long countPersons(PersonQuery personQuery, boolean showHidden)
+    {
+        String key = "persons" +
+                     term(personQuery.getName()) +
+                     term(personQuery.getBirthday()) +
+                     term(personQuery.getMovieTitle()) +
+                     nameMatching(personQuery) +
+                     visibility(showHidden);
+        return totals.get(key, () -> repo.countPersons(personQuery, showHidden));
+    }
+
+    public BoundedCache.Stats stats()
+    {
+        return totals.stats();
+    }
+
+    /**
+     * One filter of the key, length prefixed so no term can run into the
+     * next; absent and empty filters stay distinct.
+     */
+    private static String term(String value)
+    {
+        if (value == null)
+        {
+            return "|-";
+        }
+        String folded = LikePattern.fold(value);
+        return "|" + folded.length() + ":" + folded;
+    }
+
+    private static String nameMatching(PersonQuery personQuery)
+    {
+        return Boolean.TRUE.equals(personQuery.getFuzzy()) ? "|fuzzy" : "|exact";
+    }
+
+    private static String visibility(boolean showHidden)
+    {
+        return showHidden ? "|all" : "|visible";
+    }
+}
@@ -0,0 +1,191 @@
+package com.github.klefstad_teaching.cs122b.movies.repo.catalog;
+
+import com.github.klefstad_teaching.cs122b.movies.util.LikePattern;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inverted index ranking documents by BM25 over several text fields. Each
+ * field is scored on its own, with its own document frequencies and
+ * lengths, and the field scores are summed with a per-field boost. A
+ * document matches when any query word appears in any field.
+ */
+public final class Bm25Index
+{
+    private static final int[] NONE = new int[0];
+
+    private static final double K1 = 1.2;
+    private static final double B  = 0.75;
+
+    private final int     documents;
+    private final Field[] fields;
+
+    private Bm25Index(int documents, Field[] fields)
+    {
+        this.documents = documents;
+        this.fields = fields;
+    }
+
+    /**
+     * @param texts  {@code texts[field][document]}, each already passed
+     *               through {@link LikePattern#fold(String)}; {@code null}
+     *               counts as empty
+     * @param boosts what each field's score is multiplied by
+     */
+    public static Bm25Index build(String[][] texts, double[] boosts)
+    {
+        int documents = texts.length == 0 ? 0 : texts[0].length;
+        Field[] fields = new Field[texts.length];
+        for (int f = 0; f < texts.length; f++)
+        {
+            fields[f] = new Field(texts[f], boosts[f]);
+        }
+        return new Bm25Index(documents, fields);
+    }
+
+    /**
+     * Documents matching any word of {@code query}, best first; equal
+     * scores keep document order.
+     *
+     * @param query already passed through {@link LikePattern#fold(String)}
+     */
+    public int[] search(String query)
+    {
+        double[] scores = new double[documents];
+        BitSet matched = new BitSet(documents);
+
+        for (String term : new LinkedHashSet<>(words(query)))
+        {
+            for (Field field : fields)
+            {
+                Postings postings = field.postings.get(term);
+                if (postings == null)
+                {
+                    continue;
+                }
+
+                double idf = Math.log(1 + (documents - postings.size + 0.5) / (postings.size + 0.5));
+                for (int i = 0; i < postings.size; i++)
+                {
+                    int document = postings.documents[i];
+                    int tf = postings.frequencies[i];
+                    double norm = K1 * (1 - B + B * field.lengths[document] / field.averageLength);
+                    scores[document] += field.boost * idf * tf * (K1 + 1) / (tf + norm);
+                    matched.set(document);
+                }
+            }
+        }
+
+        if (matched.isEmpty())
+        {
+            return NONE;
+        }
+
+        return matched.stream()
+                      .boxed()
+                      .sorted((a, b) -> {
+                          int byScore = Double.compare(scores[b], scores[a]);
+                          return byScore != 0 ? byScore : Integer.compare(a, b);
+                      })
+                      .mapToInt(Integer::intValue)
+                      .toArray();
+    }
+
+    /**
+     * The runs of letters and digits in {@code text}.
+     */
+    private static List<String> words(String text)
+    {
+        List<String> words = new ArrayList<>();
+        if (text == null)
+        {
+            return words;
+        }
+
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++)
+        {
+            boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0)
+            {
+                start = i;
+            }
+            else if (!inWord && start >= 0)
+            {
+                words.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private static final class Field
+    {
+        private final double                boost;
+        private final int[]                 lengths;
+        private final double                averageLength;
+        private final Map<String, Postings> postings = new HashMap<>();
+
+        private Field(String[] texts, double boost)
+        {
+            this.boost = boost;
+            this.lengths = new int[texts.length];
+
+            long total = 0;
+            for (int document = 0; document < texts.length; document++)
+            {
+                List<String> words = words(texts[document]);
+                lengths[document] = words.size();
+                total += words.size();
+
+                Map<String, Integer> frequencies = new HashMap<>();
+                for (String word : words)
+                {
+                    frequencies.merge(word, 1, Integer::sum);
+                }
+                for (Map.Entry<String, Integer> entry : frequencies.entrySet())
+                {
+                    postings.computeIfAbsent(entry.getKey(), word -> new Postings()).add(document, entry.getValue());
+                }
+            }
+            postings.values().forEach(Postings::trim);
+
+            this.averageLength = texts.length == 0 ? 0 : Math.max(1, (double) total / texts.length);
+        }
+    }
+
+    /**
+     * Documents containing one word, in ascending order, and how often the
+     * word appears in each.
+     */
+    private static final class Postings
+    {
+        private int[] documents   = new int[4];
+        private int[] frequencies = new int[4];
+        private int   size;
+
+        private void add(int document, int frequency)
+        {
+            if (size == documents.length)
+            {
+                documents = Arrays.copyOf(documents, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            documents[size] = document;
+            frequencies[size] = frequency;
+            size++;
+        }
+
+        private void trim()
+        {
+            documents = Arrays.copyOf(documents, size);
+            frequencies = Arrays.copyOf(frequencies, size);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.github.klefstad_teaching.cs122b.movies.repo.catalog;
+
+import com.github.klefstad_teaching.cs122b.movies.config.MoviesServiceConfig;
+import com.github.klefstad_teaching.cs122b.movies.repo.Bulkheads;
+import com.github.klefstad_teaching.cs122b.movies.repo.ReplicaRoutingDataSource;
+import com.github.klefstad_teaching.cs122b.movies.repo.entity.Person;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Each movie's cast as person ids already sorted the way the detail page
+ * lists them, {@code popularity DESC, id}, so a cast list is a lookup
+ * rather than a join and sort. Who is in a movie comes from
+ * {@link CreditGraph}; this index holds the credited persons' names and
+ * popularity, loaded on first use, and each cast's order, sorted the
+ * first time it is asked for and again after its movie's credits or one
+ * of its persons change.
+ * <p>
+ * The persons are re-read in the background every
+ * {@link MoviesServiceConfig.CastIndex#getRebuildMillis()}, picking up
+ * names and popularity written without a refresh; casts keep being served
+ * from the previous snapshot while a rebuild runs.
+ */
+@Component
+public class CastIndex
+{
+    private static final Logger LOG = LoggerFactory.getLogger(CastIndex.class);
+
+    private static final String PERSON_SQL =
+        "SELECT p.id, p.name, p.popularity FROM movies.person p " +
+        "WHERE EXISTS (SELECT 1 FROM movies.movie_person mp WHERE mp.person_id = p.id)";
+
+    private static final String MOVIE_CREDIT_SQL =
+        "SELECT p.id, p.name, p.popularity " +
+        "FROM movies.movie_person mp " +
+        "JOIN movies.person p ON p.id = mp.person_id " +
+        "WHERE mp.movie_id = :movieId";
+
+    private static final int[] NONE = new int[0];
+
+    private static final String PERSON_BY_ID_SQL =
+        "SELECT p.id, p.name, p.popularity FROM movies.person p WHERE p.id = :personId";
+
+    private final NamedParameterJdbcTemplate template;
+    private final CreditGraph                credits;
+    private final Bulkheads                  bulkheads;
+    private final long                       rebuildMillis;
+
+    private ScheduledExecutorService rebuilder;
+
+    private volatile Snapshot snapshot;
+
+    // Persons re-read since the snapshot was loaded, with the sequence they
+    // were re-read at; a rebuild keeps those it may have read too early.
+    private final AtomicLong         sequence       = new AtomicLong();
+    private final Map<Integer, Long> changedPersons = new ConcurrentHashMap<>();
+
+    @Autowired
+    public CastIndex(NamedParameterJdbcTemplate template, CreditGraph credits, Bulkheads bulkheads, MoviesServiceConfig config)
+    {
+        this.template = template;
+        this.credits = credits;
+        this.bulkheads = bulkheads;
+        this.rebuildMillis = config.getCastIndex().getRebuildMillis();
+    }
+
+    @PostConstruct
+    public void scheduleRebuild()
+    {
+        if (rebuildMillis <= 0)
+        {
+            return;
+        }
+
+        this.rebuilder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cast-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.rebuilder.scheduleWithFixedDelay(this::rebuild, rebuildMillis, rebuildMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        if (rebuilder != null)
+        {
+            rebuilder.shutdownNow();
+        }
+    }
+
+    /**
+     * The cast of {@code movieId}, most popular first; empty when the movie
+     * has no credits.
+     */
+    public Person[] cast(long movieId)
+    {
+        Snapshot current = snapshot();
+        int[] personIds = current.casts.computeIfAbsent((int) movieId, id -> current.sorted(credits.personsOf(id)));
+
+        Person[] cast = new Person[personIds.length];
+        for (int i = 0; i < personIds.length; i++)
+        {
+            Person person = new Person();
+            person.setId((long) personIds[i]);
+            person.setName(current.persons.get(personIds[i]).name);
+            cast[i] = person;
+        }
+        return cast;
+    }
+
+    /**
+     * Picks up one movie's new cast members' names and drops its sorted
+     * cast. Call after {@link CreditGraph#refreshMovie}, which holds the
+     * cast itself.
+     */
+    public synchronized void refreshMovie(long movieId)
+    {
+        Snapshot current = this.snapshot;
+        if (current == null)
+        {
+            return;
+        }
+
+        MapSqlParameterSource source = new MapSqlParameterSource().addValue("movieId", movieId, Types.INTEGER);
+        template.query(MOVIE_CREDIT_SQL, source, rs -> {
+            changedPersons.put(current.putPerson(rs.getInt(1), rs.getString(2), rs.getObject(3) == null ? null : rs.getDouble(3)),
+                               sequence.incrementAndGet());
+        });
+        current.casts.remove((int) movieId);
+    }
+
+    /**
+     * Re-reads one person's name and popularity and drops every sorted
+     * cast, since the person may have moved in any cast they were or now
+     * are in. Call after {@link CreditGraph#refreshPerson}.
+     */
+    public synchronized void refreshPerson(long personId)
+    {
+        Snapshot current = this.snapshot;
+        if (current == null)
+        {
+            return;
+        }
+
+        MapSqlParameterSource source = new MapSqlParameterSource().addValue("personId", personId, Types.INTEGER);
+        template.query(PERSON_BY_ID_SQL, source, rs -> {
+            changedPersons.put(current.putPerson(rs.getInt(1), rs.getString(2), rs.getObject(3) == null ? null : rs.getDouble(3)),
+                               sequence.incrementAndGet());
+        });
+        current.casts.clear();
+    }
+
+    /**
+     * Re-reads every credited person and swaps in a fresh snapshot, unless
+     * none was ever needed. Persons refreshed while it loaded keep their
+     * refreshed values. A failed rebuild is logged and the current snapshot
+     * is kept.
+     */
+    public void rebuild()
+    {
+        if (this.snapshot == null)
+        {
+            return;
+        }
+
+        long started = sequence.get();
+        try {
+            Snapshot rebuilt = bulkheads.load(this::load);
+            synchronized (this)
+            {
+                Snapshot current = this.snapshot;
+                if (current == null)
+                {
+                    return;
+                }
+                changedPersons.forEach((id, changed) -> {
+                    Credit person = current.persons.get(id);
+                    if (changed > started && person != null)
+                    {
+                        rebuilt.persons.put(id, person);
+                    }
+                });
+                this.snapshot = rebuilt;
+                changedPersons.values().removeIf(changed -> changed <= started);
+            }
+            LOG.info("Rebuilt cast index over {} persons", rebuilt.persons.size());
+        } catch (RuntimeException e) {
+            LOG.warn("Cast index rebuild failed, keeping the current snapshot", e);
+        }
+    }
+
+    /**
+     * Discards the index; it is rebuilt on next use.
+     */
+    public synchronized void reload()
+    {
+        this.snapshot = null;
+        changedPersons.clear();
+    }
+
+    private Snapshot snapshot()
+    {
+        Snapshot current = this.snapshot;
+        if (current == null)
+        {
+            synchronized (this)
+            {
+                current = this.snapshot;
+                if (current == null)
+                {
+                    current = bulkheads.load(() -> ReplicaRoutingDataSource.onPrimary(this::load));
+                    this.snapshot = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private Snapshot load()
+    {
+        Snapshot loaded = new Snapshot();
+        template.getJdbcTemplate().query(PERSON_SQL, rs -> {
+            loaded.putPerson(rs.getInt(1), rs.getString(2), rs.getObject(3) == null ? null : rs.getDouble(3));
+        });
+        return loaded;
+    }
+
+    private static final class Credit
+    {
+        private final String name;
+        private final double popularity;
+
+        private Credit(String name, Double popularity)
+        {
+            this.name = name;
+            this.popularity = popularity == null ? Double.NaN : popularity;
+        }
+    }
+
+    private static final class Snapshot
+    {
+        private final Map<Integer, int[]>  casts   = new ConcurrentHashMap<>();
+        private final Map<Integer, Credit> persons = new ConcurrentHashMap<>();
+
+        private int putPerson(int id, String name, Double popularity)
+        {
+            persons.put(id, new Credit(name, popularity));
+            return id;
+        }
+
+        /**
+         * Returns a copy of {@code personIds} in {@code popularity DESC, id}
+         * order, leaving out any person not loaded yet. MySQL sorts NULL
+         * last when descending, as NaN is here.
+         */
+        private int[] sorted(int[] personIds)
+        {
+            if (personIds.length == 0)
+            {
+                return NONE;
+            }
+            return Arrays.stream(personIds)
+                         .filter(persons::containsKey)
+                         .boxed()
+                         .sorted((a, b) -> {
+                             double pa = persons.get(a).popularity;
+                             double pb = persons.get(b).popularity;
+                             if (Double.isNaN(pa) != Double.isNaN(pb))
+                             {
+                                 return Double.isNaN(pa) ? 1 : -1;
+                             }
+                             int byPopularity = Double.isNaN(pa) ? 0 : Double.compare(pb, pa);
+                             return byPopularity != 0 ? byPopularity : Integer.compare(a, b);
+                         })
+                         .mapToInt(Integer::intValue)
+                         .toArray();
+        }
+    }
+}
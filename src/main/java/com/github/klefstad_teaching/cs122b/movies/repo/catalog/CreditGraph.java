@@ -0,0 +1,311 @@
+package com.github.klefstad_teaching.cs122b.movies.repo.catalog;
+
+import com.github.klefstad_teaching.cs122b.movies.config.MoviesServiceConfig;
+import com.github.klefstad_teaching.cs122b.movies.repo.Bulkheads;
+import com.github.klefstad_teaching.cs122b.movies.repo.ReplicaRoutingDataSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.LongPredicate;
+
+/**
+ * {@code movie_person} as a graph in compressed sparse row form, in both
+ * directions: sorted movie ids with, for each, an offset into one array of
+ * person ids, and the same from persons to movies. Answers who is in a
+ * movie and what a person was in without joining {@code movie_person}.
+ * It is the one in-memory copy of the credits: {@link CastIndex} orders
+ * its casts from here.
+ * <p>
+ * Loaded at startup when enabled. Refreshing one movie's or person's
+ * credits re-reads only their rows and splices them into the sorted edge
+ * arrays in one linear pass, without re-reading the table or re-sorting.
+ */
+@Component
+public class CreditGraph
+{
+    private static final int[] NONE = new int[0];
+
+    private static final String CREDIT_SQL =
+        "SELECT mp.movie_id, mp.person_id FROM movies.movie_person mp";
+
+    private static final String MOVIE_CREDIT_SQL =
+        "SELECT mp.person_id FROM movies.movie_person mp WHERE mp.movie_id = :movieId";
+
+    private static final String PERSON_CREDIT_SQL =
+        "SELECT mp.movie_id FROM movies.movie_person mp WHERE mp.person_id = :personId";
+
+    private final NamedParameterJdbcTemplate template;
+    private final Bulkheads bulkheads;
+    private final boolean enabled;
+
+    private volatile Graph graph;
+
+    @Autowired
+    public CreditGraph(NamedParameterJdbcTemplate template, MoviesServiceConfig config, Bulkheads bulkheads)
+    {
+        this.template = template;
+        this.bulkheads = bulkheads;
+        this.enabled = config.getCreditGraph().isEnabled();
+    }
+
+    @PostConstruct
+    public void warm()
+    {
+        if (enabled)
+        {
+            graph();
+        }
+    }
+
+    /**
+     * Ids of the persons credited on {@code movieId}, ascending; empty when
+     * it has no credits.
+     */
+    public int[] personsOf(long movieId)
+    {
+        return graph().movies.targets((int) movieId);
+    }
+
+    /**
+     * Ids of the movies {@code personId} is credited on, ascending; empty
+     * when they have none.
+     */
+    public int[] moviesOf(long personId)
+    {
+        return graph().persons.targets((int) personId);
+    }
+
+    /**
+     * Distinct ids of the persons credited on any of {@code movieIds},
+     * ascending.
+     */
+    public int[] personsOfMovies(Collection<Integer> movieIds)
+    {
+        Graph current = graph();
+        int[][] lists = new int[movieIds.size()][];
+        int total = 0, i = 0;
+        for (Integer movieId : movieIds)
+        {
+            lists[i] = current.movies.targets(movieId);
+            total += lists[i++].length;
+        }
+
+        int[] merged = new int[total];
+        int at = 0;
+        for (int[] list : lists)
+        {
+            System.arraycopy(list, 0, merged, at, list.length);
+            at += list.length;
+        }
+        return Arrays.stream(merged).sorted().distinct().toArray();
+    }
+
+    /**
+     * Re-reads the credits of one movie.
+     */
+    public synchronized void refreshMovie(long movieId)
+    {
+        Graph current = this.graph;
+        if (current == null)
+        {
+            return;
+        }
+
+        MapSqlParameterSource source = new MapSqlParameterSource().addValue("movieId", movieId, Types.INTEGER);
+        List<Integer> personIds = template.queryForList(MOVIE_CREDIT_SQL, source, Integer.class);
+
+        long[] added = personIds.stream().mapToLong(personId -> edge((int) movieId, personId)).sorted().toArray();
+        this.graph = new Graph(
+            splice(current.edges, edge -> from(edge) == movieId, added),
+            splice(current.reversed, edge -> to(edge) == movieId, reverse(added))
+        );
+    }
+
+    /**
+     * Re-reads the credits of one person.
+     */
+    public synchronized void refreshPerson(long personId)
+    {
+        Graph current = this.graph;
+        if (current == null)
+        {
+            return;
+        }
+
+        MapSqlParameterSource source = new MapSqlParameterSource().addValue("personId", personId, Types.INTEGER);
+        List<Integer> movieIds = template.queryForList(PERSON_CREDIT_SQL, source, Integer.class);
+
+        long[] added = movieIds.stream().mapToLong(movieId -> edge(movieId, (int) personId)).sorted().toArray();
+        this.graph = new Graph(
+            splice(current.edges, edge -> to(edge) == personId, added),
+            splice(current.reversed, edge -> from(edge) == personId, reverse(added))
+        );
+    }
+
+    /**
+     * Discards the graph; it is rebuilt on next use.
+     */
+    public synchronized void reload()
+    {
+        this.graph = null;
+    }
+
+    private Graph graph()
+    {
+        Graph current = this.graph;
+        if (current == null)
+        {
+            synchronized (this)
+            {
+                current = this.graph;
+                if (current == null)
+                {
+                    current = bulkheads.load(() -> ReplicaRoutingDataSource.onPrimary(this::load));
+                    this.graph = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private Graph load()
+    {
+        List<Long> edges = new ArrayList<>();
+        template.getJdbcTemplate().query(CREDIT_SQL, rs -> {
+            edges.add(edge(rs.getInt(1), rs.getInt(2)));
+        });
+        long[] sorted = edges.stream().mapToLong(Long::longValue).sorted().distinct().toArray();
+        return new Graph(sorted, reverse(sorted));
+    }
+
+    /**
+     * A movie to person edge packed into one long, movie id in the high
+     * half, so sorting edges groups them by movie.
+     */
+    private static long edge(int movieId, int personId)
+    {
+        return ((long) movieId << 32) | (personId & 0xFFFFFFFFL);
+    }
+
+    private static int from(long edge)
+    {
+        return (int) (edge >>> 32);
+    }
+
+    private static int to(long edge)
+    {
+        return (int) edge;
+    }
+
+    /**
+     * The same edges pointing the other way, sorted.
+     */
+    private static long[] reverse(long[] edges)
+    {
+        return Arrays.stream(edges).map(edge -> edge(to(edge), from(edge))).sorted().toArray();
+    }
+
+    /**
+     * {@code sorted} without the edges {@code drop} matches, merged with
+     * {@code added}, which is sorted too: one pass over both.
+     */
+    private static long[] splice(long[] sorted, LongPredicate drop, long[] added)
+    {
+        long[] spliced = new long[sorted.length + added.length];
+        int length = 0, i = 0, j = 0;
+        while (i < sorted.length || j < added.length)
+        {
+            long next;
+            if (j == added.length || (i < sorted.length && sorted[i] < added[j]))
+            {
+                next = sorted[i++];
+                if (drop.test(next)) continue;
+            }
+            else
+            {
+                next = added[j++];
+            }
+            if (length == 0 || spliced[length - 1] != next)
+            {
+                spliced[length++] = next;
+            }
+        }
+        return Arrays.copyOf(spliced, length);
+    }
+
+    private static final class Graph
+    {
+        // Every edge once, sorted, from each side; what refreshes start from.
+        private final long[] edges;
+        private final long[] reversed;
+        private final Rows   movies;
+        private final Rows   persons;
+
+        private Graph(long[] edges, long[] reversed)
+        {
+            this.edges = edges;
+            this.reversed = reversed;
+            this.movies = new Rows(edges);
+            this.persons = new Rows(reversed);
+        }
+    }
+
+    /**
+     * One direction of the graph: {@code keys} sorted, and the targets of
+     * {@code keys[i]} at {@code targets[offsets[i]]} up to
+     * {@code targets[offsets[i + 1]]}, ascending.
+     */
+    private static final class Rows
+    {
+        private final int[] keys;
+        private final int[] offsets;
+        private final int[] targets;
+
+        private Rows(long[] sortedEdges)
+        {
+            int distinct = 0;
+            for (int i = 0; i < sortedEdges.length; i++)
+            {
+                if (i == 0 || from(sortedEdges[i]) != from(sortedEdges[i - 1]))
+                {
+                    distinct++;
+                }
+            }
+
+            this.keys = new int[distinct];
+            this.offsets = new int[distinct + 1];
+            this.targets = new int[sortedEdges.length];
+
+            int row = -1;
+            for (int i = 0; i < sortedEdges.length; i++)
+            {
+                if (i == 0 || from(sortedEdges[i]) != from(sortedEdges[i - 1]))
+                {
+                    row++;
+                    keys[row] = from(sortedEdges[i]);
+                    offsets[row] = i;
+                }
+                targets[i] = to(sortedEdges[i]);
+            }
+            offsets[distinct] = sortedEdges.length;
+        }
+
+        private int[] targets(int key)
+        {
+            int row = Arrays.binarySearch(keys, key);
+            if (row < 0)
+            {
+                return NONE;
+            }
+            return Arrays.copyOfRange(targets, offsets[row], offsets[row + 1]);
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package com.github.klefstad_teaching.cs122b.movies.repo.catalog;
+
+import com.github.klefstad_teaching.cs122b.movies.config.MoviesServiceConfig;
+import com.github.klefstad_teaching.cs122b.movies.repo.Bulkheads;
+import com.github.klefstad_teaching.cs122b.movies.repo.ReplicaRoutingDataSource;
+import com.github.klefstad_teaching.cs122b.movies.util.LikePattern;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Typo tolerant lookup over {@code person.name}. Names are split into
+ * folded words and every query word is matched against that vocabulary
+ * within a small edit distance, using word trigrams to find the words
+ * worth comparing. A person matches when each query word matched one of
+ * their name's words; the distances are summed.
+ * <p>
+ * Built from the whole table on first use, then kept current one person
+ * at a time through {@link #refreshPerson(long)}.
+ */
+@Component
+public class FuzzyNameIndex
+{
+    private static final int[] NONE = new int[0];
+
+    private static final String PERSON_SQL =
+        "SELECT p.id, p.name, p.popularity FROM movies.person p";
+
+    private static final String PERSON_BY_ID_SQL =
+        "SELECT p.id, p.name, p.popularity FROM movies.person p WHERE p.id = :personId";
+
+    private final NamedParameterJdbcTemplate template;
+    private final int maxEdits;
+    private final int maxCandidates;
+    private final Bulkheads bulkheads;
+
+    private volatile Snapshot snapshot;
+
+    @Autowired
+    public FuzzyNameIndex(NamedParameterJdbcTemplate template, MoviesServiceConfig config, Bulkheads bulkheads)
+    {
+        this.template = template;
+        this.bulkheads = bulkheads;
+        this.maxEdits = config.getFuzzy().getMaxEdits();
+        this.maxCandidates = config.getFuzzy().getMaxCandidates();
+    }
+
+    /**
+     * An index over no database, filled through {@link #putPerson}.
+     */
+    FuzzyNameIndex(int maxEdits, int maxCandidates)
+    {
+        this.template = null;
+        this.maxEdits = maxEdits;
+        this.maxCandidates = maxCandidates;
+        this.snapshot = new Snapshot();
+    }
+
+    /**
+     * Ids of the persons whose name matches every word of {@code name}
+     * within the allowed edits, closest first and then by
+     * {@code popularity DESC, id}; at most
+     * {@link MoviesServiceConfig.Fuzzy#getMaxCandidates()} of them.
+     */
+    public int[] match(String name)
+    {
+        Snapshot current = snapshot();
+
+        Map<Integer, Integer> distances = null;
+        for (String queryWord : new LinkedHashSet<>(words(LikePattern.fold(name))))
+        {
+            Map<Integer, Integer> matched = new HashMap<>();
+            current.similarWords(queryWord, allowedEdits(queryWord)).forEach((word, distance) -> {
+                Set<Integer> personIds = current.personsByWord.get(word);
+                if (personIds != null)
+                {
+                    for (Integer personId : personIds)
+                    {
+                        matched.merge(personId, distance, Math::min);
+                    }
+                }
+            });
+
+            if (distances == null)
+            {
+                distances = matched;
+            }
+            else
+            {
+                Map<Integer, Integer> both = new HashMap<>();
+                for (Map.Entry<Integer, Integer> entry : distances.entrySet())
+                {
+                    Integer distance = matched.get(entry.getKey());
+                    if (distance != null)
+                    {
+                        both.put(entry.getKey(), entry.getValue() + distance);
+                    }
+                }
+                distances = both;
+            }
+
+            if (distances.isEmpty())
+            {
+                return NONE;
+            }
+        }
+
+        if (distances == null)
+        {
+            return NONE;
+        }
+
+        Map<Integer, Integer> ranked = distances;
+        return ranked.keySet()
+                     .stream()
+                     .sorted((a, b) -> {
+                         int byDistance = Integer.compare(ranked.get(a), ranked.get(b));
+                         return byDistance != 0 ? byDistance : current.byPopularity(a, b);
+                     })
+                     .limit(maxCandidates)
+                     .mapToInt(Integer::intValue)
+                     .toArray();
+    }
+
+    /**
+     * Re-reads one person's name and popularity, or drops them when they
+     * no longer exist.
+     */
+    public synchronized void refreshPerson(long personId)
+    {
+        Snapshot current = this.snapshot;
+        if (current == null)
+        {
+            return;
+        }
+
+        MapSqlParameterSource source = new MapSqlParameterSource().addValue("personId", personId, Types.INTEGER);
+        current.removePerson((int) personId);
+        template.query(PERSON_BY_ID_SQL, source, rs -> {
+            current.putPerson(rs.getInt(1), rs.getString(2), rs.getObject(3) == null ? null : rs.getDouble(3));
+        });
+    }
+
+    void putPerson(int id, String name, Double popularity)
+    {
+        snapshot().putPerson(id, name, popularity);
+    }
+
+    /**
+     * Discards the index; it is rebuilt on next use.
+     */
+    public synchronized void reload()
+    {
+        this.snapshot = null;
+    }
+
+    /**
+     * Edits a query word may be away from a name word: none for one or two
+     * letters, where any edit is a different word, one up to five letters
+     * and two beyond, capped by {@link MoviesServiceConfig.Fuzzy#getMaxEdits()}.
+     */
+    private int allowedEdits(String word)
+    {
+        int edits = word.length() <= 2 ? 0 : word.length() <= 5 ? 1 : 2;
+        return Math.min(edits, maxEdits);
+    }
+
+    private Snapshot snapshot()
+    {
+        Snapshot current = this.snapshot;
+        if (current == null)
+        {
+            synchronized (this)
+            {
+                current = this.snapshot;
+                if (current == null)
+                {
+                    current = bulkheads.load(() -> ReplicaRoutingDataSource.onPrimary(this::load));
+                    this.snapshot = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private Snapshot load()
+    {
+        Snapshot loaded = new Snapshot();
+        template.getJdbcTemplate().query(PERSON_SQL, rs -> {
+            loaded.putPerson(rs.getInt(1), rs.getString(2), rs.getObject(3) == null ? null : rs.getDouble(3));
+        });
+        return loaded;
+    }
+
+    private static List<String> words(String text)
+    {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++)
+        {
+            boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0)
+            {
+                start = i;
+            }
+            else if (!inWord && start >= 0)
+            {
+                words.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Trigrams of {@code word} padded with two spaces on each side, so
+     * the first and last letters are in as many trigrams as the middle
+     * ones.
+     */
+    private static Set<Long> trigrams(String word)
+    {
+        String padded = "  " + word + "  ";
+        Set<Long> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++)
+        {
+            trigrams.add(((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2));
+        }
+        return trigrams;
+    }
+
+    /**
+     * Optimal string alignment distance between {@code a} and {@code b},
+     * so a swap of adjacent letters is one edit; anything over
+     * {@code limit} is reported as {@code limit + 1}.
+     */
+    private static int distance(String a, String b, int limit)
+    {
+        if (Math.abs(a.length() - b.length()) > limit)
+        {
+            return limit + 1;
+        }
+
+        int[] previous2 = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] row = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++)
+        {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= a.length(); i++)
+        {
+            row[0] = i;
+            int best = row[0];
+            for (int j = 1; j <= b.length(); j++)
+            {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                row[j] = Math.min(Math.min(row[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1))
+                {
+                    row[j] = Math.min(row[j], previous2[j - 2] + 1);
+                }
+                best = Math.min(best, row[j]);
+            }
+            if (best > limit)
+            {
+                return limit + 1;
+            }
+
+            int[] recycled = previous2;
+            previous2 = previous;
+            previous = row;
+            row = recycled;
+        }
+        return Math.min(previous[b.length()], limit + 1);
+    }
+
+    private static final class Entry
+    {
+        private final String[] words;
+        private final double   popularity;
+
+        private Entry(String[] words, Double popularity)
+        {
+            this.words = words;
+            this.popularity = popularity == null ? Double.NaN : popularity;
+        }
+    }
+
+    private static final class Snapshot
+    {
+        private final Map<Integer, Entry>       persons        = new ConcurrentHashMap<>();
+        private final Map<String, Set<Integer>> personsByWord  = new ConcurrentHashMap<>();
+        private final Map<Long, Set<String>>    wordsByTrigram = new ConcurrentHashMap<>();
+
+        private void putPerson(int id, String name, Double popularity)
+        {
+            String[] words = new LinkedHashSet<>(words(LikePattern.fold(name))).toArray(new String[0]);
+            persons.put(id, new Entry(words, popularity));
+            for (String word : words)
+            {
+                personsByWord.computeIfAbsent(word, w -> {
+                    for (long trigram : trigrams(w))
+                    {
+                        wordsByTrigram.computeIfAbsent(trigram, t -> ConcurrentHashMap.newKeySet()).add(w);
+                    }
+                    return ConcurrentHashMap.newKeySet();
+                }).add(id);
+            }
+        }
+
+        private void removePerson(int id)
+        {
+            Entry removed = persons.remove(id);
+            if (removed == null)
+            {
+                return;
+            }
+
+            for (String word : removed.words)
+            {
+                Set<Integer> personIds = personsByWord.get(word);
+                if (personIds == null)
+                {
+                    continue;
+                }
+                personIds.remove(id);
+                if (personIds.isEmpty())
+                {
+                    personsByWord.remove(word);
+                    for (long trigram : trigrams(word))
+                    {
+                        wordsByTrigram.computeIfPresent(trigram, (t, words) -> {
+                            words.remove(word);
+                            return words.isEmpty() ? null : words;
+                        });
+                    }
+                }
+            }
+        }
+
+        /**
+         * Vocabulary words within {@code edits} of {@code queryWord}, with
+         * their distance. An insertion, deletion or substitution changes at
+         * most three padded trigrams and a swap of adjacent letters four,
+         * so a word sharing fewer than all but {@code 4 * edits} of the
+         * query word's trigrams is skipped without being compared.
+         */
+        private Map<String, Integer> similarWords(String queryWord, int edits)
+        {
+            Map<String, Integer> similar = new HashMap<>();
+            if (edits == 0)
+            {
+                if (personsByWord.containsKey(queryWord))
+                {
+                    similar.put(queryWord, 0);
+                }
+                return similar;
+            }
+
+            Set<Long> queryTrigrams = trigrams(queryWord);
+            int needed = queryTrigrams.size() - 4 * edits;
+
+            Map<String, Integer> shared = new HashMap<>();
+            for (long trigram : queryTrigrams)
+            {
+                Set<String> words = wordsByTrigram.get(trigram);
+                if (words != null)
+                {
+                    for (String word : words)
+                    {
+                        shared.merge(word, 1, Integer::sum);
+                    }
+                }
+            }
+
+            shared.forEach((word, count) -> {
+                if (count < needed)
+                {
+                    return;
+                }
+                int distance = distance(queryWord, word, edits);
+                if (distance <= edits)
+                {
+                    similar.put(word, distance);
+                }
+            });
+            return similar;
+        }
+
+        /**
+         * {@code popularity DESC, id}, with NULL popularity last as MySQL
+         * sorts it.
+         */
+        private int byPopularity(int a, int b)
+        {
+            Entry ea = persons.get(a);
+            Entry eb = persons.get(b);
+            double pa = ea == null ? Double.NaN : ea.popularity;
+            double pb = eb == null ? Double.NaN : eb.popularity;
+            if (Double.isNaN(pa) != Double.isNaN(pb))
+            {
+                return Double.isNaN(pa) ? 1 : -1;
+            }
+            int byPopularity = Double.isNaN(pa) ? 0 : Double.compare(pb, pa);
+            return byPopularity != 0 ? byPopularity : Integer.compare(a, b);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.github.klefstad_teaching.cs122b.movies.repo.catalog;
+
+import com.github.klefstad_teaching.cs122b.movies.repo.entity.Genre;
+import com.github.klefstad_teaching.cs122b.movies.util.LikePattern;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.EmptySqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code genre} table, loaded once at startup. It has a handful of rows
+ * that never change while the service runs, so genre terms are resolved to
+ * ids and genre ids to names here instead of joining {@code genre}.
+ */
+@Component
+public class GenreDictionary
+{
+    // Loaded in name order, so a genre's position is its rank under the
+    // column's collation and sorting by it matches ORDER BY g.name.
+    private static final String GENRE_SQL =
+        "SELECT g.id, g.name FROM movies.genre g ORDER BY g.name, g.id";
+
+    private static final RowMapper<Genre> GENRE_ROW = (rs, rowNum) -> {
+        Genre genre = new Genre();
+        genre.setId(rs.getLong(1));
+        genre.setName(rs.getString(2));
+        return genre;
+    };
+
+    private final NamedParameterJdbcTemplate template;
+
+    private volatile Entries entries = new Entries(List.of());
+
+    @Autowired
+    public GenreDictionary(NamedParameterJdbcTemplate template)
+    {
+        this.template = template;
+    }
+
+    /**
+     * Reloads the dictionary from the database. Called once at startup.
+     */
+    @PostConstruct
+    public synchronized void reload()
+    {
+        this.entries = new Entries(template.query(GENRE_SQL, EmptySqlParameterSource.INSTANCE, GENRE_ROW));
+    }
+
+    /**
+     * Ids of the genres whose name matches {@code LIKE '%term%'}, in
+     * ascending order; empty when none does.
+     */
+    public int[] idsMatching(String term)
+    {
+        Entries current = this.entries;
+        LikePattern pattern = LikePattern.contains(term);
+        return Arrays.stream(current.order)
+                     .filter(i -> pattern.matches(current.foldedNames[i]))
+                     .map(i -> current.ids[i])
+                     .sorted()
+                     .toArray();
+    }
+
+    /**
+     * The genres with the given ids, ordered by name. Unknown ids are
+     * dropped.
+     */
+    public Genre[] genres(int[] genreIds)
+    {
+        Entries current = this.entries;
+        return Arrays.stream(genreIds)
+                     .mapToObj(current.rankById::get)
+                     .filter(rank -> rank != null)
+                     .mapToInt(Integer::intValue)
+                     .sorted()
+                     .mapToObj(current::genre)
+                     .toArray(Genre[]::new);
+    }
+
+    public int size()
+    {
+        return entries.ids.length;
+    }
+
+    private static final class Entries
+    {
+        private final int[]    order;
+        private final int[]    ids;
+        private final String[] names;
+        private final String[] foldedNames;
+
+        private final Map<Integer, Integer> rankById = new HashMap<>();
+
+        private Entries(List<Genre> genres)
+        {
+            int size = genres.size();
+            this.order = new int[size];
+            this.ids = new int[size];
+            this.names = new String[size];
+            this.foldedNames = new String[size];
+
+            for (int i = 0; i < size; i++)
+            {
+                Genre genre = genres.get(i);
+                order[i] = i;
+                ids[i] = genre.getId().intValue();
+                names[i] = genre.getName();
+                foldedNames[i] = LikePattern.fold(genre.getName());
+                rankById.put(ids[i], i);
+            }
+        }
+
+        private Genre genre(int rank)
+        {
+            Genre genre = new Genre();
+            genre.setId((long) ids[rank]);
+            genre.setName(names[rank]);
+            return genre;
+        }
+    }
+}
@@ -0,0 +1,650 @@
+package com.github.klefstad_teaching.cs122b.movies.repo.catalog;
+
+import com.github.klefstad_teaching.cs122b.core.error.ResultError;
+import com.github.klefstad_teaching.cs122b.core.result.MoviesResults;
+import com.github.klefstad_teaching.cs122b.movies.config.MoviesServiceConfig;
+import com.github.klefstad_teaching.cs122b.movies.repo.Bulkheads;
+import com.github.klefstad_teaching.cs122b.movies.repo.ReplicaRoutingDataSource;
+import com.github.klefstad_teaching.cs122b.movies.repo.SearchCursor;
+import com.github.klefstad_teaching.cs122b.movies.repo.entity.Movie;
+import com.github.klefstad_teaching.cs122b.movies.repo.entity.MovieQuery;
+import com.github.klefstad_teaching.cs122b.movies.util.LikePattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-only, column oriented copy of the movie catalog used to answer
+ * {@code /movie/search} without going to MySQL. Every column lives in its
+ * own primitive array indexed by the movie's position in the snapshot.
+ * It also holds the full-text index behind the {@code q} parameter, which
+ * MySQL cannot answer, so relevance searches come here whichever engine
+ * is configured.
+ * <p>
+ * Loaded on first use, then rebuilt in the background every
+ * {@link MoviesServiceConfig.Catalog#getRebuildMillis()} and soon after a
+ * movie or person is refreshed; searches keep using the previous snapshot
+ * while a rebuild runs. A refreshed movie's {@code hidden} flag is re-read
+ * at once, so a movie an admin hides stops showing up to everyone else
+ * before the rebuild lands.
+ */
+@Component
+public class MovieCatalog
+{
+    private static final String MOVIE_SQL =
+        "SELECT m.id, m.title, m.year, m.rating, m.backdrop_path, m.poster_path, m.hidden, director.name, m.overview " +
+        "FROM movies.movie m " +
+        "JOIN movies.person director ON director.id = m.director_id " +
+        "ORDER BY m.id";
+
+    private static final String GENRE_SQL =
+        "SELECT g.id, g.name FROM movies.genre g ORDER BY g.id";
+
+    // Full-text field weights: a word in the title says more about a movie
+    // than the same word in its overview.
+    private static final double TITLE_BOOST    = 3.0;
+    private static final double DIRECTOR_BOOST = 2.0;
+    private static final double OVERVIEW_BOOST = 1.0;
+
+    private static final String MOVIE_GENRE_SQL =
+        "SELECT mg.movie_id, mg.genre_id FROM movies.movie_genre mg";
+
+    private static final String HIDDEN_BY_ID_SQL =
+        "SELECT m.hidden FROM movies.movie m WHERE m.id = :movieId";
+
+    private static final Logger LOG = LoggerFactory.getLogger(MovieCatalog.class);
+
+    private final NamedParameterJdbcTemplate template;
+    private final Bulkheads bulkheads;
+    private final long rebuildMillis;
+
+    private ScheduledExecutorService rebuilder;
+    private final AtomicBoolean      rebuildPending = new AtomicBoolean();
+
+    private volatile Snapshot snapshot;
+
+    // Hidden flags re-read since the snapshot was loaded, by movie id; a
+    // rebuild only forgets the ones it has read.
+    private final AtomicLong                  sequence      = new AtomicLong();
+    private final Map<Integer, HiddenChange> hiddenChanges = new ConcurrentHashMap<>();
+
+    @Autowired
+    public MovieCatalog(NamedParameterJdbcTemplate template, MoviesServiceConfig config, Bulkheads bulkheads)
+    {
+        this.template = template;
+        this.bulkheads = bulkheads;
+        this.rebuildMillis = config.getCatalog().getRebuildMillis();
+    }
+
+    @PostConstruct
+    public void scheduleRebuild()
+    {
+        this.rebuilder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "catalog-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (rebuildMillis > 0)
+        {
+            this.rebuilder.scheduleWithFixedDelay(this::rebuild, rebuildMillis, rebuildMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        if (rebuilder != null)
+        {
+            rebuilder.shutdownNow();
+        }
+    }
+
+    /**
+     * Evaluates the filters of {@code movieQuery} against the catalog and
+     * returns the requested page in the same order MySQL would, or an empty
+     * array when nothing matches. When {@code cursor} is set the page starts
+     * right after it.
+     * <p>
+     * With {@code q} set the rows are ranked by relevance instead, best
+     * first, each movie once; {@code orderBy}, {@code descending} and
+     * {@code cursor} are ignored.
+     */
+    public Movie[] searchMovies(MovieQuery movieQuery, String orderBy, boolean descending,
+                                int limit, int offset, SearchCursor cursor, boolean showHidden)
+    {
+        Snapshot catalog = snapshot();
+        Filter filter = new Filter(catalog, movieQuery, showHidden, hiddenChanges);
+        if (filter.matchesNothing())
+        {
+            return new Movie[0];
+        }
+
+        boolean relevance = movieQuery.getQ() != null;
+        int[] order = relevance ? catalog.relevance(movieQuery.getQ()) : catalog.order(orderBy, descending);
+        List<Movie> page = new ArrayList<>(limit);
+        int skipped = 0;
+
+        int start = cursor == null || relevance ? 0 : catalog.after(order, orderBy, cursor);
+
+        for (int i = start; i < order.length && page.size() < limit; i++)
+        {
+            int row = order[i];
+            if (!filter.matches(row))
+            {
+                continue;
+            }
+            if (skipped < offset)
+            {
+                skipped++;
+                continue;
+            }
+            Movie movie = catalog.toMovie(row);
+            movie.setHidden(filter.hidden(row));
+            page.add(movie);
+        }
+
+        return page.toArray(new Movie[0]);
+    }
+
+    /**
+     * Number of rows {@link #searchMovies} pages through for the filters of
+     * {@code movieQuery}.
+     */
+    public long countMovies(MovieQuery movieQuery, boolean showHidden)
+    {
+        Snapshot catalog = snapshot();
+        Filter filter = new Filter(catalog, movieQuery, showHidden, hiddenChanges);
+        if (filter.matchesNothing())
+        {
+            return 0;
+        }
+
+        long count = 0;
+        if (movieQuery.getQ() != null)
+        {
+            for (int row : catalog.relevance(movieQuery.getQ()))
+            {
+                if (filter.matches(row)) count++;
+            }
+            return count;
+        }
+
+        for (int row = 0; row < catalog.ids.length; row++)
+        {
+            if (filter.matches(row)) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Re-reads a movie's {@code hidden} flag and queues a rebuild for the
+     * rest of its changes. A movie that no longer exists counts as hidden
+     * until the rebuild drops it.
+     */
+    public void refreshMovie(long movieId)
+    {
+        if (this.snapshot != null)
+        {
+            MapSqlParameterSource source = new MapSqlParameterSource().addValue("movieId", movieId, Types.INTEGER);
+            List<Boolean> hidden = template.queryForList(HIDDEN_BY_ID_SQL, source, Boolean.class);
+            hiddenChanges.put((int) movieId, new HiddenChange(hidden.isEmpty() || hidden.get(0), sequence.incrementAndGet()));
+        }
+        requestRebuild();
+    }
+
+    /**
+     * Queues a rebuild after a person changed, since director names are
+     * part of the snapshot.
+     */
+    public void refreshPerson(long personId)
+    {
+        requestRebuild();
+    }
+
+    /**
+     * Loads a fresh snapshot and swaps it in, unless none was ever needed.
+     * A failed rebuild is logged and the current snapshot is kept.
+     */
+    public void rebuild()
+    {
+        if (this.snapshot == null)
+        {
+            return;
+        }
+
+        long started = sequence.get();
+        try {
+            Snapshot rebuilt = bulkheads.load(this::load);
+            this.snapshot = rebuilt;
+            hiddenChanges.values().removeIf(change -> change.sequence <= started);
+            LOG.info("Rebuilt movie catalog over {} movies", rebuilt.size);
+        } catch (RuntimeException e) {
+            LOG.warn("Movie catalog rebuild failed, keeping the current snapshot", e);
+        }
+    }
+
+    /**
+     * Discards the current snapshot and loads a fresh one from the database.
+     */
+    public synchronized void reload()
+    {
+        long started = sequence.get();
+        this.snapshot = bulkheads.load(this::load);
+        hiddenChanges.values().removeIf(change -> change.sequence <= started);
+    }
+
+    /**
+     * Runs one rebuild on the background thread; requests made while one is
+     * queued share it, and requests made while it runs queue another.
+     */
+    private void requestRebuild()
+    {
+        if (rebuilder == null || this.snapshot == null || !rebuildPending.compareAndSet(false, true))
+        {
+            return;
+        }
+        rebuilder.execute(() -> {
+            rebuildPending.set(false);
+            rebuild();
+        });
+    }
+
+    private Snapshot snapshot()
+    {
+        Snapshot current = this.snapshot;
+        if (current == null)
+        {
+            synchronized (this)
+            {
+                current = this.snapshot;
+                if (current == null)
+                {
+                    current = bulkheads.load(() -> ReplicaRoutingDataSource.onPrimary(this::load));
+                    this.snapshot = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private Snapshot load()
+    {
+        List<Object[]> rows = new ArrayList<>();
+        template.getJdbcTemplate().query(MOVIE_SQL, rs -> {
+            rows.add(new Object[]{
+                rs.getInt(1), rs.getString(2), rs.getInt(3), rs.getDouble(4),
+                rs.getString(5), rs.getString(6), rs.getBoolean(7), rs.getString(8),
+                rs.getString(9)
+            });
+        });
+
+        List<String> genreNames = new ArrayList<>();
+        Map<Integer, Integer> genreBits = new HashMap<>();
+        template.getJdbcTemplate().query(GENRE_SQL, rs -> {
+            genreBits.put(rs.getInt(1), genreNames.size());
+            genreNames.add(rs.getString(2));
+        });
+
+        Snapshot catalog = new Snapshot(rows, genreNames);
+
+        template.getJdbcTemplate().query(MOVIE_GENRE_SQL, rs -> {
+            Integer row = catalog.rowById.get(rs.getInt(1));
+            Integer bit = genreBits.get(rs.getInt(2));
+            if (row != null && bit != null)
+            {
+                catalog.genres[row * catalog.genreWords + (bit >>> 6)] |= 1L << bit;
+            }
+        });
+
+        return catalog;
+    }
+
+    /**
+     * The filters of one query, evaluated row by row.
+     */
+    private static final class Filter
+    {
+        private final Snapshot                   catalog;
+        private final boolean                    showHidden;
+        private final Map<Integer, HiddenChange> hiddenChanges;
+        private final Integer                    year;
+        private final LikePattern                title;
+        private final LikePattern                director;
+        private final long[]                     genreMask;
+        private final BitSet                     titleRows;
+        private final BitSet                     directorRows;
+
+        private Filter(Snapshot catalog, MovieQuery movieQuery, boolean showHidden, Map<Integer, HiddenChange> hiddenChanges)
+        {
+            this.catalog = catalog;
+            this.showHidden = showHidden;
+            this.hiddenChanges = hiddenChanges;
+            this.year = movieQuery.getYear();
+            this.title = movieQuery.getTitle() == null ? null : LikePattern.contains(movieQuery.getTitle());
+            this.director = movieQuery.getDirector() == null ? null : LikePattern.contains(movieQuery.getDirector());
+            this.genreMask = movieQuery.getGenre() == null ? null : catalog.genreMask(LikePattern.contains(movieQuery.getGenre()));
+            this.titleRows = title == null ? null : catalog.rows(catalog.titleIndex, title);
+            this.directorRows = director == null ? null : catalog.rows(catalog.directorIndex, director);
+        }
+
+        private boolean matchesNothing()
+        {
+            return (titleRows != null && titleRows.isEmpty()) || (directorRows != null && directorRows.isEmpty());
+        }
+
+        /**
+         * Whether {@code row} passes every filter. A movie in several of the
+         * genres the term matches is still listed once, as on the SQL path.
+         */
+        private boolean matches(int row)
+        {
+            if (!showHidden && hidden(row)) return false;
+            if (year != null && catalog.years[row] != year) return false;
+            if (titleRows != null && !titleRows.get(row)) return false;
+            if (directorRows != null && !directorRows.get(row)) return false;
+            if (title != null && !title.matches(catalog.foldedTitles[row])) return false;
+            if (director != null && !director.matches(catalog.foldedDirectors[row])) return false;
+
+            return genreMask == null || catalog.hasGenre(row, genreMask);
+        }
+
+        /**
+         * {@code row}'s hidden flag, as re-read since the snapshot was
+         * loaded if it was.
+         */
+        private boolean hidden(int row)
+        {
+            if (hiddenChanges.isEmpty())
+            {
+                return catalog.hidden[row];
+            }
+            HiddenChange change = hiddenChanges.get(catalog.ids[row]);
+            return change == null ? catalog.hidden[row] : change.hidden;
+        }
+    }
+
+    private static final class HiddenChange
+    {
+        private final boolean hidden;
+        private final long    sequence;
+
+        private HiddenChange(boolean hidden, long sequence)
+        {
+            this.hidden = hidden;
+            this.sequence = sequence;
+        }
+    }
+
+    private static final class Snapshot
+    {
+        private final int size;
+
+        private final int[]     ids;
+        private final String[]  titles;
+        private final String[]  foldedTitles;
+        private final int[]     years;
+        private final double[]  ratings;
+        private final String[]  backdropPaths;
+        private final String[]  posterPaths;
+        private final boolean[] hidden;
+        private final String[]  directors;
+        private final String[]  foldedDirectors;
+
+        private final String[] foldedGenreNames;
+        private final int      genreWords;
+        private final long[]   genres;
+
+        private final Map<Integer, Integer> rowById;
+
+        private final TrigramIndex titleIndex;
+        private final TrigramIndex directorIndex;
+        private final Bm25Index    textIndex;
+
+        private final int[] titleAsc, titleDesc;
+        private final int[] ratingAsc, ratingDesc;
+        private final int[] yearAsc, yearDesc;
+
+        private Snapshot(List<Object[]> rows, List<String> genreNames)
+        {
+            this.size = rows.size();
+
+            this.ids = new int[size];
+            this.titles = new String[size];
+            this.foldedTitles = new String[size];
+            this.years = new int[size];
+            this.ratings = new double[size];
+            this.backdropPaths = new String[size];
+            this.posterPaths = new String[size];
+            this.hidden = new boolean[size];
+            this.directors = new String[size];
+            this.foldedDirectors = new String[size];
+            this.rowById = new HashMap<>(size * 2);
+            String[] foldedOverviews = new String[size];
+
+            for (int i = 0; i < size; i++)
+            {
+                Object[] row = rows.get(i);
+                ids[i] = (Integer) row[0];
+                titles[i] = (String) row[1];
+                foldedTitles[i] = LikePattern.fold(titles[i]);
+                years[i] = (Integer) row[2];
+                ratings[i] = (Double) row[3];
+                backdropPaths[i] = (String) row[4];
+                posterPaths[i] = (String) row[5];
+                hidden[i] = (Boolean) row[6];
+                directors[i] = (String) row[7];
+                foldedDirectors[i] = LikePattern.fold(directors[i]);
+                foldedOverviews[i] = row[8] == null ? null : LikePattern.fold((String) row[8]);
+                rowById.put(ids[i], i);
+            }
+
+            int[] rowIds = new int[size];
+            Arrays.setAll(rowIds, i -> i);
+            this.titleIndex = TrigramIndex.build(rowIds, foldedTitles);
+            this.directorIndex = TrigramIndex.build(rowIds, foldedDirectors);
+            // Rows are loaded in id order, so the index's row order breaks
+            // score ties by id.
+            this.textIndex = Bm25Index.build(
+                new String[][] { foldedTitles, foldedDirectors, foldedOverviews },
+                new double[] { TITLE_BOOST, DIRECTOR_BOOST, OVERVIEW_BOOST }
+            );
+
+            this.foldedGenreNames = genreNames.stream().map(LikePattern::fold).toArray(String[]::new);
+            this.genreWords = Math.max(1, (genreNames.size() + 63) >>> 6);
+            this.genres = new long[size * genreWords];
+
+            Comparator<Integer> byId = Comparator.comparingInt(row -> ids[row]);
+            Comparator<Integer> byTitle = (a, b) -> LikePattern.compare(foldedTitles[a], foldedTitles[b]);
+            Comparator<Integer> byRating = Comparator.comparingDouble(row -> ratings[row]);
+            Comparator<Integer> byYear = Comparator.comparingInt(row -> years[row]);
+
+            // The id tie-breaker is always ascending, whatever the direction.
+            this.titleAsc = sort(byTitle.thenComparing(byId));
+            this.titleDesc = sort(byTitle.reversed().thenComparing(byId));
+            this.ratingAsc = sort(byRating.thenComparing(byId));
+            this.ratingDesc = sort(byRating.reversed().thenComparing(byId));
+            this.yearAsc = sort(byYear.thenComparing(byId));
+            this.yearDesc = sort(byYear.reversed().thenComparing(byId));
+        }
+
+        private int[] sort(Comparator<Integer> comparator)
+        {
+            Integer[] rows = new Integer[size];
+            for (int i = 0; i < size; i++)
+            {
+                rows[i] = i;
+            }
+            Arrays.sort(rows, comparator);
+            return Arrays.stream(rows).mapToInt(Integer::intValue).toArray();
+        }
+
+        private int[] order(String orderBy, boolean descending)
+        {
+            switch (orderBy)
+            {
+                case "rating":
+                    return descending ? ratingDesc : ratingAsc;
+                case "year":
+                    return descending ? yearDesc : yearAsc;
+                default:
+                    return descending ? titleDesc : titleAsc;
+            }
+        }
+
+        /**
+         * Rows matching any word of {@code q}, most relevant first.
+         */
+        private int[] relevance(String q)
+        {
+            return textIndex.search(LikePattern.fold(q));
+        }
+
+        /**
+         * Candidate rows for {@code pattern}, or {@code null} when the
+         * index cannot narrow the search.
+         */
+        private BitSet rows(TrigramIndex index, LikePattern pattern)
+        {
+            int[] candidates = index.candidates(pattern);
+            if (candidates == null)
+            {
+                return null;
+            }
+            BitSet rows = new BitSet(size);
+            for (int row : candidates)
+            {
+                rows.set(row);
+            }
+            return rows;
+        }
+
+        /**
+         * Index in {@code order} of the first row sorting after
+         * {@code cursor}. Every order is sorted by its column and then by
+         * id ascending, so a binary search over that key finds it.
+         */
+        private int after(int[] order, String orderBy, SearchCursor cursor)
+        {
+            if (cursor.getValue() == null)
+            {
+                throw new ResultError(MoviesResults.INVALID_PAGE);
+            }
+
+            String titleKey = null;
+            double ratingKey = 0;
+            int yearKey = 0;
+            try {
+                switch (orderBy)
+                {
+                    case "rating":
+                        ratingKey = Double.parseDouble(cursor.getValue());
+                        break;
+                    case "year":
+                        yearKey = Integer.parseInt(cursor.getValue());
+                        break;
+                    default:
+                        titleKey = LikePattern.fold(cursor.getValue());
+                }
+            } catch (NumberFormatException e) {
+                throw new ResultError(MoviesResults.INVALID_PAGE);
+            }
+
+            boolean descending = order == titleDesc || order == ratingDesc || order == yearDesc;
+
+            int low = 0, high = order.length;
+            while (low < high)
+            {
+                int mid = (low + high) >>> 1;
+                int row = order[mid];
+
+                int cmp;
+                switch (orderBy)
+                {
+                    case "rating":
+                        cmp = Double.compare(ratings[row], ratingKey);
+                        break;
+                    case "year":
+                        cmp = Integer.compare(years[row], yearKey);
+                        break;
+                    default:
+                        cmp = LikePattern.compare(foldedTitles[row], titleKey);
+                }
+                if (descending)
+                {
+                    cmp = -cmp;
+                }
+                if (cmp == 0)
+                {
+                    cmp = Long.compare(ids[row], cursor.getId());
+                }
+
+                if (cmp <= 0)
+                {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private long[] genreMask(LikePattern pattern)
+        {
+            long[] mask = new long[genreWords];
+            for (int bit = 0; bit < foldedGenreNames.length; bit++)
+            {
+                if (pattern.matches(foldedGenreNames[bit]))
+                {
+                    mask[bit >>> 6] |= 1L << bit;
+                }
+            }
+            return mask;
+        }
+
+        private boolean hasGenre(int row, long[] mask)
+        {
+            for (int w = 0; w < genreWords; w++)
+            {
+                if ((genres[row * genreWords + w] & mask[w]) != 0)
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private Movie toMovie(int row)
+        {
+            Movie movie = new Movie();
+            movie.setId((long) ids[row]);
+            movie.setTitle(titles[row]);
+            movie.setYear(years[row]);
+            movie.setDirector(directors[row]);
+            movie.setRating(ratings[row]);
+            movie.setBackdropPath(backdropPaths[row]);
+            movie.setPosterPath(posterPaths[row]);
+            movie.setHidden(hidden[row]);
+            return movie;
+        }
+    }
+}
@@ -0,0 +1,445 @@
+package com.github.klefstad_teaching.cs122b.movies.repo.catalog;
+
+import com.github.klefstad_teaching.cs122b.movies.util.LikePattern;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Compressed prefix trie over folded text, answering "the best K entries
+ * with a word starting with this prefix". Every word start of an entry's
+ * text is a key, so {@code "matr"} completes {@code "The Matrix"}.
+ * <p>
+ * Keys are kept sorted and each node covers a contiguous run of them; edge
+ * labels are read from the keys themselves rather than copied. Nodes over
+ * more than {@link #SCAN_LIMIT} keys hold their top entries precomputed,
+ * smaller ones are ranked by scanning their run, so a lookup costs the
+ * prefix length plus at most a few hundred comparisons.
+ */
+public final class PrefixTrie
+{
+    private static final int[] NONE = new int[0];
+
+    private static final int SCAN_LIMIT = 256;
+
+    private static final IntPredicate SHOW_ALL = entry -> false;
+
+    private final int[]     ids;
+    private final String[]  texts;
+    private final double[]  scores;
+    private final boolean[] hidden;
+
+    // Keys in text order: the entry and the offset of the word it starts at.
+    private final int[] keyEntry;
+    private final int[] keyOffset;
+
+    // Node 0 is the root. A node's label is [labelStart, labelEnd) of any of
+    // its keys and its keys are [rangeLo, rangeHi).
+    private final int[]   labelStart;
+    private final int[]   labelEnd;
+    private final int[]   rangeLo;
+    private final int[]   rangeHi;
+    private final int[]   firstChild;
+    private final int[]   nextSibling;
+    private final int[][] topAll;
+    private final int[][] topVisible;
+
+    private final int          topK;
+    private final IntPredicate builtHidden;
+    private int nodes;
+
+    private PrefixTrie(int[] ids, String[] texts, double[] scores, boolean[] hidden, int topK)
+    {
+        this.ids = ids;
+        this.texts = texts;
+        this.scores = scores;
+        this.hidden = hidden;
+        this.topK = topK;
+        this.builtHidden = entry -> hidden[entry];
+
+        int[][] keys = keys(texts);
+        this.keyEntry = keys[0];
+        this.keyOffset = keys[1];
+
+        int capacity = 2 * keyEntry.length + 1;
+        this.labelStart = new int[capacity];
+        this.labelEnd = new int[capacity];
+        this.rangeLo = new int[capacity];
+        this.rangeHi = new int[capacity];
+        this.firstChild = new int[capacity];
+        this.nextSibling = new int[capacity];
+        this.topAll = new int[capacity][];
+        this.topVisible = new int[capacity][];
+        Arrays.fill(firstChild, -1);
+        Arrays.fill(nextSibling, -1);
+
+        build(0, keyEntry.length, 0);
+    }
+
+    /**
+     * @param ids    entry ids
+     * @param texts  the text of each entry, already passed through
+     *               {@link LikePattern#fold(String)}
+     * @param scores what entries are ranked by, highest first; {@code NaN}
+     *               ranks last. Ties go to the lower id.
+     * @param hidden entries left out unless hidden ones are asked for
+     * @param topK   the most completions a lookup can return, at least 1
+     */
+    public static PrefixTrie build(int[] ids, String[] texts, double[] scores, boolean[] hidden, int topK)
+    {
+        if (topK < 1)
+        {
+            throw new IllegalArgumentException("topK must be at least 1, was " + topK);
+        }
+        return new PrefixTrie(ids, texts, scores, hidden, topK);
+    }
+
+    /**
+     * Positions of the best entries, at most {@code limit} of them, with a
+     * word starting with {@code prefix}; empty when none has one.
+     *
+     * @param prefix already passed through {@link LikePattern#fold(String)}
+     */
+    public int[] complete(String prefix, int limit, boolean showHidden)
+    {
+        int node = find(prefix);
+        if (node < 0)
+        {
+            return NONE;
+        }
+
+        int[] top = showHidden ? topAll[node] : topVisible[node];
+        if (top == null)
+        {
+            return rank(rangeLo[node], rangeHi[node], Math.min(limit, topK), showHidden ? SHOW_ALL : builtHidden);
+        }
+        return Arrays.copyOf(top, Math.min(limit, top.length));
+    }
+
+    /**
+     * Like {@link #complete(String, int, boolean)} without hidden
+     * entries, but with each entry's hidden flag given by {@code isHidden}
+     * rather than the one it was built with. Precomputed nodes only know
+     * the entries that were among their best when built, so a prefix
+     * whose best entries were mostly hidden since may return fewer than
+     * {@code limit}.
+     */
+    public int[] complete(String prefix, int limit, IntPredicate isHidden)
+    {
+        int node = find(prefix);
+        if (node < 0)
+        {
+            return NONE;
+        }
+
+        int max = Math.min(limit, topK);
+        if (topAll[node] == null)
+        {
+            return rank(rangeLo[node], rangeHi[node], max, isHidden);
+        }
+        if (max <= 0)
+        {
+            return NONE;
+        }
+
+        int[] best = new int[max];
+        int count = 0;
+        for (int entry : topVisible[node])
+        {
+            count = offer(best, count, entry, isHidden);
+        }
+        for (int entry : topAll[node])
+        {
+            count = offer(best, count, entry, isHidden);
+        }
+        return count == max ? best : Arrays.copyOf(best, count);
+    }
+
+    public int id(int entry)
+    {
+        return ids[entry];
+    }
+
+    /**
+     * The hidden flag {@code entry} was built with.
+     */
+    public boolean hidden(int entry)
+    {
+        return hidden[entry];
+    }
+
+    public int size()
+    {
+        return ids.length;
+    }
+
+    private int find(String prefix)
+    {
+        int node = 0;
+        while (true)
+        {
+            int key = rangeLo[node];
+            for (int depth = labelStart[node]; depth < labelEnd[node]; depth++)
+            {
+                if (depth == prefix.length())
+                {
+                    return node;
+                }
+                if (charAt(key, depth) != prefix.charAt(depth))
+                {
+                    return -1;
+                }
+            }
+            if (labelEnd[node] == prefix.length())
+            {
+                return node;
+            }
+
+            char next = prefix.charAt(labelEnd[node]);
+            int child = firstChild[node];
+            while (child >= 0 && charAt(rangeLo[child], labelStart[child]) != next)
+            {
+                child = nextSibling[child];
+            }
+            if (child < 0)
+            {
+                return -1;
+            }
+            node = child;
+        }
+    }
+
+    private int build(int lo, int hi, int start)
+    {
+        int node = nodes++;
+        int end = start;
+        if (hi > lo)
+        {
+            int limit = Math.min(length(lo), length(hi - 1));
+            while (end < limit && charAt(lo, end) == charAt(hi - 1, end))
+            {
+                end++;
+            }
+        }
+        labelStart[node] = start;
+        labelEnd[node] = end;
+        rangeLo[node] = lo;
+        rangeHi[node] = hi;
+
+        // Keys ending at this node sort first; the rest split on their next
+        // character.
+        int i = lo;
+        while (i < hi && length(i) == end)
+        {
+            i++;
+        }
+        int previous = -1;
+        while (i < hi)
+        {
+            char c = charAt(i, end);
+            int j = i + 1;
+            while (j < hi && charAt(j, end) == c)
+            {
+                j++;
+            }
+            int child = build(i, j, end);
+            if (previous < 0)
+            {
+                firstChild[node] = child;
+            }
+            else
+            {
+                nextSibling[previous] = child;
+            }
+            previous = child;
+            i = j;
+        }
+
+        if (hi - lo > SCAN_LIMIT)
+        {
+            topAll[node] = merge(node, true);
+            topVisible[node] = merge(node, false);
+        }
+        return node;
+    }
+
+    /**
+     * The best entries of a node from its own keys and its children's best,
+     * which holds every entry that can make its top {@code topK}.
+     */
+    private int[] merge(int node, boolean showHidden)
+    {
+        IntPredicate excluded = showHidden ? SHOW_ALL : builtHidden;
+        int[] best = new int[topK];
+        int count = 0;
+
+        int child = firstChild[node];
+        int terminalEnd = child < 0 ? rangeHi[node] : rangeLo[child];
+        for (int key = rangeLo[node]; key < terminalEnd; key++)
+        {
+            count = offer(best, count, keyEntry[key], excluded);
+        }
+        for (; child >= 0; child = nextSibling[child])
+        {
+            int[] top = showHidden ? topAll[child] : topVisible[child];
+            if (top == null)
+            {
+                for (int key = rangeLo[child]; key < rangeHi[child]; key++)
+                {
+                    count = offer(best, count, keyEntry[key], excluded);
+                }
+            }
+            else
+            {
+                for (int entry : top)
+                {
+                    count = offer(best, count, entry, excluded);
+                }
+            }
+        }
+        return count == best.length ? best : Arrays.copyOf(best, count);
+    }
+
+    /**
+     * The best {@code limit} distinct entries among keys {@code [lo, hi)}.
+     */
+    private int[] rank(int lo, int hi, int limit, IntPredicate excluded)
+    {
+        if (limit <= 0)
+        {
+            return NONE;
+        }
+
+        int[] best = new int[limit];
+        int count = 0;
+        for (int key = lo; key < hi; key++)
+        {
+            count = offer(best, count, keyEntry[key], excluded);
+        }
+        return count == limit ? best : Arrays.copyOf(best, count);
+    }
+
+    /**
+     * Inserts {@code entry} into {@code best}, the first {@code count} of
+     * which are sorted best first, unless it is excluded, already there or
+     * not good enough. Returns the new count.
+     */
+    private int offer(int[] best, int count, int entry, IntPredicate excluded)
+    {
+        if (excluded.test(entry) || contains(best, count, entry))
+        {
+            return count;
+        }
+        if (count == best.length && !better(entry, best[count - 1]))
+        {
+            return count;
+        }
+
+        int at = count < best.length ? count++ : count - 1;
+        while (at > 0 && better(entry, best[at - 1]))
+        {
+            best[at] = best[at - 1];
+            at--;
+        }
+        best[at] = entry;
+        return count;
+    }
+
+    private boolean better(int a, int b)
+    {
+        double sa = scores[a];
+        double sb = scores[b];
+        if (Double.isNaN(sa) != Double.isNaN(sb))
+        {
+            return Double.isNaN(sb);
+        }
+        int byScore = Double.isNaN(sa) ? 0 : Double.compare(sb, sa);
+        return byScore != 0 ? byScore < 0 : ids[a] < ids[b];
+    }
+
+    private static boolean contains(int[] entries, int count, int entry)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            if (entries[i] == entry)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private char charAt(int key, int depth)
+    {
+        return texts[keyEntry[key]].charAt(keyOffset[key] + depth);
+    }
+
+    private int length(int key)
+    {
+        return texts[keyEntry[key]].length() - keyOffset[key];
+    }
+
+    /**
+     * One key per word start of each text, sorted by the text from there on.
+     */
+    private static int[][] keys(String[] texts)
+    {
+        int count = 0;
+        for (String text : texts)
+        {
+            for (int i = 0; i < text.length(); i++)
+            {
+                count += isWordStart(text, i) ? 1 : 0;
+            }
+        }
+
+        Integer[] order = new Integer[count];
+        int[] entries = new int[count];
+        int[] offsets = new int[count];
+        int at = 0;
+        for (int entry = 0; entry < texts.length; entry++)
+        {
+            String text = texts[entry];
+            for (int i = 0; i < text.length(); i++)
+            {
+                if (isWordStart(text, i))
+                {
+                    order[at] = at;
+                    entries[at] = entry;
+                    offsets[at] = i;
+                    at++;
+                }
+            }
+        }
+
+        Arrays.sort(order, (a, b) -> compare(texts[entries[a]], offsets[a], texts[entries[b]], offsets[b]));
+
+        int[] keyEntry = new int[count];
+        int[] keyOffset = new int[count];
+        for (int i = 0; i < count; i++)
+        {
+            keyEntry[i] = entries[order[i]];
+            keyOffset[i] = offsets[order[i]];
+        }
+        return new int[][] { keyEntry, keyOffset };
+    }
+
+    private static boolean isWordStart(String text, int i)
+    {
+        return Character.isLetterOrDigit(text.charAt(i)) && (i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1)));
+    }
+
+    private static int compare(String a, int offsetA, String b, int offsetB)
+    {
+        int length = Math.min(a.length() - offsetA, b.length() - offsetB);
+        for (int i = 0; i < length; i++)
+        {
+            int c = a.charAt(offsetA + i) - b.charAt(offsetB + i);
+            if (c != 0)
+            {
+                return c;
+            }
+        }
+        return (a.length() - offsetA) - (b.length() - offsetB);
+    }
+}
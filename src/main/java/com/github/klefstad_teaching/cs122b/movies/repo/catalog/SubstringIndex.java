@@ -0,0 +1,238 @@
+package com.github.klefstad_teaching.cs122b.movies.repo.catalog;
+
+import com.github.klefstad_teaching.cs122b.movies.config.MoviesServiceConfig;
+import com.github.klefstad_teaching.cs122b.movies.repo.Bulkheads;
+import com.github.klefstad_teaching.cs122b.movies.repo.ReplicaRoutingDataSource;
+import com.github.klefstad_teaching.cs122b.movies.util.LikePattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Trigram indexes over {@code movie.title} and {@code person.name}, used by
+ * {@link com.github.klefstad_teaching.cs122b.movies.repo.MovieRepo} to turn
+ * leading-wildcard {@code LIKE} scans into primary key lookups.
+ * <p>
+ * Built on first use and rebuilt in the background every
+ * {@link MoviesServiceConfig.SubstringIndex#getRebuildMillis()}. Movies and
+ * persons refreshed in between are candidates for every term until the
+ * next rebuild, so a renamed row is never ruled out by its old text. Rows
+ * written without a refresh are only seen by the next rebuild, so an index
+ * older than {@link MoviesServiceConfig.SubstringIndex#getMaxStalenessMillis()}
+ * gives no candidates at all and the caller falls back to the plain scan.
+ */
+@Component
+public class SubstringIndex
+{
+    private static final Logger LOG = LoggerFactory.getLogger(SubstringIndex.class);
+
+    private static final String MOVIE_TITLE_SQL =
+        "SELECT m.id, m.title FROM movies.movie m ORDER BY m.id";
+
+    private static final String PERSON_NAME_SQL =
+        "SELECT p.id, p.name FROM movies.person p ORDER BY p.id";
+
+    private final NamedParameterJdbcTemplate template;
+    private final Bulkheads bulkheads;
+    private final long rebuildMillis;
+    private final long maxStalenessMillis;
+
+    private ScheduledExecutorService rebuilder;
+
+    private volatile TrigramIndex movieTitles;
+    private volatile TrigramIndex personNames;
+
+    // When the rows behind each index were read
+    private volatile long movieTitlesRead;
+    private volatile long personNamesRead;
+
+    // Ids refreshed since the last build, with the sequence they were
+    // refreshed at; a rebuild only forgets the ones it has read.
+    private final AtomicLong         sequence       = new AtomicLong();
+    private final Map<Integer, Long> changedMovies  = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> changedPersons = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SubstringIndex(NamedParameterJdbcTemplate template, MoviesServiceConfig config, Bulkheads bulkheads)
+    {
+        this.template = template;
+        this.bulkheads = bulkheads;
+        this.rebuildMillis = config.getSubstringIndex().getRebuildMillis();
+        this.maxStalenessMillis = config.getSubstringIndex().getMaxStalenessMillis();
+    }
+
+    @PostConstruct
+    public void scheduleRebuild()
+    {
+        if (rebuildMillis <= 0)
+        {
+            return;
+        }
+
+        this.rebuilder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "substring-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.rebuilder.scheduleWithFixedDelay(this::rebuild, rebuildMillis, rebuildMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        if (rebuilder != null)
+        {
+            rebuilder.shutdownNow();
+        }
+    }
+
+    /**
+     * Ids of the movies whose title may match {@code LIKE '%term%'}, or
+     * {@code null} when the term is too short for the index to help or the
+     * index is too old to trust.
+     */
+    public int[] movieTitleCandidates(String term)
+    {
+        TrigramIndex index = this.movieTitles;
+        if (index == null)
+        {
+            synchronized (this)
+            {
+                if (this.movieTitles == null)
+                {
+                    this.movieTitlesRead = System.currentTimeMillis();
+                    this.movieTitles = bulkheads.load(() -> ReplicaRoutingDataSource.onPrimary(() -> load(MOVIE_TITLE_SQL)));
+                }
+                index = this.movieTitles;
+            }
+        }
+        if (stale(movieTitlesRead))
+        {
+            return null;
+        }
+        return withChanged(index.candidates(LikePattern.contains(term)), changedMovies);
+    }
+
+    /**
+     * Ids of the persons whose name may match {@code LIKE '%term%'}, or
+     * {@code null} when the term is too short for the index to help or the
+     * index is too old to trust.
+     */
+    public int[] personNameCandidates(String term)
+    {
+        TrigramIndex index = this.personNames;
+        if (index == null)
+        {
+            synchronized (this)
+            {
+                if (this.personNames == null)
+                {
+                    this.personNamesRead = System.currentTimeMillis();
+                    this.personNames = bulkheads.load(() -> ReplicaRoutingDataSource.onPrimary(() -> load(PERSON_NAME_SQL)));
+                }
+                index = this.personNames;
+            }
+        }
+        if (stale(personNamesRead))
+        {
+            return null;
+        }
+        return withChanged(index.candidates(LikePattern.contains(term)), changedPersons);
+    }
+
+    /**
+     * Marks a movie's title as changed since the index was built.
+     */
+    public void refreshMovie(long movieId)
+    {
+        changedMovies.put((int) movieId, sequence.incrementAndGet());
+    }
+
+    /**
+     * Marks a person's name as changed since the index was built.
+     */
+    public void refreshPerson(long personId)
+    {
+        changedPersons.put((int) personId, sequence.incrementAndGet());
+    }
+
+    /**
+     * Reloads both indexes from the database. A failed rebuild is logged and
+     * the current indexes are kept.
+     */
+    public void rebuild()
+    {
+        long started = sequence.get();
+        long read = System.currentTimeMillis();
+        try {
+            TrigramIndex titles = bulkheads.load(() -> load(MOVIE_TITLE_SQL));
+            TrigramIndex names = bulkheads.load(() -> load(PERSON_NAME_SQL));
+            synchronized (this)
+            {
+                this.movieTitles = titles;
+                this.movieTitlesRead = read;
+                this.personNames = names;
+                this.personNamesRead = read;
+            }
+            changedMovies.entrySet().removeIf(changed -> changed.getValue() <= started);
+            changedPersons.entrySet().removeIf(changed -> changed.getValue() <= started);
+        } catch (RuntimeException e) {
+            LOG.warn("Substring index rebuild failed, keeping the current indexes", e);
+        }
+    }
+
+    /**
+     * Drops both indexes; they are rebuilt on next use.
+     */
+    public synchronized void reload()
+    {
+        this.movieTitles = null;
+        this.personNames = null;
+    }
+
+    private boolean stale(long read)
+    {
+        return maxStalenessMillis > 0 && System.currentTimeMillis() - read > maxStalenessMillis;
+    }
+
+    private static int[] withChanged(int[] candidates, Map<Integer, Long> changed)
+    {
+        if (candidates == null || changed.isEmpty())
+        {
+            return candidates;
+        }
+        return IntStream.concat(Arrays.stream(candidates), changed.keySet().stream().mapToInt(Integer::intValue))
+                        .sorted()
+                        .distinct()
+                        .toArray();
+    }
+
+    private TrigramIndex load(String sql)
+    {
+        List<Integer> ids = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        template.getJdbcTemplate().query(sql, rs -> {
+            ids.add(rs.getInt(1));
+            texts.add(LikePattern.fold(rs.getString(2)));
+        });
+        return TrigramIndex.build(
+            ids.stream().mapToInt(Integer::intValue).toArray(),
+            texts.toArray(new String[0])
+        );
+    }
+}
@@ -0,0 +1,316 @@
+package com.github.klefstad_teaching.cs122b.movies.repo.catalog;
+
+import com.github.klefstad_teaching.cs122b.movies.config.MoviesServiceConfig;
+import com.github.klefstad_teaching.cs122b.movies.repo.Bulkheads;
+import com.github.klefstad_teaching.cs122b.movies.repo.entity.Suggestion;
+import com.github.klefstad_teaching.cs122b.movies.util.LikePattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntPredicate;
+
+/**
+ * Typeahead over {@code movie.title} and {@code person.name}: a
+ * {@link PrefixTrie} for each, movies ranked by {@code rating} and persons
+ * by {@code popularity}. Built on first use and rebuilt in the background
+ * every {@link MoviesServiceConfig.Suggest#getRebuildMillis()} and soon after
+ * a movie or person is refreshed; lookups keep using the previous tries
+ * while a rebuild runs. A refreshed movie's {@code hidden} flag is re-read
+ * at once, as in {@link MovieCatalog}, so a movie an admin hides stops
+ * being suggested to everyone else before the rebuild lands.
+ */
+@Component
+public class SuggestIndex
+{
+    private static final Logger LOG = LoggerFactory.getLogger(SuggestIndex.class);
+
+    private static final String MOVIE_SQL =
+        "SELECT m.id, m.title, m.year, m.rating, m.hidden FROM movies.movie m";
+
+    private static final String PERSON_SQL =
+        "SELECT p.id, p.name, p.popularity FROM movies.person p";
+
+    private static final String HIDDEN_BY_ID_SQL =
+        "SELECT m.hidden FROM movies.movie m WHERE m.id = :movieId";
+
+    private final NamedParameterJdbcTemplate template;
+    private final Bulkheads bulkheads;
+    private final int  maxResults;
+    private final long rebuildMillis;
+
+    private ScheduledExecutorService rebuilder;
+    private final AtomicBoolean      rebuildPending = new AtomicBoolean();
+
+    private volatile Tries tries;
+
+    // Hidden flags re-read since the tries were built, by movie id; a
+    // rebuild only forgets the ones it has read.
+    private final AtomicLong                 sequence      = new AtomicLong();
+    private final Map<Integer, HiddenChange> hiddenChanges = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SuggestIndex(NamedParameterJdbcTemplate template, MoviesServiceConfig config, Bulkheads bulkheads)
+    {
+        this.template = template;
+        this.bulkheads = bulkheads;
+        this.maxResults = config.getSuggest().getMaxResults();
+        this.rebuildMillis = config.getSuggest().getRebuildMillis();
+    }
+
+    @PostConstruct
+    public void scheduleRebuild()
+    {
+        this.rebuilder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "suggest-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (rebuildMillis > 0)
+        {
+            this.rebuilder.scheduleWithFixedDelay(this::rebuild, rebuildMillis, rebuildMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        if (rebuilder != null)
+        {
+            rebuilder.shutdownNow();
+        }
+    }
+
+    /**
+     * The highest rated movies, at most {@code limit}, with a title word
+     * starting with {@code prefix}.
+     */
+    public Suggestion[] movies(String prefix, int limit, boolean showHidden)
+    {
+        Completions movies = tries().movies;
+        if (showHidden || hiddenChanges.isEmpty())
+        {
+            return movies.complete(prefix, limit, showHidden);
+        }
+        return movies.complete(prefix, limit, entry -> {
+            HiddenChange change = hiddenChanges.get(movies.trie.id(entry));
+            return change == null ? movies.trie.hidden(entry) : change.hidden;
+        });
+    }
+
+    /**
+     * The most popular persons, at most {@code limit}, with a name word
+     * starting with {@code prefix}.
+     */
+    public Suggestion[] persons(String prefix, int limit)
+    {
+        return tries().persons.complete(prefix, limit, true);
+    }
+
+    /**
+     * Re-reads a movie's {@code hidden} flag and queues a rebuild for the
+     * rest of its changes. A movie that no longer exists counts as hidden
+     * until the rebuild drops it.
+     */
+    public void refreshMovie(long movieId)
+    {
+        if (this.tries != null)
+        {
+            MapSqlParameterSource source = new MapSqlParameterSource().addValue("movieId", movieId, Types.INTEGER);
+            List<Boolean> hidden = template.queryForList(HIDDEN_BY_ID_SQL, source, Boolean.class);
+            hiddenChanges.put((int) movieId, new HiddenChange(hidden.isEmpty() || hidden.get(0), sequence.incrementAndGet()));
+        }
+        requestRebuild();
+    }
+
+    /**
+     * Queues a rebuild after a person's name or popularity changed.
+     */
+    public void refreshPerson(long personId)
+    {
+        requestRebuild();
+    }
+
+    /**
+     * Reloads both tries from the database. A failed rebuild is logged and
+     * the current tries are kept.
+     */
+    public void rebuild()
+    {
+        long started = sequence.get();
+        try {
+            Tries rebuilt = bulkheads.load(this::load);
+            this.tries = rebuilt;
+            hiddenChanges.values().removeIf(change -> change.sequence <= started);
+            LOG.info("Rebuilt suggest tries over {} movies and {} persons", rebuilt.movies.trie.size(), rebuilt.persons.trie.size());
+        } catch (RuntimeException e) {
+            LOG.warn("Suggest rebuild failed, keeping the current tries", e);
+        }
+    }
+
+    /**
+     * Runs one rebuild on the background thread; requests made while one is
+     * queued share it, and requests made while it runs queue another.
+     */
+    private void requestRebuild()
+    {
+        if (rebuilder == null || this.tries == null || !rebuildPending.compareAndSet(false, true))
+        {
+            return;
+        }
+        rebuilder.execute(() -> {
+            rebuildPending.set(false);
+            rebuild();
+        });
+    }
+
+    private Tries tries()
+    {
+        Tries current = this.tries;
+        if (current == null)
+        {
+            synchronized (this)
+            {
+                current = this.tries;
+                if (current == null)
+                {
+                    current = bulkheads.load(this::load);
+                    this.tries = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private Tries load()
+    {
+        Entries movies = new Entries();
+        template.getJdbcTemplate().query(MOVIE_SQL, rs -> {
+            movies.add(rs.getInt(1), rs.getString(2), rs.getInt(3), rs.getObject(4) == null ? null : rs.getDouble(4), rs.getBoolean(5));
+        });
+
+        Entries persons = new Entries();
+        template.getJdbcTemplate().query(PERSON_SQL, rs -> {
+            persons.add(rs.getInt(1), rs.getString(2), null, rs.getObject(3) == null ? null : rs.getDouble(3), false);
+        });
+
+        return new Tries(movies.build(maxResults), persons.build(maxResults));
+    }
+
+    private static final class HiddenChange
+    {
+        private final boolean hidden;
+        private final long    sequence;
+
+        private HiddenChange(boolean hidden, long sequence)
+        {
+            this.hidden = hidden;
+            this.sequence = sequence;
+        }
+    }
+
+    private static final class Tries
+    {
+        private final Completions movies;
+        private final Completions persons;
+
+        private Tries(Completions movies, Completions persons)
+        {
+            this.movies = movies;
+            this.persons = persons;
+        }
+    }
+
+    private static final class Entries
+    {
+        private final List<Integer> ids    = new ArrayList<>();
+        private final List<String>  texts  = new ArrayList<>();
+        private final List<Integer> years  = new ArrayList<>();
+        private final List<Double>  scores = new ArrayList<>();
+        private final List<Boolean> hidden = new ArrayList<>();
+
+        private void add(int id, String text, Integer year, Double score, boolean isHidden)
+        {
+            ids.add(id);
+            texts.add(text);
+            years.add(year);
+            scores.add(score == null ? Double.NaN : score);
+            hidden.add(isHidden);
+        }
+
+        private Completions build(int topK)
+        {
+            int size = ids.size();
+            int[] idArray = new int[size];
+            String[] folded = new String[size];
+            double[] scoreArray = new double[size];
+            boolean[] hiddenArray = new boolean[size];
+            for (int i = 0; i < size; i++)
+            {
+                idArray[i] = ids.get(i);
+                folded[i] = LikePattern.fold(texts.get(i));
+                scoreArray[i] = scores.get(i);
+                hiddenArray[i] = hidden.get(i);
+            }
+
+            return new Completions(
+                PrefixTrie.build(idArray, folded, scoreArray, hiddenArray, topK),
+                texts.toArray(new String[0]),
+                years.toArray(new Integer[0])
+            );
+        }
+    }
+
+    private static final class Completions
+    {
+        private final PrefixTrie trie;
+        private final String[]   texts;
+        private final Integer[]  years;
+
+        private Completions(PrefixTrie trie, String[] texts, Integer[] years)
+        {
+            this.trie = trie;
+            this.texts = texts;
+            this.years = years;
+        }
+
+        private Suggestion[] complete(String prefix, int limit, boolean showHidden)
+        {
+            return suggestions(trie.complete(LikePattern.fold(prefix.strip()), limit, showHidden));
+        }
+
+        private Suggestion[] complete(String prefix, int limit, IntPredicate isHidden)
+        {
+            return suggestions(trie.complete(LikePattern.fold(prefix.strip()), limit, isHidden));
+        }
+
+        private Suggestion[] suggestions(int[] entries)
+        {
+            Suggestion[] suggestions = new Suggestion[entries.length];
+            for (int i = 0; i < entries.length; i++)
+            {
+                Suggestion suggestion = new Suggestion();
+                suggestion.setId((long) trie.id(entries[i]));
+                suggestion.setText(texts[entries[i]]);
+                suggestion.setYear(years[entries[i]]);
+                suggestions[i] = suggestion;
+            }
+            return suggestions;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.github.klefstad_teaching.cs122b.movies.repo.catalog;
+
+import com.github.klefstad_teaching.cs122b.movies.util.LikePattern;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Trigram posting lists over folded text. {@link #candidates(LikePattern)}
+ * only narrows a {@code LIKE '%term%'} search down to the ids that could
+ * match; callers still apply the pattern itself to get exact semantics.
+ * Texts whose fold is not {@link LikePattern#isExact(String) exact} are
+ * candidates for every pattern, since the collation may match them where
+ * their trigrams do not.
+ */
+public final class TrigramIndex
+{
+    private final Map<Long, int[]> postings;
+    private final int[]            inexact;
+
+    private TrigramIndex(Map<Long, int[]> postings, int[] inexact)
+    {
+        this.postings = postings;
+        this.inexact = inexact;
+    }
+
+    /**
+     * @param ids    document ids, in ascending order
+     * @param folded the text of each document, already passed through
+     *               {@link LikePattern#fold(String)}
+     */
+    public static TrigramIndex build(int[] ids, String[] folded)
+    {
+        Map<Long, Integer> counts = new HashMap<>();
+        for (String text : folded)
+        {
+            for (long trigram : trigrams(text))
+            {
+                counts.merge(trigram, 1, Integer::sum);
+            }
+        }
+
+        Map<Long, int[]> postings = new HashMap<>(counts.size() * 2);
+        Map<Long, Integer> filled = new HashMap<>(counts.size() * 2);
+        counts.forEach((trigram, count) -> postings.put(trigram, new int[count]));
+
+        for (int i = 0; i < ids.length; i++)
+        {
+            for (long trigram : trigrams(folded[i]))
+            {
+                int at = filled.merge(trigram, 1, Integer::sum) - 1;
+                postings.get(trigram)[at] = ids[i];
+            }
+        }
+
+        int[] inexact = new int[ids.length];
+        int count = 0;
+        for (int i = 0; i < ids.length; i++)
+        {
+            if (folded[i] != null && !LikePattern.isExact(folded[i]))
+            {
+                inexact[count++] = ids[i];
+            }
+        }
+
+        return new TrigramIndex(postings, Arrays.copyOf(inexact, count));
+    }
+
+    /**
+     * Returns the sorted ids whose text contains every trigram of the
+     * pattern's literal fragments, plus the inexact ones, or {@code null}
+     * when the pattern is too short to narrow anything down or is itself
+     * not exact.
+     */
+    public int[] candidates(LikePattern pattern)
+    {
+        List<int[]> lists = new ArrayList<>();
+        for (String fragment : pattern.fragments())
+        {
+            if (!LikePattern.isExact(fragment))
+            {
+                return null;
+            }
+            for (long trigram : trigrams(fragment))
+            {
+                int[] list = postings.get(trigram);
+                if (list == null)
+                {
+                    return inexact.clone();
+                }
+                lists.add(list);
+            }
+        }
+
+        if (lists.isEmpty())
+        {
+            return null;
+        }
+
+        lists.sort(Comparator.comparingInt(list -> list.length));
+        int[] result = lists.get(0);
+        for (int i = 1; i < lists.size() && result.length > 0; i++)
+        {
+            result = intersect(result, lists.get(i));
+        }
+        return inexact.length == 0 ? result : union(result, inexact);
+    }
+
+    private static int[] intersect(int[] a, int[] b)
+    {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length)
+        {
+            if (a[i] < b[j])
+            {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    private static int[] union(int[] a, int[] b)
+    {
+        int[] out = new int[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length || j < b.length)
+        {
+            if (j == b.length || (i < a.length && a[i] < b[j]))
+            {
+                out[n++] = a[i++];
+            } else if (i == a.length || a[i] > b[j]) {
+                out[n++] = b[j++];
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    private static Set<Long> trigrams(String text)
+    {
+        if (text == null || text.length() < 3)
+        {
+            return Set.of();
+        }
+        Set<Long> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= text.length(); i++)
+        {
+            trigrams.add(((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2));
+        }
+        return trigrams;
+    }
+}
@@ -5,6 +5,7 @@ public class MovieByPersonIdQuery {
     private Integer page;
     private String orderBy;
     private String direction;
+    private String cursor;
 
     public Integer getLimit() {
         return limit;
@@ -37,4 +38,12 @@ public class MovieByPersonIdQuery {
     public void setDirection(String direction) {
         this.direction = direction;
     }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
 }
@@ -9,6 +9,8 @@ public class MovieQuery {
     private Integer page;
     private String orderBy;
     private String direction;
+    private String cursor;
+    private String q;
 
     public String getTitle() {
         return title;
@@ -73,4 +75,20 @@ public class MovieQuery {
     public void setDirection(String direction) {
         this.direction = direction;
     }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public String getQ() {
+        return q;
+    }
+
+    public void setQ(String q) {
+        this.q = q;
+    }
 }
@@ -8,6 +8,8 @@ public class PersonQuery {
     private Integer page;
     private String orderBy;
     private String direction;
+    private String cursor;
+    private Boolean fuzzy;
 
     public String getName() {
         return name;
@@ -64,4 +66,20 @@ public class PersonQuery {
     public void setDirection(String direction) {
         this.direction = direction;
     }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public Boolean getFuzzy() {
+        return fuzzy;
+    }
+
+    public void setFuzzy(Boolean fuzzy) {
+        this.fuzzy = fuzzy;
+    }
 }
@@ -0,0 +1,63 @@
+package com.github.klefstad_teaching.cs122b.movies.rest;
+
+import com.github.klefstad_teaching.cs122b.movies.model.response.CacheStatsResponse;
+import com.github.klefstad_teaching.cs122b.movies.repo.DetailCache;
+import com.github.klefstad_teaching.cs122b.movies.repo.TotalCountCache;
+import com.github.klefstad_teaching.cs122b.movies.security.CallerRoles;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+public class CacheController
+{
+    private final DetailCache     detailCache;
+    private final TotalCountCache totalCountCache;
+
+    @Autowired
+    public CacheController(DetailCache detailCache, TotalCountCache totalCountCache)
+    {
+        this.detailCache = detailCache;
+        this.totalCountCache = totalCountCache;
+    }
+
+    @GetMapping("/cache/stats")
+    public ResponseEntity<CacheStatsResponse> cacheStats(CallerRoles roles) {
+        if (!roles.isAdmin())
+        {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        CacheStatsResponse response = new CacheStatsResponse();
+        response.setMovies(detailCache.movieStats());
+        response.setPersons(detailCache.personStats());
+        response.setTotals(totalCountCache.stats());
+        return ResponseEntity.status(HttpStatus.OK).body(response);
+    }
+
+    @DeleteMapping("/cache/movie/{movieId}")
+    public ResponseEntity<Void> invalidateMovie(@PathVariable Long movieId, CallerRoles roles) {
+        if (!roles.isAdmin())
+        {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        detailCache.invalidateMovie(movieId);
+        return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
+    }
+
+    @DeleteMapping("/cache/person/{personId}")
+    public ResponseEntity<Void> invalidatePerson(@PathVariable Long personId, CallerRoles roles) {
+        if (!roles.isAdmin())
+        {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        detailCache.invalidatePerson(personId);
+        return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
+    }
+}
@@ -2,92 +2,83 @@ package com.github.klefstad_teaching.cs122b.movies.rest;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.github.klefstad_teaching.cs122b.core.error.ResultError;
-import com.github.klefstad_teaching.cs122b.core.security.JWTManager;
+import com.github.klefstad_teaching.cs122b.movies.config.MoviesServiceConfig;
+import com.github.klefstad_teaching.cs122b.movies.model.response.MovieBatchResponse;
 import com.github.klefstad_teaching.cs122b.movies.model.response.MovieGetByMovieIdResponse;
 import com.github.klefstad_teaching.cs122b.movies.model.response.MovieSearchResponse;
 import com.github.klefstad_teaching.cs122b.movies.model.response.PersonSearchResponse;
+import com.github.klefstad_teaching.cs122b.movies.repo.DetailCache;
 import com.github.klefstad_teaching.cs122b.movies.repo.MovieRepo;
+import com.github.klefstad_teaching.cs122b.movies.repo.TotalCountCache;
 import com.github.klefstad_teaching.cs122b.movies.repo.entity.*;
+import com.github.klefstad_teaching.cs122b.movies.security.CallerRoles;
 import com.github.klefstad_teaching.cs122b.movies.util.Validate;
-import com.nimbusds.jwt.SignedJWT;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import com.github.klefstad_teaching.cs122b.core.result.MoviesResults;
-import java.text.ParseException;
-import java.util.Arrays;
+
 import java.util.List;
 
 @RestController
 public class MovieController
 {
     private final MovieRepo repo;
+    private final DetailCache detailCache;
+    private final TotalCountCache totalCountCache;
     private final Validate validate;
+    private final MoviesServiceConfig config;
 
     @Autowired
-    public MovieController(MovieRepo repo, Validate validate)
+    public MovieController(MovieRepo repo, DetailCache detailCache, TotalCountCache totalCountCache, Validate validate, MoviesServiceConfig config)
     {
         this.repo = repo;
+        this.detailCache = detailCache;
+        this.totalCountCache = totalCountCache;
         this.validate = validate;
+        this.config = config;
     }
 
     @GetMapping("/movie/search")
-    public ResponseEntity<MovieSearchResponse> movieSearch(@AuthenticationPrincipal SignedJWT user, MovieQuery movieQuery) throws JsonProcessingException, ParseException {
-        List<String> roles = user.getJWTClaimsSet().getStringListClaim(JWTManager.CLAIM_ROLES);
-        System.out.println(Arrays.toString(roles.toArray()));
-        boolean showHidden = false;
-        if (roles.contains("ADMIN") || roles.contains("EMPLOYEE"))
-        {
-            showHidden = true;
-        }
+    public ResponseEntity<MovieSearchResponse> movieSearch(CallerRoles roles, MovieQuery movieQuery) throws JsonProcessingException {
+        boolean showHidden = roles.showHidden();
 
         Movie[] movies = repo.searchMovies(movieQuery, showHidden);
         MovieSearchResponse response = new MovieSearchResponse();
         response.setMovies(movies);
+        if (movieQuery.getQ() == null) {
+            response.setCursor(repo.nextMovieCursor(movies, movieQuery.getOrderBy(), movieQuery.getDirection(), movieQuery.getLimit()));
+        }
+        response.setTotal(totalCountCache.countMovies(movieQuery, showHidden));
         response.setResult(MoviesResults.MOVIES_FOUND_WITHIN_SEARCH);
         return ResponseEntity.status(HttpStatus.OK).body(response);
     }
 
     @GetMapping("/movie/search/person/{personId}")
-    public ResponseEntity<MovieSearchResponse> movieSearchByPersonId(@PathVariable Long personId, @AuthenticationPrincipal SignedJWT user, MovieByPersonIdQuery movieByPersonIdQuery) throws ParseException, JsonProcessingException {
-        List<String> roles = user.getJWTClaimsSet().getStringListClaim(JWTManager.CLAIM_ROLES);
-        System.out.println(Arrays.toString(roles.toArray()));
-        boolean showHidden = false;
-        if (roles.contains("ADMIN") || roles.contains("EMPLOYEE"))
-        {
-            showHidden = true;
-        }
+    public ResponseEntity<MovieSearchResponse> movieSearchByPersonId(@PathVariable Long personId, CallerRoles roles, MovieByPersonIdQuery movieByPersonIdQuery) throws JsonProcessingException {
+        boolean showHidden = roles.showHidden();
         Movie[] movies = repo.searchMoviesByPersonId(personId, movieByPersonIdQuery, showHidden);
         MovieSearchResponse response = new MovieSearchResponse();
         response.setMovies(movies);
+        response.setCursor(repo.nextMovieCursor(movies, movieByPersonIdQuery.getOrderBy(), movieByPersonIdQuery.getDirection(), movieByPersonIdQuery.getLimit()));
+        response.setTotal(totalCountCache.countMoviesByPersonId(personId, showHidden));
         response.setResult(MoviesResults.MOVIES_WITH_PERSON_ID_FOUND);
         return ResponseEntity.status(HttpStatus.OK).body(response);
 
     }
 
     @GetMapping("/movie/{movieId}")
-    public ResponseEntity<MovieGetByMovieIdResponse> movieGetByMovieId(@PathVariable Long movieId, @AuthenticationPrincipal SignedJWT user) throws ParseException, JsonProcessingException {
-        List<String> roles = user.getJWTClaimsSet().getStringListClaim(JWTManager.CLAIM_ROLES);
-        System.out.println(Arrays.toString(roles.toArray()));
-        boolean showHidden = false;
-        if (roles.contains("ADMIN") || roles.contains("EMPLOYEE"))
-        {
-            showHidden = true;
-        }
-        MovieGetByMovieIdResponse response = new MovieGetByMovieIdResponse();
+    public ResponseEntity<MovieGetByMovieIdResponse> movieGetByMovieId(@PathVariable Long movieId, CallerRoles roles) throws JsonProcessingException {
+        boolean showHidden = roles.showHidden();
+        MovieGetByMovieIdResponse response;
 
         try {
-            Movie movie = repo.getMovieDetail(movieId, showHidden);
-            Genre[] genres = repo.getMovieGenres(movieId);
-            Person[] persons = repo.getMoviePersons(movieId);
-            response.setMovie(movie);
-            response.setGenres(genres);
-            response.setPersons(persons);
+            response = detailCache.getMovieDetails(movieId, showHidden);
         } catch (EmptyResultDataAccessException e) {
             throw new ResultError(MoviesResults.NO_MOVIE_WITH_ID_FOUND);
         }
@@ -97,6 +88,22 @@ public class MovieController
         return ResponseEntity.status(HttpStatus.OK).body(response);
     }
 
+    @GetMapping("/movie/batch")
+    public ResponseEntity<MovieBatchResponse> movieGetBatch(@RequestParam List<Long> movieIds, CallerRoles roles) throws JsonProcessingException {
+        boolean showHidden = roles.showHidden();
+        List<Long> ids = validate.movieIds(movieIds, config.getBatchMaxIds());
+
+        List<MovieGetByMovieIdResponse> movies = detailCache.getMovieDetails(ids, showHidden);
+        if (movies.isEmpty()) {
+            throw new ResultError(MoviesResults.NO_MOVIE_WITH_ID_FOUND);
+        }
+
+        MovieBatchResponse response = new MovieBatchResponse();
+        response.setMovies(movies.toArray(new MovieGetByMovieIdResponse[0]));
+        response.setResult(MoviesResults.MOVIE_WITH_ID_FOUND);
+        return ResponseEntity.status(HttpStatus.OK).body(response);
+    }
+
 
 
 
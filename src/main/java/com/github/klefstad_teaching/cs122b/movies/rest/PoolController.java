@@ -0,0 +1,69 @@
+package com.github.klefstad_teaching.cs122b.movies.rest;
+
+import com.github.klefstad_teaching.cs122b.movies.model.response.PoolStatsResponse;
+import com.github.klefstad_teaching.cs122b.movies.repo.LimitedDataSource;
+import com.github.klefstad_teaching.cs122b.movies.security.CallerRoles;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+@RestController
+public class PoolController
+{
+    private final DataSource    dataSource;
+    private final MeterRegistry registry;
+
+    @Autowired
+    public PoolController(DataSource dataSource, MeterRegistry registry)
+    {
+        this.dataSource = dataSource;
+        this.registry = registry;
+    }
+
+    @GetMapping("/pool/stats")
+    public ResponseEntity<PoolStatsResponse> poolStats(CallerRoles roles) throws SQLException {
+        if (!roles.isAdmin())
+        {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        HikariDataSource hikari = dataSource.unwrap(HikariDataSource.class);
+        HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+
+        PoolStatsResponse response = new PoolStatsResponse();
+        response.setMaxSize(hikari.getMaximumPoolSize());
+        if (pool != null)
+        {
+            response.setActive(pool.getActiveConnections());
+            response.setIdle(pool.getIdleConnections());
+            response.setPending(pool.getThreadsAwaitingConnection());
+            response.setTotal(pool.getTotalConnections());
+        }
+
+        Timer acquire = registry.find("hikaricp.connections.acquire").timer();
+        if (acquire != null)
+        {
+            response.setAcquireMeanMillis(acquire.mean(TimeUnit.MILLISECONDS));
+            response.setAcquireMaxMillis(acquire.max(TimeUnit.MILLISECONDS));
+        }
+
+        if (dataSource instanceof LimitedDataSource)
+        {
+            LimitedDataSource limited = (LimitedDataSource) dataSource;
+            response.setJdbcPermitsAvailable(limited.getAvailablePermits());
+            response.setJdbcPermitsWaiting(limited.getWaiting());
+        }
+
+        return ResponseEntity.status(HttpStatus.OK).body(response);
+    }
+}
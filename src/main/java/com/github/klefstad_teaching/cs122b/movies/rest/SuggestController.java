@@ -0,0 +1,62 @@
+package com.github.klefstad_teaching.cs122b.movies.rest;
+
+import com.github.klefstad_teaching.cs122b.core.error.ResultError;
+import com.github.klefstad_teaching.cs122b.core.result.MoviesResults;
+import com.github.klefstad_teaching.cs122b.movies.config.MoviesServiceConfig;
+import com.github.klefstad_teaching.cs122b.movies.model.response.SuggestResponse;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.SuggestIndex;
+import com.github.klefstad_teaching.cs122b.movies.repo.entity.Suggestion;
+import com.github.klefstad_teaching.cs122b.movies.security.CallerRoles;
+import com.github.klefstad_teaching.cs122b.movies.util.Validate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+public class SuggestController
+{
+    private final SuggestIndex suggestIndex;
+    private final Validate validate;
+    private final MoviesServiceConfig config;
+
+    @Autowired
+    public SuggestController(SuggestIndex suggestIndex, Validate validate, MoviesServiceConfig config)
+    {
+        this.suggestIndex = suggestIndex;
+        this.validate = validate;
+        this.config = config;
+    }
+
+    @GetMapping("/movie/suggest")
+    public ResponseEntity<SuggestResponse> movieSuggest(@RequestParam String prefix, @RequestParam(required = false) Integer limit, CallerRoles roles) {
+        int max = validate.suggestLimit(limit, config.getSuggest().getMaxResults());
+
+        Suggestion[] movies = prefix.isBlank() ? new Suggestion[0] : suggestIndex.movies(prefix, max, roles.showHidden());
+        if (movies.length == 0) {
+            throw new ResultError(MoviesResults.NO_MOVIES_FOUND_WITHIN_SEARCH);
+        }
+
+        SuggestResponse response = new SuggestResponse();
+        response.setSuggestions(movies);
+        response.setResult(MoviesResults.MOVIES_FOUND_WITHIN_SEARCH);
+        return ResponseEntity.status(HttpStatus.OK).body(response);
+    }
+
+    @GetMapping("/person/suggest")
+    public ResponseEntity<SuggestResponse> personSuggest(@RequestParam String prefix, @RequestParam(required = false) Integer limit) {
+        int max = validate.suggestLimit(limit, config.getSuggest().getMaxResults());
+
+        Suggestion[] persons = prefix.isBlank() ? new Suggestion[0] : suggestIndex.persons(prefix, max);
+        if (persons.length == 0) {
+            throw new ResultError(MoviesResults.NO_PERSONS_FOUND_WITHIN_SEARCH);
+        }
+
+        SuggestResponse response = new SuggestResponse();
+        response.setSuggestions(persons);
+        response.setResult(MoviesResults.PERSONS_FOUND_WITHIN_SEARCH);
+        return ResponseEntity.status(HttpStatus.OK).body(response);
+    }
+}
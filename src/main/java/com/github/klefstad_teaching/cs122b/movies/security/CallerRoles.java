@@ -0,0 +1,58 @@
+package com.github.klefstad_teaching.cs122b.movies.security;
+
+import com.github.klefstad_teaching.cs122b.core.security.JWTManager;
+import com.nimbusds.jwt.SignedJWT;
+
+import java.text.ParseException;
+import java.util.List;
+
+/**
+ * What the caller's roles allow, resolved once per token by
+ * {@link CallerRolesResolver} and injected into handler methods.
+ */
+public final class CallerRoles
+{
+    public static final CallerRoles NONE       = new CallerRoles(false, false);
+    public static final CallerRoles PRIVILEGED = new CallerRoles(true, false);
+    public static final CallerRoles ADMIN      = new CallerRoles(true, true);
+
+    private final boolean showHidden;
+    private final boolean admin;
+
+    private CallerRoles(boolean showHidden, boolean admin)
+    {
+        this.showHidden = showHidden;
+        this.admin = admin;
+    }
+
+    public static CallerRoles fromClaims(SignedJWT user) throws ParseException
+    {
+        List<String> roles = user.getJWTClaimsSet().getStringListClaim(JWTManager.CLAIM_ROLES);
+        if (roles == null)
+        {
+            return NONE;
+        }
+        if (roles.contains("ADMIN"))
+        {
+            return ADMIN;
+        }
+        if (roles.contains("EMPLOYEE"))
+        {
+            return PRIVILEGED;
+        }
+        return NONE;
+    }
+
+    /**
+     * ADMIN and EMPLOYEE callers can see hidden movies.
+     */
+    public boolean showHidden()
+    {
+        return showHidden;
+    }
+
+    public boolean isAdmin()
+    {
+        return admin;
+    }
+}
@@ -0,0 +1,69 @@
+package com.github.klefstad_teaching.cs122b.movies.security;
+
+import com.github.klefstad_teaching.cs122b.movies.config.MoviesServiceConfig;
+import com.github.klefstad_teaching.cs122b.movies.util.BoundedCache;
+import com.nimbusds.jwt.SignedJWT;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.MethodParameter;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+/**
+ * Resolves {@link CallerRoles} handler arguments from the authenticated
+ * {@link SignedJWT}. Claims are parsed once per token: the result is
+ * memoized in a bounded cache keyed by the token's signature and kept on
+ * the request for any further lookups.
+ */
+@Component
+public class CallerRolesResolver implements HandlerMethodArgumentResolver
+{
+    private static final String ATTRIBUTE = CallerRoles.class.getName();
+
+    private final BoundedCache<String, CallerRoles> roles;
+
+    @Autowired
+    public CallerRolesResolver(MoviesServiceConfig config)
+    {
+        this.roles = new BoundedCache<>(config.getRoleCacheSize());
+    }
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter)
+    {
+        return parameter.getParameterType() == CallerRoles.class;
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+                                  NativeWebRequest webRequest, WebDataBinderFactory binderFactory)
+        throws Exception
+    {
+        Object memo = webRequest.getAttribute(ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (memo != null)
+        {
+            return memo;
+        }
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        CallerRoles resolved = CallerRoles.NONE;
+        if (authentication != null && authentication.getPrincipal() instanceof SignedJWT)
+        {
+            SignedJWT user = (SignedJWT) authentication.getPrincipal();
+            resolved = roles.get(user.getSignature().toString(), () -> CallerRoles.fromClaims(user));
+        }
+
+        webRequest.setAttribute(ATTRIBUTE, resolved, RequestAttributes.SCOPE_REQUEST);
+        return resolved;
+    }
+
+    public BoundedCache.Stats stats()
+    {
+        return roles.stats();
+    }
+}
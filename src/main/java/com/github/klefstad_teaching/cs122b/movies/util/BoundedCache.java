@@ -0,0 +1,271 @@
+package com.github.klefstad_teaching.cs122b.movies.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Size-bounded LRU cache with hit, miss and eviction counters. Values are
+ * loaded outside the lock, so two callers missing on the same key at once
+ * may both load it; the last one wins. A value whose key is invalidated
+ * while it loads is returned to its caller but not cached, so a load that
+ * raced an invalidation never brings the old value back. With a time to
+ * live, an entry older than that counts as a miss and is dropped when next
+ * read.
+ */
+public class BoundedCache<K, V>
+{
+    @FunctionalInterface
+    public interface Loader<V, E extends Exception>
+    {
+        V load() throws E;
+    }
+
+    private final int  maxSize;
+    private final long ttlNanos;
+
+    private final Map<K, Entry<V>> entries;
+
+    // Guarded by entries. Every invalidation takes the next generation;
+    // a load may only be cached if its key was not invalidated after the
+    // generation it started at. Keys invalidated longest ago are forgotten
+    // past maxSize by raising the floor, which only refuses more loads.
+    private final Map<K, Long> invalidated;
+    private long generation;
+    private long floor;
+
+    private final AtomicLong hits      = new AtomicLong();
+    private final AtomicLong misses    = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public BoundedCache(int maxSize)
+    {
+        this(maxSize, 0);
+    }
+
+    /**
+     * @param ttlMillis how long an entry stays valid after it is put;
+     *                  {@code 0} keeps it until evicted or invalidated
+     */
+    public BoundedCache(int maxSize, long ttlMillis)
+    {
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest)
+            {
+                if (size() > BoundedCache.this.maxSize)
+                {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.invalidated = new LinkedHashMap<K, Long>(16, 0.75f, false)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Long> eldest)
+            {
+                if (size() > Math.max(BoundedCache.this.maxSize, 1))
+                {
+                    floor = Math.max(floor, eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value for {@code key}, loading and caching it on a
+     * miss. A cache with a max size of zero always loads.
+     */
+    public <E extends Exception> V get(K key, Loader<V, E> loader) throws E
+    {
+        V value = getIfPresent(key);
+        if (value != null)
+        {
+            return value;
+        }
+
+        long started = generation();
+        value = loader.load();
+        put(key, value, started);
+        return value;
+    }
+
+    /**
+     * The current invalidation generation; read it before loading a value
+     * outside {@link #get} and pass it to {@link #put(Object, Object, long)}.
+     */
+    public long generation()
+    {
+        synchronized (entries)
+        {
+            return generation;
+        }
+    }
+
+    /**
+     * Returns the cached value for {@code key}, or {@code null} on a miss.
+     * Counts towards the hit and miss totals like {@link #get}.
+     */
+    public V getIfPresent(K key)
+    {
+        V value = null;
+        if (maxSize > 0)
+        {
+            synchronized (entries)
+            {
+                Entry<V> entry = entries.get(key);
+                if (entry != null && ttlNanos > 0 && System.nanoTime() - entry.putAt > ttlNanos)
+                {
+                    entries.remove(key);
+                }
+                else if (entry != null)
+                {
+                    value = entry.value;
+                }
+            }
+        }
+
+        (value != null ? hits : misses).incrementAndGet();
+        return value;
+    }
+
+    /**
+     * Caches {@code value} unless {@code key} was invalidated after
+     * {@code started}, a {@link #generation()} read before the value was
+     * loaded.
+     */
+    public void put(K key, V value, long started)
+    {
+        if (maxSize > 0 && value != null)
+        {
+            synchronized (entries)
+            {
+                Long invalidatedAt = invalidated.get(key);
+                if (floor > started || (invalidatedAt != null && invalidatedAt > started))
+                {
+                    return;
+                }
+                entries.put(key, new Entry<>(value, ttlNanos > 0 ? System.nanoTime() : 0));
+            }
+        }
+    }
+
+    public void put(K key, V value)
+    {
+        if (maxSize > 0 && value != null)
+        {
+            synchronized (entries)
+            {
+                entries.put(key, new Entry<>(value, ttlNanos > 0 ? System.nanoTime() : 0));
+            }
+        }
+    }
+
+    public void invalidate(K key)
+    {
+        synchronized (entries)
+        {
+            entries.remove(key);
+            invalidated.remove(key);
+            invalidated.put(key, ++generation);
+        }
+    }
+
+    /**
+     * Drops the entries matching {@code predicate}. Loads in flight for
+     * any key are not cached, since keys not yet cached cannot be tested.
+     */
+    public void invalidateIf(Predicate<K> predicate)
+    {
+        synchronized (entries)
+        {
+            entries.keySet().removeIf(predicate);
+            floor = ++generation;
+            invalidated.clear();
+        }
+    }
+
+    public void clear()
+    {
+        synchronized (entries)
+        {
+            entries.clear();
+            floor = ++generation;
+            invalidated.clear();
+        }
+    }
+
+    public Stats stats()
+    {
+        int size;
+        synchronized (entries)
+        {
+            size = entries.size();
+        }
+        return new Stats(size, maxSize, hits.get(), misses.get(), evictions.get());
+    }
+
+    private static final class Entry<V>
+    {
+        private final V    value;
+        private final long putAt;
+
+        private Entry(V value, long putAt)
+        {
+            this.value = value;
+            this.putAt = putAt;
+        }
+    }
+
+    public static class Stats
+    {
+        private final int  size;
+        private final int  maxSize;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+
+        private Stats(int size, int maxSize, long hits, long misses, long evictions)
+        {
+            this.size = size;
+            this.maxSize = maxSize;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        public int getSize()
+        {
+            return size;
+        }
+
+        public int getMaxSize()
+        {
+            return maxSize;
+        }
+
+        public long getHits()
+        {
+            return hits;
+        }
+
+        public long getMisses()
+        {
+            return misses;
+        }
+
+        public long getEvictions()
+        {
+            return evictions;
+        }
+    }
+}
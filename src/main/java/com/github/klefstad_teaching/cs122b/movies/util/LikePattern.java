@@ -0,0 +1,220 @@
+package com.github.klefstad_teaching.cs122b.movies.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory equivalent of {@code column LIKE '%term%'} under the schema's
+ * default accent and case insensitive collation. The term keeps its SQL
+ * meaning: {@code %} and {@code _} are wildcards and {@code \} escapes them.
+ * {@link #compare(String, String)} is the matching {@code ORDER BY}.
+ */
+public final class LikePattern
+{
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    // What folded text sorts by under the collation, lowest first: white
+    // space, punctuation (typographic dashes and quotes next to their
+    // ASCII forms), symbols, currency, digits, letters. Nothing here is
+    // ignorable; the collation weighs punctuation like any character.
+    private static final String SORT_ORDER =
+        "\t\n\u000b\f\r " +
+        "_-\u2010\u2011\u2012\u2013\u2014\u2015,;:!?.'\u2018\u2019\u201a\u201b\"\u201c\u201d\u201e\u201f\u00ab\u00bb()[]{}" +
+        "@*/\\&#%`^+<=>|~$" +
+        "0123456789abcdefghijklmnopqrstuvwxyz";
+
+    private static final int[] SORT_WEIGHTS = new int[0x2020];
+
+    static
+    {
+        for (int i = 0; i < SORT_ORDER.length(); i++)
+        {
+            SORT_WEIGHTS[SORT_ORDER.charAt(i)] = i + 1;
+        }
+    }
+
+    private final String literal;
+    private final Pattern regex;
+    private final List<String> fragments;
+
+    private LikePattern(String literal, Pattern regex, List<String> fragments)
+    {
+        this.literal = literal;
+        this.regex = regex;
+        this.fragments = Collections.unmodifiableList(fragments);
+    }
+
+    /**
+     * Builds the pattern for {@code LIKE '%term%'}.
+     */
+    public static LikePattern contains(String term)
+    {
+        String folded = fold(term);
+
+        if (folded.indexOf('%') < 0 && folded.indexOf('_') < 0 && folded.indexOf('\\') < 0)
+        {
+            return new LikePattern(folded, null, List.of(folded));
+        }
+
+        List<String> fragments = new ArrayList<>();
+        StringBuilder regex = new StringBuilder(".*");
+        StringBuilder chunk = new StringBuilder();
+        for (int i = 0; i < folded.length(); i++)
+        {
+            char c = folded.charAt(i);
+            if (c == '\\' && i + 1 < folded.length())
+            {
+                chunk.append(folded.charAt(++i));
+                continue;
+            }
+            if (c == '%' || c == '_')
+            {
+                regex.append(Pattern.quote(chunk.toString())).append(c == '%' ? ".*" : ".");
+                fragments.add(chunk.toString());
+                chunk.setLength(0);
+                continue;
+            }
+            chunk.append(c);
+        }
+        regex.append(Pattern.quote(chunk.toString())).append(".*");
+        fragments.add(chunk.toString());
+
+        return new LikePattern(null, Pattern.compile(regex.toString(), Pattern.DOTALL), fragments);
+    }
+
+    /**
+     * Lower cases and strips accents so that comparisons behave like the
+     * {@code _ai_ci} collation used by the {@code movies} schema. Width and
+     * compatibility forms are unified, the letters the collation expands
+     * (sharp s, the ae and oe ligatures) are spelled out and stroked letters
+     * lose their stroke; anything else outside ASCII is kept as is, see
+     * {@link #isExact(String)}.
+     */
+    public static String fold(String value)
+    {
+        if (value == null)
+        {
+            return null;
+        }
+        String decomposed = Normalizer.normalize(value, Normalizer.Form.NFKD);
+        String folded = COMBINING_MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+        if (isExact(folded))
+        {
+            return folded;
+        }
+
+        StringBuilder expanded = new StringBuilder(folded.length() + 4);
+        for (int i = 0; i < folded.length(); i++)
+        {
+            char c = folded.charAt(i);
+            switch (c)
+            {
+                case '\u00df': expanded.append("ss"); break; // sharp s
+                case '\u00e6': expanded.append("ae"); break; // ae ligature
+                case '\u0153': expanded.append("oe"); break; // oe ligature
+                case '\u00f8': expanded.append('o'); break;  // o with stroke
+                case '\u0111': expanded.append('d'); break;  // d with stroke
+                case '\u0142': expanded.append('l'); break;  // l with stroke
+                default: expanded.append(c);
+            }
+        }
+        return expanded.toString();
+    }
+
+    /**
+     * Whether {@code folded} compares under {@link #fold(String)} exactly as
+     * the collation compares the original. True for plain ASCII; beyond it
+     * the collation equates characters fold keeps apart, so in-memory
+     * indexes must not rule such a value out.
+     *
+     * @param folded a value already passed through {@link #fold(String)}
+     */
+    public static boolean isExact(String folded)
+    {
+        for (int i = 0; i < folded.length(); i++)
+        {
+            if (folded.charAt(i) >= 0x80)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Orders two folded values the way {@code ORDER BY} does under the
+     * collation: character by character on the weights above, a value
+     * sorting before every longer value it starts (the collation does not
+     * pad), equal when they fold alike. Control characters are skipped;
+     * anything else outside the table sorts after the letters in code
+     * point order, which is the collation's order within most scripts but
+     * not across them.
+     *
+     * @param a a value already passed through {@link #fold(String)}
+     * @param b a value already passed through {@link #fold(String)}
+     */
+    public static int compare(String a, String b)
+    {
+        int i = 0, j = 0;
+        while (true)
+        {
+            while (i < a.length() && weight(a.charAt(i)) == 0) i++;
+            while (j < b.length() && weight(b.charAt(j)) == 0) j++;
+            if (i == a.length() || j == b.length())
+            {
+                return Boolean.compare(i < a.length(), j < b.length());
+            }
+            int cmp = Integer.compare(weight(a.charAt(i++)), weight(b.charAt(j++)));
+            if (cmp != 0)
+            {
+                return cmp;
+            }
+        }
+    }
+
+    private static int weight(char c)
+    {
+        if (c < SORT_WEIGHTS.length && SORT_WEIGHTS[c] != 0)
+        {
+            return SORT_WEIGHTS[c];
+        }
+        return c < 0x20 || c == 0x7f ? 0 : SORT_ORDER.length() + c;
+    }
+
+    /**
+     * The literal substring every match must contain, or {@code null} when
+     * the term uses wildcards.
+     */
+    public String literal()
+    {
+        return literal;
+    }
+
+    /**
+     * The literal runs between wildcards; every match contains all of them.
+     */
+    public List<String> fragments()
+    {
+        return fragments;
+    }
+
+    /**
+     * @param folded a value already passed through {@link #fold(String)}
+     */
+    public boolean matches(String folded)
+    {
+        if (folded == null)
+        {
+            return false;
+        }
+        if (literal != null)
+        {
+            return folded.contains(literal);
+        }
+        return regex.matcher(folded).matches();
+    }
+}
@@ -1,8 +1,108 @@
 package com.github.klefstad_teaching.cs122b.movies.util;
 
+import com.github.klefstad_teaching.cs122b.core.error.ResultError;
+import com.github.klefstad_teaching.cs122b.core.result.MoviesResults;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 @Component
 public class Validate
 {
+    public static final Set<String> MOVIE_ORDER_BY  = Set.of("title", "rating", "year");
+    public static final Set<String> PERSON_ORDER_BY = Set.of("name", "popularity", "birthday");
+
+    private static final Set<Integer> LIMITS = Set.of(10, 25, 50, 100);
+
+    private static final int DEFAULT_LIMIT = 10;
+
+    /**
+     * Returns the column to order by, falling back to {@code defaultOrderBy}
+     * when none was given.
+     */
+    public String orderBy(String orderBy, String defaultOrderBy, Set<String> allowed)
+    {
+        if (orderBy == null)
+        {
+            return defaultOrderBy;
+        }
+        if (!allowed.contains(orderBy))
+        {
+            throw new ResultError(MoviesResults.INVALID_ORDER_BY);
+        }
+        return orderBy;
+    }
+
+    public boolean isDescending(String direction)
+    {
+        if (direction == null || direction.equalsIgnoreCase("asc"))
+        {
+            return false;
+        }
+        if (direction.equalsIgnoreCase("desc"))
+        {
+            return true;
+        }
+        throw new ResultError(MoviesResults.INVALID_DIRECTION);
+    }
+
+    public int limit(Integer limit)
+    {
+        if (limit == null)
+        {
+            return DEFAULT_LIMIT;
+        }
+        if (!LIMITS.contains(limit))
+        {
+            throw new ResultError(MoviesResults.INVALID_LIMIT);
+        }
+        return limit;
+    }
+
+    /**
+     * Returns the number of suggestions to return, {@code max} when none
+     * was asked for.
+     */
+    public int suggestLimit(Integer limit, int max)
+    {
+        if (limit == null)
+        {
+            return max;
+        }
+        if (limit < 1 || limit > max)
+        {
+            throw new ResultError(MoviesResults.INVALID_LIMIT);
+        }
+        return limit;
+    }
+
+    public int offset(Integer page, int limit)
+    {
+        if (page == null)
+        {
+            return 0;
+        }
+        if (page < 1)
+        {
+            throw new ResultError(MoviesResults.INVALID_PAGE);
+        }
+        return (page - 1) * limit;
+    }
+
+    /**
+     * Returns the distinct ids of a batch request in the order given,
+     * rejecting an empty batch or one with more than {@code max} ids.
+     */
+    public List<Long> movieIds(List<Long> movieIds, int max)
+    {
+        List<Long> distinct = new ArrayList<>(new LinkedHashSet<>(movieIds));
+        if (distinct.isEmpty() || distinct.size() > max)
+        {
+            throw new ResultError(MoviesResults.INVALID_LIMIT);
+        }
+        return distinct;
+    }
 }
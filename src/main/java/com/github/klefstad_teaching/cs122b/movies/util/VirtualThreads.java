@@ -0,0 +1,60 @@
+package com.github.klefstad_teaching.cs122b.movies.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads without requiring a JDK that has them at
+ * compile time. The service builds for Java 11; when it runs on Java 21 or
+ * later {@link #isSupported()} is true and
+ * {@link #newThreadPerTaskExecutor()} returns
+ * {@code Executors.newVirtualThreadPerTaskExecutor()}.
+ */
+public final class VirtualThreads
+{
+    private static final Method NEW_EXECUTOR = lookup();
+
+    private VirtualThreads()
+    {
+    }
+
+    public static boolean isSupported()
+    {
+        return NEW_EXECUTOR != null;
+    }
+
+    /**
+     * Returns an executor that starts a new virtual thread per task.
+     *
+     * @throws IllegalStateException when the running JDK has no virtual
+     *                               threads
+     */
+    public static ExecutorService newThreadPerTaskExecutor()
+    {
+        if (NEW_EXECUTOR == null)
+        {
+            throw new IllegalStateException("Virtual threads need Java 21 or later, running " +
+                                            System.getProperty("java.version"));
+        }
+
+        try {
+            return (ExecutorService) NEW_EXECUTOR.invoke(null);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Could not create a virtual thread executor", e);
+        }
+    }
+
+    private static Method lookup()
+    {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ((ExecutorService) method.invoke(null)).shutdown();
+            return method;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Absent before Java 21, or a preview API that is not enabled.
+            return null;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+-- Indexes for the query shapes in MovieRepo.
+--
+-- Every search orders by one column and then by id ascending, in either
+-- direction, so each sort column gets an ascending and a descending index
+-- ending in id; ORDER BY col DESC, id ASC cannot be read from a plain
+-- index backwards. Movie indexes lead with hidden, which every public
+-- search filters on with hidden = 0. Admin and employee searches, which
+-- see hidden movies, still sort.
+
+ALTER TABLE movies.movie
+    ADD INDEX idx_movie_hidden_title       (hidden, title, id),
+    ADD INDEX idx_movie_hidden_title_desc  (hidden, title DESC, id),
+    ADD INDEX idx_movie_hidden_year        (hidden, year, id),
+    ADD INDEX idx_movie_hidden_year_desc   (hidden, year DESC, id),
+    ADD INDEX idx_movie_hidden_rating      (hidden, rating, id),
+    ADD INDEX idx_movie_hidden_rating_desc (hidden, rating DESC, id),
+    ADD INDEX idx_movie_year               (year);
+
+-- popularity DESC, id also serves the cast ordering of the detail lookups.
+ALTER TABLE movies.person
+    ADD INDEX idx_person_name            (name, id),
+    ADD INDEX idx_person_name_desc       (name DESC, id),
+    ADD INDEX idx_person_popularity      (popularity, id),
+    ADD INDEX idx_person_popularity_desc (popularity DESC, id),
+    ADD INDEX idx_person_birthday        (birthday, id),
+    ADD INDEX idx_person_birthday_desc   (birthday DESC, id);
+
+-- The primary keys lead with movie_id; searches by person and by genre
+-- come in from the other side. These replace the single-column indexes
+-- MySQL created for the foreign keys.
+ALTER TABLE movies.movie_person
+    ADD INDEX idx_movie_person_person (person_id, movie_id);
+
+ALTER TABLE movies.movie_genre
+    ADD INDEX idx_movie_genre_genre (genre_id, movie_id);
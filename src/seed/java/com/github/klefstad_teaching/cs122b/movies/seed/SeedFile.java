@@ -0,0 +1,356 @@
+package com.github.klefstad_teaching.cs122b.movies.seed;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Streams the rows of one seed file without holding the file in memory.
+ *
+ * <p>A {@code .sql} file holds one or more
+ * {@code INSERT INTO table (columns) VALUES (...), (...);} statements, the
+ * format of {@code db/*.sql}. A {@code .csv} file has a header row naming
+ * the columns and loads into {@code movies.<name>}, where the name is the
+ * file name without its {@code N_} prefix; an unquoted empty field is
+ * NULL. Values are kept as text, with {@code null} for NULL, and left to
+ * MySQL to convert.
+ */
+final class SeedFile implements AutoCloseable
+{
+    private static final String DEFAULT_SCHEMA = "movies";
+
+    private final Path           path;
+    private final boolean        csv;
+    private final PushbackReader in;
+
+    private String       table;
+    private List<String> columns;
+    private boolean      inValues;
+
+    SeedFile(Path path) throws IOException
+    {
+        this.path = path;
+        this.csv = path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv");
+        this.in = new PushbackReader(Files.newBufferedReader(path, StandardCharsets.UTF_8), 2);
+
+        if (csv)
+        {
+            String name = path.getFileName().toString().replaceFirst("^\\d+_", "").replaceFirst("\\.[^.]*$", "");
+            this.table = DEFAULT_SCHEMA + "." + name;
+            this.columns = new ArrayList<>();
+            for (String column : nextCsvRecord())
+            {
+                columns.add(column.trim());
+            }
+        }
+    }
+
+    Path path()
+    {
+        return path;
+    }
+
+    /**
+     * The table the last row returned by {@link #next()} belongs to.
+     */
+    String table()
+    {
+        return table;
+    }
+
+    List<String> columns()
+    {
+        return columns;
+    }
+
+    /**
+     * The next row, or {@code null} at the end of the file.
+     */
+    String[] next() throws IOException
+    {
+        if (csv)
+        {
+            List<String> record = nextCsvRecord();
+            return record == null ? null : record.toArray(new String[0]);
+        }
+        return nextTuple();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        in.close();
+    }
+
+    // INSERT statements
+
+    private String[] nextTuple() throws IOException
+    {
+        while (true)
+        {
+            if (!inValues)
+            {
+                if (!readInsertHeader())
+                {
+                    return null;
+                }
+                inValues = true;
+            }
+
+            int c = skipWhitespace();
+            if (c == ',')
+            {
+                c = skipWhitespace();
+            }
+            if (c == '(')
+            {
+                return readTuple();
+            }
+            if (c == ';' || c == -1)
+            {
+                inValues = false;
+                if (c == -1)
+                {
+                    return null;
+                }
+                continue;
+            }
+            throw error("expected a value tuple, found '" + (char) c + "'");
+        }
+    }
+
+    /**
+     * Reads {@code INSERT INTO name (columns) VALUES}; false at the end of
+     * the file.
+     */
+    private boolean readInsertHeader() throws IOException
+    {
+        String word = readWord();
+        if (word == null)
+        {
+            return false;
+        }
+        if (!word.equalsIgnoreCase("INSERT"))
+        {
+            throw error("expected INSERT, found " + word);
+        }
+
+        word = readWord();
+        if ("INTO".equalsIgnoreCase(word))
+        {
+            word = readWord();
+        }
+        table = word.indexOf('.') < 0 ? DEFAULT_SCHEMA + "." + word : word;
+
+        if (skipWhitespace() != '(')
+        {
+            throw error("expected a column list after " + table);
+        }
+        columns = new ArrayList<>();
+        int c;
+        do {
+            columns.add(readWord());
+            c = skipWhitespace();
+        } while (c == ',');
+        if (c != ')')
+        {
+            throw error("unterminated column list");
+        }
+
+        if (!"VALUES".equalsIgnoreCase(readWord()))
+        {
+            throw error("expected VALUES");
+        }
+        return true;
+    }
+
+    private String[] readTuple() throws IOException
+    {
+        String[] row = new String[columns.size()];
+        for (int i = 0; i < row.length; i++)
+        {
+            int c = skipWhitespace();
+            if (c == '\'' || c == '"')
+            {
+                row[i] = readQuoted((char) c, true);
+            }
+            else
+            {
+                in.unread(c);
+                String literal = readWord();
+                row[i] = "NULL".equalsIgnoreCase(literal) ? null : literal;
+            }
+
+            c = skipWhitespace();
+            if (c != (i == row.length - 1 ? ')' : ','))
+            {
+                throw error("tuple does not match the " + row.length + " columns of " + table);
+            }
+        }
+        return row;
+    }
+
+    /**
+     * An identifier, keyword or unquoted literal, with backticks removed.
+     */
+    private String readWord() throws IOException
+    {
+        int c = skipWhitespace();
+        if (c == -1)
+        {
+            return null;
+        }
+
+        StringBuilder word = new StringBuilder();
+        while (c != -1 && (Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '`' || c == '-' || c == '+'))
+        {
+            if (c != '`')
+            {
+                word.append((char) c);
+            }
+            c = in.read();
+        }
+        if (c != -1)
+        {
+            in.unread(c);
+        }
+        if (word.length() == 0)
+        {
+            throw error("unexpected '" + (char) c + "'");
+        }
+        return word.toString();
+    }
+
+    /**
+     * Reads up to the closing quote. A doubled quote is a literal quote;
+     * in SQL, so is a backslash escape.
+     */
+    private String readQuoted(char quote, boolean backslashEscapes) throws IOException
+    {
+        StringBuilder value = new StringBuilder();
+        while (true)
+        {
+            int c = in.read();
+            if (c == -1)
+            {
+                throw error("unterminated string");
+            }
+            if (c == '\\' && backslashEscapes)
+            {
+                int escaped = in.read();
+                switch (escaped)
+                {
+                    case 'n': value.append('\n'); break;
+                    case 't': value.append('\t'); break;
+                    case 'r': value.append('\r'); break;
+                    case '0': value.append('\0'); break;
+                    default:  value.append((char) escaped);
+                }
+            }
+            else if (c == quote)
+            {
+                int next = in.read();
+                if (next != quote)
+                {
+                    if (next != -1)
+                    {
+                        in.unread(next);
+                    }
+                    return value.toString();
+                }
+                value.append(quote);
+            }
+            else
+            {
+                value.append((char) c);
+            }
+        }
+    }
+
+    /**
+     * Skips whitespace and {@code --} comments and returns the next
+     * character, consumed.
+     */
+    private int skipWhitespace() throws IOException
+    {
+        while (true)
+        {
+            int c = in.read();
+            if (c == '-')
+            {
+                int next = in.read();
+                if (next == '-')
+                {
+                    while (c != '\n' && c != -1)
+                    {
+                        c = in.read();
+                    }
+                    continue;
+                }
+                if (next != -1)
+                {
+                    in.unread(next);
+                }
+                return c;
+            }
+            if (c == -1 || !Character.isWhitespace(c))
+            {
+                return c;
+            }
+        }
+    }
+
+    // CSV
+
+    private List<String> nextCsvRecord() throws IOException
+    {
+        int c = in.read();
+        while (c == '\r' || c == '\n')
+        {
+            c = in.read();
+        }
+        if (c == -1)
+        {
+            return null;
+        }
+
+        List<String> record = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true)
+        {
+            if (c == '"' && field.length() == 0 && !quoted)
+            {
+                field.append(readQuoted('"', false));
+                quoted = true;
+                c = in.read();
+                continue;
+            }
+            if (c == ',' || c == '\n' || c == '\r' || c == -1)
+            {
+                record.add(field.length() == 0 && !quoted ? null : field.toString());
+                if (c != ',')
+                {
+                    return record;
+                }
+                field.setLength(0);
+                quoted = false;
+            }
+            else
+            {
+                field.append((char) c);
+            }
+            c = in.read();
+        }
+    }
+
+    private IOException error(String message)
+    {
+        return new IOException(path + ": " + message);
+    }
+}
@@ -0,0 +1,474 @@
+package com.github.klefstad_teaching.cs122b.movies.seed;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Bulk-loads the seed data in {@code db/*.sql} (or CSV files in the same
+ * layout, see {@link SeedFile}) far faster than replaying the INSERT
+ * scripts.
+ *
+ * <p>One reader thread per file parses rows into batches, and
+ * {@code --threads} writers, each with its own connection, load batches
+ * from every file at once. A batch is loaded either as one multi-row
+ * INSERT ({@code --mode batch}, the driver rewrites the JDBC batch) or
+ * through {@code LOAD DATA LOCAL INFILE} ({@code --mode infile}, needs
+ * {@code local_infile=ON} on the server). Writers run with
+ * {@code foreign_key_checks} and {@code unique_checks} off, so tables load
+ * in any order and InnoDB defers secondary index maintenance to its change
+ * buffer; the foreign keys of every loaded table are checked once at the
+ * end instead. Reports rows and rows/s per table.
+ *
+ * <pre>
+ * mvn -P seed test-compile exec:exec -Dseed.args="--truncate true --threads 8"
+ * </pre>
+ *
+ * Options: {@code --url}, {@code --user}, {@code --password} (default to
+ * {@code DB_USERNAME} and {@code DB_PASSWORD}), {@code --file}
+ * (repeatable, default every {@code db/*.sql} and {@code db/*.csv} but the
+ * schema), {@code --threads}, {@code --batch}, {@code --mode},
+ * {@code --truncate}, {@code --verify}.
+ */
+public final class SeedLoader
+{
+    private static final Batch END = new Batch(null, null, null);
+
+    private final String  url;
+    private final String  user;
+    private final String  password;
+    private final boolean infile;
+    private final int     batchSize;
+
+    private final BlockingQueue<Batch>         queue;
+    private final ConcurrentMap<String, Table> tables = new ConcurrentHashMap<>();
+
+    private volatile Exception failure;
+
+    private SeedLoader(String url, String user, String password, boolean infile, int batchSize, int threads)
+    {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.infile = infile;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(threads * 2);
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        Map<String, List<String>> options = parse(args);
+
+        boolean infile = option(options, "mode", "batch").equals("infile");
+        String url = option(options, "url", "jdbc:mysql://localhost:3306");
+        url += (url.contains("?") ? "&" : "?") + (infile ? "allowLoadLocalInfile=true" : "rewriteBatchedStatements=true");
+
+        int threads = Integer.parseInt(option(options, "threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        SeedLoader loader = new SeedLoader(
+            url,
+            option(options, "user", System.getenv("DB_USERNAME")),
+            option(options, "password", System.getenv("DB_PASSWORD")),
+            infile,
+            Integer.parseInt(option(options, "batch", "5000")),
+            threads
+        );
+
+        List<Path> files = new ArrayList<>();
+        for (String file : options.getOrDefault("file", List.of()))
+        {
+            files.add(Paths.get(file));
+        }
+        if (files.isEmpty())
+        {
+            try (Stream<Path> db = Files.list(Paths.get("db"))) {
+                files = db.filter(path -> path.toString().matches(".*\\d+_[^/\\\\]+\\.(sql|csv)$"))
+                          .sorted()
+                          .collect(Collectors.toList());
+            }
+        }
+
+        if (Boolean.parseBoolean(option(options, "truncate", "false")))
+        {
+            loader.truncate(files);
+        }
+
+        System.out.printf(Locale.ROOT, "Loading %d files with %d writers, %s mode, %d rows per batch%n",
+                          files.size(), threads, infile ? "infile" : "batch", loader.batchSize);
+
+        long start = System.nanoTime();
+        loader.load(files, threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        loader.report(seconds);
+
+        if (Boolean.parseBoolean(option(options, "verify", "true")) && loader.verify() > 0)
+        {
+            System.exit(1);
+        }
+    }
+
+    private void load(List<Path> files, int threads) throws Exception
+    {
+        ExecutorService readers = Executors.newFixedThreadPool(files.size());
+        ExecutorService writers = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> reading = new ArrayList<>();
+            for (Path file : files)
+            {
+                reading.add(readers.submit(() -> read(file)));
+            }
+
+            List<Future<?>> writing = new ArrayList<>();
+            for (int i = 0; i < threads; i++)
+            {
+                writing.add(writers.submit(() -> write()));
+            }
+
+            try {
+                for (Future<?> future : reading)
+                {
+                    future.get();
+                }
+            } finally {
+                for (int i = 0; i < threads && failure == null; i++)
+                {
+                    enqueue(END);
+                }
+            }
+            for (Future<?> future : writing)
+            {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            readers.shutdownNow();
+            writers.shutdownNow();
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } finally {
+            readers.shutdown();
+            writers.shutdown();
+        }
+    }
+
+    private Void read(Path path) throws IOException, InterruptedException
+    {
+        try (SeedFile file = new SeedFile(path)) {
+            List<String[]> rows = new ArrayList<>(batchSize);
+            String table = null;
+            List<String> columns = null;
+
+            String[] row;
+            while ((row = file.next()) != null)
+            {
+                if (table != null && !table.equals(file.table()))
+                {
+                    enqueue(new Batch(table, columns, rows));
+                    rows = new ArrayList<>(batchSize);
+                }
+                table = file.table();
+                columns = file.columns();
+
+                rows.add(row);
+                if (rows.size() == batchSize)
+                {
+                    enqueue(new Batch(table, columns, rows));
+                    rows = new ArrayList<>(batchSize);
+                }
+            }
+            if (!rows.isEmpty())
+            {
+                enqueue(new Batch(table, columns, rows));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Hands a batch to the writers, giving up once one of them has failed
+     * rather than waiting on a queue nobody drains.
+     */
+    private void enqueue(Batch batch) throws InterruptedException
+    {
+        while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS))
+        {
+            if (failure != null)
+            {
+                throw new IllegalStateException("A writer failed", failure);
+            }
+        }
+    }
+
+    private Void write() throws SQLException, IOException, InterruptedException
+    {
+        try (Connection connection = connect()) {
+            while (true)
+            {
+                Batch batch = queue.take();
+                if (batch == END)
+                {
+                    return null;
+                }
+
+                Table table = tables.computeIfAbsent(batch.table, name -> new Table());
+                long start = System.nanoTime();
+                if (infile)
+                {
+                    loadInfile(connection, batch);
+                }
+                else
+                {
+                    insert(connection, batch);
+                }
+                connection.commit();
+                table.record(batch.rows.size(), start, System.nanoTime());
+            }
+        } catch (SQLException | IOException | RuntimeException e) {
+            failure = e;
+            throw e;
+        }
+    }
+
+    private static void insert(Connection connection, Batch batch) throws SQLException
+    {
+        String sql = "INSERT INTO " + batch.table + " (" + String.join(", ", batch.columns) + ") VALUES (" +
+                     String.join(", ", Collections.nCopies(batch.columns.size(), "?")) + ")";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (String[] row : batch.rows)
+            {
+                for (int i = 0; i < row.length; i++)
+                {
+                    statement.setString(i + 1, row[i]);
+                }
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private static void loadInfile(Connection connection, Batch batch) throws SQLException, IOException
+    {
+        Path tsv = Files.createTempFile("seed-", ".tsv");
+        try {
+            try (BufferedWriter out = Files.newBufferedWriter(tsv, StandardCharsets.UTF_8)) {
+                for (String[] row : batch.rows)
+                {
+                    for (int i = 0; i < row.length; i++)
+                    {
+                        if (i > 0)
+                        {
+                            out.write('\t');
+                        }
+                        out.write(row[i] == null ? "\\N" : row[i].replace("\\", "\\\\")
+                                                                  .replace("\t", "\\t")
+                                                                  .replace("\n", "\\n"));
+                    }
+                    out.write('\n');
+                }
+            }
+
+            String sql = "LOAD DATA LOCAL INFILE '" + tsv.toAbsolutePath().toString().replace("\\", "\\\\") + "' " +
+                         "INTO TABLE " + batch.table + " CHARACTER SET utf8mb4 " +
+                         "FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n' " +
+                         "(" + String.join(", ", batch.columns) + ")";
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(sql);
+            }
+        } finally {
+            Files.deleteIfExists(tsv);
+        }
+    }
+
+    private void truncate(List<Path> files) throws IOException, SQLException
+    {
+        Set<String> targets = new LinkedHashSet<>();
+        for (Path path : files)
+        {
+            try (SeedFile file = new SeedFile(path)) {
+                file.next();
+                if (file.table() != null)
+                {
+                    targets.add(file.table());
+                }
+            }
+        }
+
+        try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+            for (String table : targets)
+            {
+                statement.execute("TRUNCATE TABLE " + table);
+                System.out.println("Truncated " + table);
+            }
+        }
+    }
+
+    /**
+     * Counts, for every foreign key of every loaded table, the rows whose
+     * key has no parent; returns the total.
+     */
+    private long verify() throws SQLException
+    {
+        String foreignKeys =
+            "SELECT k.column_name, k.referenced_table_schema, k.referenced_table_name, k.referenced_column_name " +
+            "FROM information_schema.key_column_usage k " +
+            "WHERE k.table_schema = ? AND k.table_name = ? AND k.referenced_table_name IS NOT NULL";
+
+        long orphans = 0;
+        try (Connection connection = connect(); PreparedStatement keys = connection.prepareStatement(foreignKeys)) {
+            for (String table : tables.keySet())
+            {
+                String[] name = table.split("\\.", 2);
+                keys.setString(1, name[0]);
+                keys.setString(2, name[1]);
+                try (ResultSet rs = keys.executeQuery()) {
+                    while (rs.next())
+                    {
+                        String column = rs.getString(1);
+                        String parent = rs.getString(2) + "." + rs.getString(3);
+                        String sql = "SELECT COUNT(*) FROM " + table + " c " +
+                                     "LEFT JOIN " + parent + " p ON p." + rs.getString(4) + " = c." + column + " " +
+                                     "WHERE c." + column + " IS NOT NULL AND p." + rs.getString(4) + " IS NULL";
+                        try (Statement statement = connection.createStatement();
+                             ResultSet count = statement.executeQuery(sql)) {
+                            count.next();
+                            long missing = count.getLong(1);
+                            if (missing > 0)
+                            {
+                                System.out.printf(Locale.ROOT, "%s.%s: %d rows reference a missing %s%n",
+                                                  table, column, missing, parent);
+                            }
+                            orphans += missing;
+                        }
+                    }
+                }
+            }
+        }
+
+        System.out.println(orphans == 0 ? "Foreign keys verified" : orphans + " rows fail their foreign keys");
+        return orphans;
+    }
+
+    private Connection connect() throws SQLException
+    {
+        Connection connection = DriverManager.getConnection(url, user, password);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET SESSION foreign_key_checks = 0");
+            statement.execute("SET SESSION unique_checks = 0");
+        }
+        connection.setAutoCommit(false);
+        return connection;
+    }
+
+    private void report(double seconds)
+    {
+        System.out.printf(Locale.ROOT, "%n%-24s %10s %9s %12s%n", "table", "rows", "seconds", "rows/s");
+
+        long total = 0;
+        for (Map.Entry<String, Table> entry : new TreeMap<>(tables).entrySet())
+        {
+            String name = entry.getKey();
+            Table table = entry.getValue();
+            double tableSeconds = (table.last.get() - table.first.get()) / 1e9;
+            System.out.printf(Locale.ROOT, "%-24s %10d %9.2f %12.0f%n",
+                              name, table.rows.get(), tableSeconds, table.rows.get() / tableSeconds);
+            total += table.rows.get();
+        }
+        System.out.printf(Locale.ROOT, "%-24s %10d %9.2f %12.0f%n", "TOTAL", total, seconds, total / seconds);
+    }
+
+    private static Map<String, List<String>> parse(String[] args)
+    {
+        Map<String, List<String>> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++)
+        {
+            if (!args[i].startsWith("--"))
+            {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+
+            String key = args[i].substring(2);
+            String value;
+            int eq = key.indexOf('=');
+            if (eq >= 0)
+            {
+                value = key.substring(eq + 1);
+                key = key.substring(0, eq);
+            }
+            else if (i + 1 < args.length)
+            {
+                value = args[++i];
+            }
+            else
+            {
+                throw new IllegalArgumentException("Missing value for --" + key);
+            }
+            options.computeIfAbsent(key, k -> new ArrayList<>()).add(value);
+        }
+        return options;
+    }
+
+    private static String option(Map<String, List<String>> options, String key, String fallback)
+    {
+        List<String> values = options.get(key);
+        return values == null ? fallback : values.get(values.size() - 1);
+    }
+
+    private static final class Batch
+    {
+        private final String         table;
+        private final List<String>   columns;
+        private final List<String[]> rows;
+
+        private Batch(String table, List<String> columns, List<String[]> rows)
+        {
+            this.table = table;
+            this.columns = columns;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * Rows loaded into one table, and when its first batch started and its
+     * last batch finished.
+     */
+    private static final class Table
+    {
+        private final AtomicLong rows  = new AtomicLong();
+        private final AtomicLong first = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong last  = new AtomicLong(Long.MIN_VALUE);
+
+        void record(int count, long start, long end)
+        {
+            rows.addAndGet(count);
+            first.accumulateAndGet(start, Math::min);
+            last.accumulateAndGet(end, Math::max);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.github.klefstad_teaching.cs122b.movies.repo;
+
+import com.github.klefstad_teaching.cs122b.movies.config.MoviesServiceConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pins that a saturated search bulkhead, index loads included, turns
+ * further searches away without holding up id lookups.
+ */
+public class BulkheadsTest
+{
+    private SimpleMeterRegistry registry;
+    private Bulkheads           bulkheads;
+    private CountDownLatch      release;
+
+    @BeforeEach
+    public void setup()
+    {
+        MoviesServiceConfig config = new Binder(new MapConfigurationPropertySource(Map.of(
+            "movie.bulkhead.lookup-threads", "1",
+            "movie.bulkhead.lookup-queue", "10",
+            "movie.bulkhead.search-threads", "1",
+            "movie.bulkhead.search-queue", "1",
+            "movie.bulkhead.search-rejection", "fail"
+        ))).bind("movie", MoviesServiceConfig.class).get();
+
+        registry = new SimpleMeterRegistry();
+        bulkheads = new Bulkheads(config, registry);
+        release = new CountDownLatch(1);
+    }
+
+    @AfterEach
+    public void teardown()
+    {
+        release.countDown();
+        bulkheads.destroy();
+    }
+
+    @Test
+    public void saturatedSearchesDoNotBlockLookups() throws Exception
+    {
+        saturateSearches();
+
+        String found = assertTimeoutPreemptively(Duration.ofSeconds(1),
+                                                 () -> bulkheads.run(Bulkhead.QueryClass.LOOKUP, () -> "movie 1"));
+
+        assertEquals("movie 1", found);
+    }
+
+    @Test
+    public void saturatedSearchesRejectSearchesAndLoads() throws Exception
+    {
+        saturateSearches();
+
+        assertThrows(BulkheadFullException.class, () -> bulkheads.run(Bulkhead.QueryClass.SEARCH, () -> "search"));
+        assertThrows(BulkheadFullException.class, () -> bulkheads.load(() -> "index"));
+        assertEquals(2.0, registry.get("movies.bulkhead.rejected").tag("bulkhead", "search").counter().count());
+    }
+
+    @Test
+    public void loadFromASearchRunsInline() throws Throwable
+    {
+        String thread = bulkheads.run(Bulkhead.QueryClass.SEARCH,
+                                      () -> bulkheads.load(() -> Thread.currentThread().getName()));
+
+        assertEquals("search-bulkhead-1", thread);
+    }
+
+    @Test
+    public void rethrowsWhatTheWorkThrew()
+    {
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class, () -> bulkheads.load(() -> {
+            throw new IllegalArgumentException("bad row");
+        }));
+
+        assertEquals("bad row", thrown.getMessage());
+    }
+
+    /**
+     * Holds the one search thread and fills the one queue slot.
+     */
+    private void saturateSearches() throws InterruptedException
+    {
+        CountDownLatch running = new CountDownLatch(1);
+        CompletableFuture.runAsync(() -> search(() -> {
+            running.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        }));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture.runAsync(() -> search(() -> release.await(5, TimeUnit.SECONDS)));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (registry.get("movies.bulkhead.queued").tag("bulkhead", "search").gauge().value() < 1)
+        {
+            assertTrue(System.nanoTime() < deadline, "second search never queued");
+            Thread.sleep(1);
+        }
+    }
+
+    private void search(Bulkheads.Work<Boolean> work)
+    {
+        try {
+            bulkheads.run(Bulkhead.QueryClass.SEARCH, work);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.github.klefstad_teaching.cs122b.movies.repo;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.klefstad_teaching.cs122b.core.error.ResultError;
+import com.github.klefstad_teaching.cs122b.movies.config.MoviesServiceConfig;
+import com.github.klefstad_teaching.cs122b.movies.metrics.RepoMetrics;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.CastIndex;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.CreditGraph;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.FuzzyNameIndex;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.GenreDictionary;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.MovieCatalog;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.SubstringIndex;
+import com.github.klefstad_teaching.cs122b.movies.repo.entity.Movie;
+import com.github.klefstad_teaching.cs122b.movies.repo.entity.MovieQuery;
+import com.github.klefstad_teaching.cs122b.movies.util.Validate;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pages through movie searches with the cursor each page hands out and
+ * checks every page against the same page fetched by offset, on both
+ * search engines. Rating and year orders have long runs of ties and some
+ * NULL ratings, which the cursor has to step through without skipping or
+ * repeating a movie.
+ */
+@SpringBootTest
+public class CursorPagingTest
+{
+    private static final String   TITLE      = "the";
+    private static final int      LIMIT      = 10;
+    private static final int      MAX_PAGES  = 30;
+    private static final String[] DIRECTIONS = {"asc", "desc"};
+
+    private final MovieRepo sqlEngine;
+    private final MovieRepo inMemoryEngine;
+
+    @Autowired
+    public CursorPagingTest(MovieRepo repo, ObjectMapper objectMapper, NamedParameterJdbcTemplate template,
+                            Validate validate, MovieCatalog catalog, SubstringIndex substringIndex,
+                            QueryShapeCache shapes, RepoMetrics metrics, GenreDictionary genres,
+                            CastIndex castIndex, FuzzyNameIndex fuzzyNames, CreditGraph creditGraph)
+    {
+        MoviesServiceConfig inMemory = new Binder(new MapConfigurationPropertySource(Map.of("movie.search-engine", "in-memory")))
+            .bind("movie", MoviesServiceConfig.class)
+            .get();
+
+        this.sqlEngine = repo;
+        this.inMemoryEngine = new MovieRepo(objectMapper, template, inMemory, validate, catalog, substringIndex,
+                                            shapes, metrics, genres, castIndex, fuzzyNames, creditGraph);
+    }
+
+    @Test
+    public void titleCursorPagesMatchOffsetPages() throws JsonProcessingException
+    {
+        for (String direction : DIRECTIONS)
+        {
+            assertCursorMatchesOffset(sqlEngine, "title", direction);
+            assertCursorMatchesOffset(inMemoryEngine, "title", direction);
+        }
+    }
+
+    @Test
+    public void cursorStepsThroughTies() throws JsonProcessingException
+    {
+        for (String orderBy : new String[]{"rating", "year"})
+        {
+            for (String direction : DIRECTIONS)
+            {
+                assertCursorMatchesOffset(sqlEngine, orderBy, direction);
+                assertCursorMatchesOffset(inMemoryEngine, orderBy, direction);
+            }
+        }
+    }
+
+    private static void assertCursorMatchesOffset(MovieRepo repo, String orderBy, String direction)
+        throws JsonProcessingException
+    {
+        List<Long> seen = new ArrayList<>();
+        String cursor = null;
+        int page = 1;
+        for (; page <= MAX_PAGES; page++)
+        {
+            Movie[] movies = movies(repo, query(orderBy, direction, null, cursor));
+            List<Long> byCursor = ids(movies);
+            assertEquals(ids(movies(repo, query(orderBy, direction, page, null))), byCursor,
+                         orderBy + " " + direction + " page " + page);
+
+            seen.addAll(byCursor);
+            cursor = repo.nextMovieCursor(movies, orderBy, direction, LIMIT);
+            if (cursor == null)
+            {
+                assertEquals(0, movies(repo, query(orderBy, direction, page + 1, null)).length,
+                             orderBy + " " + direction + ": no cursor after page " + page + " but more movies");
+                break;
+            }
+        }
+
+        assertTrue(page > 2, orderBy + " " + direction + ": search too small to page through");
+        assertEquals(seen.size(), seen.stream().distinct().count(), orderBy + " " + direction + ": a movie repeated");
+    }
+
+    private static MovieQuery query(String orderBy, String direction, Integer page, String cursor)
+    {
+        MovieQuery query = new MovieQuery();
+        query.setTitle(TITLE);
+        query.setOrderBy(orderBy);
+        query.setDirection(direction);
+        query.setLimit(LIMIT);
+        query.setPage(page);
+        query.setCursor(cursor);
+        return query;
+    }
+
+    /**
+     * The page, empty when nothing was found.
+     */
+    private static Movie[] movies(MovieRepo repo, MovieQuery query) throws JsonProcessingException
+    {
+        try {
+            return repo.searchMovies(query, false);
+        } catch (ResultError e) {
+            return new Movie[0];
+        }
+    }
+
+    private static List<Long> ids(Movie[] movies)
+    {
+        return Arrays.stream(movies).map(Movie::getId).collect(Collectors.toList());
+    }
+}
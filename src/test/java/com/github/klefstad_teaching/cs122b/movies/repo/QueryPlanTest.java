@@ -0,0 +1,254 @@
+package com.github.klefstad_teaching.cs122b.movies.repo;
+
+import com.github.klefstad_teaching.cs122b.movies.util.Validate;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs EXPLAIN on every search shape MovieRepo can build, against the
+ * local database with the db/migration indexes applied, and fails on any
+ * shape that full-scans a table it has an indexed predicate on, or that
+ * sorts a page the indexes can return already in order.
+ */
+@SpringBootTest
+public class QueryPlanTest
+{
+    private static final int[] TITLE_FILTERS    = {0, QueryShapeCache.TITLE, QueryShapeCache.TITLE | QueryShapeCache.TITLE_IDS};
+    private static final int[] CREDIT_FILTERS   = {0, QueryShapeCache.TITLE, QueryShapeCache.TITLE | QueryShapeCache.TITLE_IDS, QueryShapeCache.TITLE | QueryShapeCache.CREDIT_IDS};
+    private static final int[] DIRECTOR_FILTERS = {0, QueryShapeCache.DIRECTOR, QueryShapeCache.DIRECTOR | QueryShapeCache.DIRECTOR_IDS};
+    private static final int[] NAME_FILTERS     = {0, QueryShapeCache.NAME, QueryShapeCache.NAME | QueryShapeCache.NAME_IDS};
+    private static final int[] GENRE_FILTERS    = {0, QueryShapeCache.GENRE};
+    private static final int[] YEAR_FILTERS     = {0, QueryShapeCache.YEAR};
+    private static final int[] BIRTHDAY_FILTERS = {0, QueryShapeCache.BIRTHDAY};
+    private static final int[] CREDITS          = {0, QueryShapeCache.CREDIT_IDS};
+    private static final int[] HIDDEN           = {0, QueryShapeCache.HIDE_HIDDEN};
+    private static final int[] DIRECTIONS       = {0, QueryShapeCache.DESCENDING};
+    private static final int[] CURSORS          = {0, QueryShapeCache.CURSOR, QueryShapeCache.CURSOR | QueryShapeCache.CURSOR_VALUE};
+
+    private static final long ROBERT_DOWNEY_JR_ID = 3223;
+
+    private final NamedParameterJdbcTemplate template;
+
+    @Autowired
+    public QueryPlanTest(NamedParameterJdbcTemplate template)
+    {
+        this.template = template;
+    }
+
+    @Test
+    public void searchMoviesUsesIndexes()
+    {
+        List<String> failures = new ArrayList<>();
+        for (int flags : shapes(TITLE_FILTERS, GENRE_FILTERS, DIRECTOR_FILTERS, YEAR_FILTERS, HIDDEN, DIRECTIONS, CURSORS))
+        {
+            for (String orderBy : Validate.MOVIE_ORDER_BY)
+            {
+                List<String> problems = new ArrayList<>();
+                List<Map<String, Object>> plan = explain(MovieRepo.buildSearchMoviesSql(flags, orderBy), orderBy);
+
+                if (has(flags, QueryShapeCache.YEAR) || has(flags, QueryShapeCache.TITLE_IDS))
+                {
+                    noFullScan(plan, "m", problems);
+                }
+                if (has(flags, QueryShapeCache.GENRE))
+                {
+                    noFullScan(plan, "mg", problems);
+                }
+                if (has(flags, QueryShapeCache.DIRECTOR_IDS))
+                {
+                    noFullScan(plan, "director", problems);
+                }
+                if (has(flags, QueryShapeCache.HIDE_HIDDEN) &&
+                    !has(flags, QueryShapeCache.TITLE | QueryShapeCache.GENRE | QueryShapeCache.DIRECTOR | QueryShapeCache.YEAR))
+                {
+                    readInOrder(plan, problems);
+                }
+
+                check(failures, "searchMovies", flags, orderBy, plan, problems);
+            }
+        }
+        assertTrue(failures.isEmpty(), () -> String.join("\n", failures));
+    }
+
+    @Test
+    public void searchMoviesByPersonIdUsesIndexes()
+    {
+        List<String> failures = new ArrayList<>();
+        for (int flags : shapes(CREDITS, HIDDEN, DIRECTIONS, CURSORS))
+        {
+            for (String orderBy : Validate.MOVIE_ORDER_BY)
+            {
+                List<String> problems = new ArrayList<>();
+                List<Map<String, Object>> plan = explain(MovieRepo.buildSearchMoviesByPersonIdSql(flags, orderBy), orderBy);
+
+                noFullScan(plan, "p", problems);
+                noFullScan(plan, "m", problems);
+
+                check(failures, "searchMoviesByPersonId", flags, orderBy, plan, problems);
+            }
+        }
+        assertTrue(failures.isEmpty(), () -> String.join("\n", failures));
+    }
+
+    @Test
+    public void searchPersonUsesIndexes()
+    {
+        List<String> failures = new ArrayList<>();
+        for (int flags : shapes(NAME_FILTERS, BIRTHDAY_FILTERS, CREDIT_FILTERS, HIDDEN, DIRECTIONS, CURSORS))
+        {
+            for (String orderBy : Validate.PERSON_ORDER_BY)
+            {
+                List<String> problems = new ArrayList<>();
+                List<Map<String, Object>> plan = explain(MovieRepo.buildSearchPersonSql(flags, orderBy), orderBy);
+
+                if (has(flags, QueryShapeCache.NAME_IDS) || has(flags, QueryShapeCache.BIRTHDAY) || has(flags, QueryShapeCache.CREDIT_IDS))
+                {
+                    noFullScan(plan, "p", problems);
+                }
+                if (has(flags, QueryShapeCache.TITLE_IDS))
+                {
+                    noFullScan(plan, "m", problems);
+                }
+                if (!has(flags, QueryShapeCache.NAME | QueryShapeCache.BIRTHDAY | QueryShapeCache.TITLE))
+                {
+                    readInOrder(plan, problems);
+                }
+
+                check(failures, "searchPerson", flags, orderBy, plan, problems);
+            }
+        }
+        assertTrue(failures.isEmpty(), () -> String.join("\n", failures));
+    }
+
+    private List<Map<String, Object>> explain(String sql, String orderBy)
+    {
+        MapSqlParameterSource source = new MapSqlParameterSource()
+            .addValue("title", "%the%")
+            .addValue("titleIds", "[110763, 4154796]")
+            .addValue("genreIds", "[18]")
+            .addValue("director", "%john%")
+            .addValue("directorIds", "[" + ROBERT_DOWNEY_JR_ID + "]")
+            .addValue("year", 2000)
+            .addValue("personId", ROBERT_DOWNEY_JR_ID)
+            .addValue("creditMovieIds", "[110763, 4154796]")
+            .addValue("creditPersonIds", "[" + ROBERT_DOWNEY_JR_ID + "]")
+            .addValue("name", "%john%")
+            .addValue("nameIds", "[" + ROBERT_DOWNEY_JR_ID + "]")
+            .addValue("birthday", "1965-04-04")
+            .addValue("cursorValue", cursorValue(orderBy))
+            .addValue("cursorId", 1000)
+            .addValue("limit", 10)
+            .addValue("offset", 0);
+        return template.queryForList("EXPLAIN " + sql, source);
+    }
+
+    private static Object cursorValue(String orderBy)
+    {
+        switch (orderBy)
+        {
+            case "rating":
+            case "popularity":
+                return 5.0;
+            case "year":
+                return 2000;
+            case "birthday":
+                return "1970-01-01";
+            default:
+                return "M";
+        }
+    }
+
+    /**
+     * Fails when {@code table} is read with a full table scan.
+     */
+    private static void noFullScan(List<Map<String, Object>> plan, String table, List<String> problems)
+    {
+        for (Map<String, Object> row : plan)
+        {
+            if (table.equals(row.get("table")) && "ALL".equals(row.get("type")))
+            {
+                problems.add("full scan of " + table);
+            }
+        }
+    }
+
+    /**
+     * Fails unless the page is read in index order: no full scan, no
+     * filesort, no temporary table.
+     */
+    private static void readInOrder(List<Map<String, Object>> plan, List<String> problems)
+    {
+        for (Map<String, Object> row : plan)
+        {
+            String extra = String.valueOf(row.get("Extra"));
+            if ("ALL".equals(row.get("type")))
+            {
+                problems.add("full scan of " + row.get("table"));
+            }
+            if (extra.contains("Using filesort"))
+            {
+                problems.add("filesort on " + row.get("table"));
+            }
+            if (extra.contains("Using temporary"))
+            {
+                problems.add("temporary table on " + row.get("table"));
+            }
+        }
+    }
+
+    /**
+     * Records the shape's problems, followed by its plan, as one failure.
+     */
+    private static void check(List<String> failures, String query, int flags, String orderBy,
+                              List<Map<String, Object>> plan, List<String> problems)
+    {
+        if (problems.isEmpty())
+        {
+            return;
+        }
+
+        StringBuilder failure = new StringBuilder()
+            .append(query).append(" flags=").append(Integer.toBinaryString(flags))
+            .append(" orderBy=").append(orderBy).append(": ").append(String.join(", ", problems));
+        for (Map<String, Object> row : plan)
+        {
+            failure.append("\n    ").append(row);
+        }
+        failures.add(failure.toString());
+    }
+
+    private static boolean has(int flags, int mask)
+    {
+        return (flags & mask) != 0;
+    }
+
+    /**
+     * Every combination taking one value from each group.
+     */
+    private static List<Integer> shapes(int[]... groups)
+    {
+        List<Integer> shapes = new ArrayList<>(List.of(0));
+        for (int[] group : groups)
+        {
+            List<Integer> next = new ArrayList<>();
+            for (int shape : shapes)
+            {
+                for (int flag : group)
+                {
+                    next.add(shape | flag);
+                }
+            }
+            shapes = next;
+        }
+        return shapes;
+    }
+}
@@ -0,0 +1,104 @@
+package com.github.klefstad_teaching.cs122b.movies.repo;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.github.klefstad_teaching.cs122b.core.error.ResultError;
+import com.github.klefstad_teaching.cs122b.movies.repo.entity.Movie;
+import com.github.klefstad_teaching.cs122b.movies.repo.entity.MovieQuery;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs {@code q} searches against the local database: hidden movies drop
+ * out of the ranking without reordering the rest, and pages of any size
+ * cut the same ranking at the same places as the count says.
+ */
+@SpringBootTest
+public class RelevanceSearchTest
+{
+    // Broad enough to rank well over a hundred movies, some of them hidden.
+    private static final String Q = "the love war man";
+
+    private final MovieRepo repo;
+
+    @Autowired
+    public RelevanceSearchTest(MovieRepo repo)
+    {
+        this.repo = repo;
+    }
+
+    @Test
+    public void leavesOutHiddenUnlessAsked() throws JsonProcessingException
+    {
+        Movie[] all = search(100, 1, true);
+        Movie[] visible = search(100, 1, false);
+
+        assertTrue(Arrays.stream(all).anyMatch(Movie::getHidden), "no hidden movie in the first page");
+        assertFalse(Arrays.stream(visible).anyMatch(Movie::getHidden));
+
+        List<Long> expected = Arrays.stream(all)
+                                    .filter(movie -> !movie.getHidden())
+                                    .map(Movie::getId)
+                                    .collect(Collectors.toList());
+        assertEquals(expected, ids(visible).subList(0, expected.size()));
+    }
+
+    @Test
+    public void pagesCutTheSameRanking() throws JsonProcessingException
+    {
+        for (boolean showHidden : new boolean[]{false, true})
+        {
+            List<Long> ranking = ids(search(100, 1, showHidden));
+            ranking.addAll(ids(search(100, 2, showHidden)));
+
+            List<Long> paged = new ArrayList<>();
+            for (int page = 1; page <= 20; page++)
+            {
+                paged.addAll(ids(search(10, page, showHidden)));
+            }
+
+            assertEquals(ranking, paged);
+            assertEquals(ranking.size(), ranking.stream().distinct().count(), "a movie ranked twice");
+            if (ranking.size() < 200)
+            {
+                assertEquals(ranking.size(), repo.countMovies(query(10, 1), showHidden));
+            }
+            else
+            {
+                assertTrue(repo.countMovies(query(10, 1), showHidden) >= 200);
+            }
+        }
+    }
+
+    private Movie[] search(int limit, int page, boolean showHidden) throws JsonProcessingException
+    {
+        try {
+            return repo.searchMovies(query(limit, page), showHidden);
+        } catch (ResultError e) {
+            return new Movie[0];
+        }
+    }
+
+    private static MovieQuery query(int limit, int page)
+    {
+        MovieQuery query = new MovieQuery();
+        query.setQ(Q);
+        query.setLimit(limit);
+        query.setPage(page);
+        return query;
+    }
+
+    private static List<Long> ids(Movie[] movies)
+    {
+        return Arrays.stream(movies).map(Movie::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.klefstad_teaching.cs122b.movies.repo;
+
+import com.github.klefstad_teaching.cs122b.core.error.ResultError;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+
+import java.sql.Types;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pins the cursor token: what survives a round trip, NULL seek values, the
+ * ordering a token is bound to, and the id tie-breaker that lets paging
+ * step through rows sharing an orderBy value.
+ */
+public class SearchCursorTest
+{
+    @Test
+    public void roundTripsIdAndValue()
+    {
+        String token = SearchCursor.encode("title", false, 42L, "Face|Off");
+
+        SearchCursor cursor = SearchCursor.decode(token, "title", false);
+
+        assertEquals(42L, cursor.getId());
+        assertTrue(cursor.hasValue());
+        assertEquals("Face|Off", cursor.getValue());
+    }
+
+    @Test
+    public void tokenIsUrlSafe()
+    {
+        String token = SearchCursor.encode("title", true, 7L, "???>>>~~~ \u00e9t\u00e9");
+
+        assertTrue(token.matches("[A-Za-z0-9_-]+"), token);
+        assertEquals("???>>>~~~ \u00e9t\u00e9", SearchCursor.decode(token, "title", true).getValue());
+    }
+
+    @Test
+    public void bindsNumericValuesTyped()
+    {
+        MapSqlParameterSource source = new MapSqlParameterSource();
+
+        SearchCursor.decode(SearchCursor.encode("rating", true, 7L, 8.5), "rating", true).bind(source, Types.DECIMAL);
+
+        assertEquals(8.5, source.getValue("cursorValue"));
+        assertEquals(7L, source.getValue("cursorId"));
+
+        source = new MapSqlParameterSource();
+        SearchCursor.decode(SearchCursor.encode("year", false, 9L, 1999), "year", false).bind(source, Types.INTEGER);
+
+        assertEquals(1999, source.getValue("cursorValue"));
+    }
+
+    @Test
+    public void keepsNullSeekValue()
+    {
+        MapSqlParameterSource source = new MapSqlParameterSource();
+
+        SearchCursor cursor = SearchCursor.decode(SearchCursor.encode("rating", false, 3L, null), "rating", false);
+        cursor.bind(source, Types.DECIMAL);
+
+        assertFalse(cursor.hasValue());
+        assertNull(cursor.getValue());
+        assertFalse(source.hasValue("cursorValue"));
+        assertEquals(3L, source.getValue("cursorId"));
+    }
+
+    @Test
+    public void seeksPastNullsTheWayMySqlSortsThem()
+    {
+        // Ascending, NULLs come first: later NULLs, then every value.
+        assertEquals("((m.rating IS NULL AND m.id > :cursorId) OR m.rating IS NOT NULL)",
+                     SearchCursor.seekSql("m.rating", "m.id", false, false));
+        // Descending, NULLs come last: only later NULLs remain.
+        assertEquals("(m.rating IS NULL AND m.id > :cursorId)",
+                     SearchCursor.seekSql("m.rating", "m.id", true, false));
+        // A value row is followed by the NULLs when descending.
+        assertTrue(SearchCursor.seekSql("m.rating", "m.id", true, true).endsWith("OR m.rating IS NULL)"));
+    }
+
+    @Test
+    public void tiesAreBrokenByAscendingId()
+    {
+        SearchCursor first = SearchCursor.decode(SearchCursor.encode("year", true, 10L, 2008), "year", true);
+        SearchCursor second = SearchCursor.decode(SearchCursor.encode("year", true, 11L, 2008), "year", true);
+
+        assertEquals(first.getValue(), second.getValue());
+        assertNotEquals(first.getId(), second.getId());
+
+        assertEquals("(m.year, m.id) > (:cursorValue, :cursorId)",
+                     SearchCursor.seekSql("m.year", "m.id", false, true));
+        assertEquals("(m.year < :cursorValue OR (m.year = :cursorValue AND m.id > :cursorId) OR m.year IS NULL)",
+                     SearchCursor.seekSql("m.year", "m.id", true, true));
+    }
+
+    @Test
+    public void rejectsCursorForAnotherOrdering()
+    {
+        String token = SearchCursor.encode("title", false, 42L, "Heat");
+
+        assertThrows(ResultError.class, () -> SearchCursor.decode(token, "rating", false));
+        assertThrows(ResultError.class, () -> SearchCursor.decode(token, "title", true));
+    }
+
+    @Test
+    public void rejectsMalformedTokens()
+    {
+        assertThrows(ResultError.class, () -> SearchCursor.decode("not a token", "title", false));
+        assertThrows(ResultError.class, () -> SearchCursor.decode("dGl0bGU", "title", false));
+
+        SearchCursor cursor = SearchCursor.decode(SearchCursor.encode("year", false, 1L, "soon"), "year", false);
+        assertThrows(ResultError.class, () -> cursor.bind(new MapSqlParameterSource(), Types.INTEGER));
+    }
+}
@@ -0,0 +1,161 @@
+package com.github.klefstad_teaching.cs122b.movies.repo;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.klefstad_teaching.cs122b.core.error.ResultError;
+import com.github.klefstad_teaching.cs122b.movies.config.MoviesServiceConfig;
+import com.github.klefstad_teaching.cs122b.movies.metrics.RepoMetrics;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.CastIndex;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.CreditGraph;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.FuzzyNameIndex;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.GenreDictionary;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.MovieCatalog;
+import com.github.klefstad_teaching.cs122b.movies.repo.catalog.SubstringIndex;
+import com.github.klefstad_teaching.cs122b.movies.repo.entity.Movie;
+import com.github.klefstad_teaching.cs122b.movies.repo.entity.MovieQuery;
+import com.github.klefstad_teaching.cs122b.movies.util.Validate;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs every combination of the movie search filters, order, direction
+ * and page through both search engines against the local database and
+ * fails on any search where the two return different ids, in order.
+ */
+@SpringBootTest
+public class SearchEngineParityTest
+{
+    private static final String[]  TITLES     = {null, "the", "love", "star%war", "x-men"};
+    private static final Integer[] YEARS      = {null, 2000};
+    private static final String[]  DIRECTORS  = {null, "john"};
+    // "a" matches most genres, so most movies are in several of them.
+    private static final String[]  GENRES     = {null, "action", "a"};
+    private static final String[]  DIRECTIONS = {"asc", "desc"};
+    private static final int[][]   PAGES      = {{10, 1}, {10, 3}, {100, 2}};
+    private static final boolean[] HIDDEN     = {false, true};
+
+    private final MovieRepo sqlEngine;
+    private final MovieRepo inMemoryEngine;
+
+    @Autowired
+    public SearchEngineParityTest(MovieRepo repo, ObjectMapper objectMapper, NamedParameterJdbcTemplate template,
+                                  Validate validate, MovieCatalog catalog, SubstringIndex substringIndex,
+                                  QueryShapeCache shapes, RepoMetrics metrics, GenreDictionary genres,
+                                  CastIndex castIndex, FuzzyNameIndex fuzzyNames, CreditGraph creditGraph)
+    {
+        MoviesServiceConfig inMemory = new Binder(new MapConfigurationPropertySource(Map.of("movie.search-engine", "in-memory")))
+            .bind("movie", MoviesServiceConfig.class)
+            .get();
+
+        this.sqlEngine = repo;
+        this.inMemoryEngine = new MovieRepo(objectMapper, template, inMemory, validate, catalog, substringIndex,
+                                            shapes, metrics, genres, castIndex, fuzzyNames, creditGraph);
+    }
+
+    @Test
+    public void searchMoviesMatchesAcrossEngines() throws JsonProcessingException
+    {
+        List<String> failures = new ArrayList<>();
+        for (MovieQuery query : filters())
+        {
+            for (boolean showHidden : HIDDEN)
+            {
+                long sqlCount = sqlEngine.countMovies(query, showHidden);
+                long inMemoryCount = inMemoryEngine.countMovies(query, showHidden);
+                if (sqlCount != inMemoryCount)
+                {
+                    failures.add(describe(query, showHidden) + ": count " + sqlCount + " vs " + inMemoryCount);
+                }
+
+                for (String orderBy : Validate.MOVIE_ORDER_BY)
+                {
+                    for (String direction : DIRECTIONS)
+                    {
+                        for (int[] page : PAGES)
+                        {
+                            query.setOrderBy(orderBy);
+                            query.setDirection(direction);
+                            query.setLimit(page[0]);
+                            query.setPage(page[1]);
+
+                            List<Long> sql = ids(sqlEngine, query, showHidden);
+                            List<Long> inMemory = ids(inMemoryEngine, query, showHidden);
+                            if (!sql.equals(inMemory))
+                            {
+                                failures.add(describe(query, showHidden) + "\n    sql:       " + sql + "\n    in-memory: " + inMemory);
+                            }
+                            if (new HashSet<>(sql).size() != sql.size())
+                            {
+                                failures.add(describe(query, showHidden) + ": duplicate movies " + sql);
+                            }
+                        }
+                    }
+                }
+                query.setOrderBy(null);
+                query.setDirection(null);
+                query.setLimit(null);
+                query.setPage(null);
+            }
+        }
+        assertTrue(failures.isEmpty(), () -> failures.size() + " searches differ:\n" + String.join("\n", failures));
+    }
+
+    /**
+     * Every combination taking one value from each filter.
+     */
+    private static List<MovieQuery> filters()
+    {
+        List<MovieQuery> filters = new ArrayList<>();
+        for (String title : TITLES)
+        {
+            for (Integer year : YEARS)
+            {
+                for (String director : DIRECTORS)
+                {
+                    for (String genre : GENRES)
+                    {
+                        MovieQuery query = new MovieQuery();
+                        query.setTitle(title);
+                        query.setYear(year);
+                        query.setDirector(director);
+                        query.setGenre(genre);
+                        filters.add(query);
+                    }
+                }
+            }
+        }
+        return filters;
+    }
+
+    private static String describe(MovieQuery query, boolean showHidden)
+    {
+        return "title=" + query.getTitle() + " year=" + query.getYear() + " director=" + query.getDirector() +
+               " genre=" + query.getGenre() + " orderBy=" + query.getOrderBy() + " direction=" + query.getDirection() +
+               " limit=" + query.getLimit() + " page=" + query.getPage() + " showHidden=" + showHidden;
+    }
+
+    /**
+     * The ids of the page, empty when nothing was found.
+     */
+    private static List<Long> ids(MovieRepo repo, MovieQuery query, boolean showHidden) throws JsonProcessingException
+    {
+        try {
+            return Arrays.stream(repo.searchMovies(query, showHidden)).map(Movie::getId).collect(Collectors.toList());
+        } catch (ResultError e) {
+            return List.of();
+        }
+    }
+}
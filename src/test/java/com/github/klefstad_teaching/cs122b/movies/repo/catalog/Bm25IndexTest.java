@@ -0,0 +1,93 @@
+package com.github.klefstad_teaching.cs122b.movies.repo.catalog;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Pins the ranking behind {@code q}: how text is split into words, rarer
+ * words and shorter fields weighing more, field boosts, and equal scores
+ * keeping document order.
+ */
+public class Bm25IndexTest
+{
+    @Test
+    public void splitsOnAnythingButLettersAndDigits()
+    {
+        Bm25Index index = single("spider-man: no way home", "the 300", "x-men");
+
+        assertArrayEquals(new int[]{0}, index.search("man"));
+        assertArrayEquals(new int[]{1}, index.search("300"));
+        assertArrayEquals(new int[]{0}, index.search("spider:man"));
+        assertArrayEquals(new int[0], index.search("-: "));
+        assertArrayEquals(new int[0], index.search("spi ma"));
+    }
+
+    @Test
+    public void matchesAnyQueryWord()
+    {
+        Bm25Index index = single("heat", "thief", "collateral");
+
+        assertArrayEquals(new int[]{0, 2}, index.search("heat collateral"));
+        assertArrayEquals(new int[0], index.search("ronin"));
+    }
+
+    @Test
+    public void rarerWordsWeighMore()
+    {
+        Bm25Index index = single("the matrix", "the mummy", "the thing");
+
+        assertArrayEquals(new int[]{1, 0, 2}, index.search("the mummy"));
+    }
+
+    @Test
+    public void countsARepeatedQueryWordOnce()
+    {
+        // Counted five times, the common word would outscore the rare one.
+        Bm25Index index = single("war", "war", "war", "love");
+
+        assertArrayEquals(new int[]{3, 0, 1, 2}, index.search("war war war war war love"));
+    }
+
+    @Test
+    public void shorterFieldsWeighMore()
+    {
+        Bm25Index index = single("alien resurrection special edition", "alien");
+
+        assertArrayEquals(new int[]{1, 0}, index.search("alien"));
+    }
+
+    @Test
+    public void boostsWeighFields()
+    {
+        String[][] texts = {
+            {"heist", "heat"},
+            {"heat", "heist"}
+        };
+
+        assertArrayEquals(new int[]{1, 0}, Bm25Index.build(texts, new double[]{3.0, 1.0}).search("heat"));
+        assertArrayEquals(new int[]{0, 1}, Bm25Index.build(texts, new double[]{1.0, 3.0}).search("heat"));
+    }
+
+    @Test
+    public void equalScoresKeepDocumentOrder()
+    {
+        Bm25Index index = single("war horse", "star wars", "war games", "war dogs");
+
+        assertArrayEquals(new int[]{0, 2, 3}, index.search("war"));
+    }
+
+    @Test
+    public void nullTextIsEmpty()
+    {
+        Bm25Index index = Bm25Index.build(new String[][]{{null, "heat"}, {"heat", null}}, new double[]{1.0, 1.0});
+
+        assertArrayEquals(new int[]{0, 1}, index.search("heat"));
+        assertArrayEquals(new int[0], index.search(null));
+    }
+
+    private static Bm25Index single(String... texts)
+    {
+        return Bm25Index.build(new String[][]{texts}, new double[]{1.0});
+    }
+}
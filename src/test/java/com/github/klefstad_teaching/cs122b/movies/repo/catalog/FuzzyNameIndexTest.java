@@ -0,0 +1,60 @@
+package com.github.klefstad_teaching.cs122b.movies.repo.catalog;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Pins the single-edit typos fuzzy person search advertises, one of each
+ * kind, against a small index built without a database.
+ */
+public class FuzzyNameIndexTest
+{
+    private static final int JOHN_SMITH    = 1;
+    private static final int ROBERT_DOWNEY = 2;
+    private static final int JON_FAVREAU   = 3;
+    private static final int JOHNNY_DEPP   = 4;
+
+    private FuzzyNameIndex index;
+
+    @BeforeEach
+    public void setup()
+    {
+        index = new FuzzyNameIndex(2, 1000);
+        index.putPerson(JOHN_SMITH, "John Smith", 10.0);
+        index.putPerson(ROBERT_DOWNEY, "Robert Downey Jr.", 50.0);
+        index.putPerson(JON_FAVREAU, "Jon Favreau", 20.0);
+        index.putPerson(JOHNNY_DEPP, "Johnny Depp", 30.0);
+    }
+
+    @Test
+    public void matchesAdjacentTransposition()
+    {
+        assertArrayEquals(new int[]{JOHN_SMITH}, index.match("Jhon Smith"));
+    }
+
+    @Test
+    public void matchesInsertion()
+    {
+        assertArrayEquals(new int[]{ROBERT_DOWNEY}, index.match("Robert Downeey"));
+    }
+
+    @Test
+    public void matchesDeletion()
+    {
+        assertArrayEquals(new int[]{ROBERT_DOWNEY}, index.match("Robert Downy"));
+    }
+
+    @Test
+    public void ranksExactBeforeTypo()
+    {
+        assertArrayEquals(new int[]{JON_FAVREAU, JOHN_SMITH}, index.match("Jon"));
+    }
+
+    @Test
+    public void rejectsTooManyEdits()
+    {
+        assertArrayEquals(new int[0], index.match("Jhonnie Dep"));
+    }
+}
@@ -0,0 +1,132 @@
+package com.github.klefstad_teaching.cs122b.movies.repo.catalog;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Pins what a typeahead lookup returns: entries with a word starting with
+ * the prefix, each once, best score first with ties to the lower id and
+ * unscored entries last, hidden ones only when asked for.
+ */
+public class PrefixTrieTest
+{
+    private static final int THE_MATRIX      = 10;
+    private static final int MATRIX_RELOADED = 20;
+    private static final int THE_MUMMY       = 30;
+    private static final int MAD_MAX         = 40;
+    private static final int MAX_AND_MATILDA = 50;
+
+    private PrefixTrie trie;
+
+    @BeforeEach
+    public void setup()
+    {
+        trie = PrefixTrie.build(
+            new int[]{THE_MATRIX, MATRIX_RELOADED, THE_MUMMY, MAD_MAX, MAX_AND_MATILDA},
+            new String[]{"the matrix", "matrix reloaded", "the mummy", "mad max", "max and matilda"},
+            new double[]{8.7, 7.2, 7.0, Double.NaN, 7.2},
+            new boolean[]{false, false, false, false, true},
+            10
+        );
+    }
+
+    @Test
+    public void completesAnyWordStart()
+    {
+        assertArrayEquals(new int[]{THE_MATRIX, MATRIX_RELOADED}, ids(trie, trie.complete("matr", 10, false)));
+        assertArrayEquals(new int[]{MATRIX_RELOADED}, ids(trie, trie.complete("rel", 10, false)));
+        assertArrayEquals(new int[]{THE_MATRIX, THE_MUMMY}, ids(trie, trie.complete("the", 10, false)));
+    }
+
+    @Test
+    public void doesNotCompleteInsideWords()
+    {
+        assertArrayEquals(new int[0], trie.complete("atrix", 10, true));
+        assertArrayEquals(new int[0], trie.complete("ummy", 10, true));
+        assertArrayEquals(new int[0], trie.complete("zorro", 10, true));
+    }
+
+    @Test
+    public void listsAnEntryOnceWhenSeveralWordsMatch()
+    {
+        assertArrayEquals(new int[]{THE_MATRIX, MATRIX_RELOADED, MAX_AND_MATILDA, MAD_MAX},
+                          ids(trie, trie.complete("ma", 10, true)));
+    }
+
+    @Test
+    public void leavesOutHiddenUnlessAsked()
+    {
+        assertArrayEquals(new int[]{THE_MATRIX, MATRIX_RELOADED, MAD_MAX}, ids(trie, trie.complete("ma", 10, false)));
+        assertArrayEquals(new int[0], trie.complete("matilda", 10, false));
+        assertArrayEquals(new int[]{MAX_AND_MATILDA}, ids(trie, trie.complete("matilda", 10, true)));
+    }
+
+    @Test
+    public void takesHiddenFlagsFromPredicate()
+    {
+        int[] entries = trie.complete("ma", 10, entry -> trie.id(entry) == THE_MATRIX);
+
+        assertArrayEquals(new int[]{MATRIX_RELOADED, MAX_AND_MATILDA, MAD_MAX}, ids(trie, entries));
+    }
+
+    @Test
+    public void stopsAtLimit()
+    {
+        assertArrayEquals(new int[]{THE_MATRIX, MATRIX_RELOADED}, ids(trie, trie.complete("ma", 2, true)));
+        assertArrayEquals(new int[0], trie.complete("ma", 0, true));
+    }
+
+    @Test
+    public void breaksTiesByIdAndRanksUnscoredLast()
+    {
+        PrefixTrie ties = PrefixTrie.build(
+            new int[]{3, 1, 2, 4},
+            new String[]{"alpha", "alpha", "alpha", "alpha"},
+            new double[]{Double.NaN, 5.0, Double.NaN, 5.0},
+            new boolean[4],
+            10
+        );
+
+        assertArrayEquals(new int[]{1, 4, 2, 3}, ids(ties, ties.complete("al", 10, false)));
+    }
+
+    @Test
+    public void precomputedNodesRankLikeScannedOnes()
+    {
+        int size = 600;
+        int[] ids = new int[size];
+        String[] texts = new String[size];
+        double[] scores = new double[size];
+        boolean[] hidden = new boolean[size];
+        for (int i = 0; i < size; i++)
+        {
+            ids[i] = 1000 + i;
+            texts[i] = "movie " + i;
+            scores[i] = i;
+            hidden[i] = i % 2 == 0;
+        }
+        PrefixTrie large = PrefixTrie.build(ids, texts, scores, hidden, 5);
+
+        assertArrayEquals(new int[]{1599, 1598, 1597, 1596, 1595}, ids(large, large.complete("movie", 5, true)));
+        assertArrayEquals(new int[]{1599, 1597, 1595, 1593, 1591}, ids(large, large.complete("mov", 5, false)));
+        assertArrayEquals(new int[]{1599, 1598, 1597, 1595, 1593},
+                          ids(large, large.complete("movie", 5, entry -> large.id(entry) != 1598 && large.hidden(entry))));
+    }
+
+    @Test
+    public void rejectsTopKBelowOne()
+    {
+        assertThrows(IllegalArgumentException.class,
+                     () -> PrefixTrie.build(new int[]{1}, new String[]{"a"}, new double[]{1}, new boolean[1], 0));
+    }
+
+    private static int[] ids(PrefixTrie trie, int[] entries)
+    {
+        return Arrays.stream(entries).map(trie::id).toArray();
+    }
+}
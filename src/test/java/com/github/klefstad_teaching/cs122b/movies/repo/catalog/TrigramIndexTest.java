@@ -0,0 +1,79 @@
+package com.github.klefstad_teaching.cs122b.movies.repo.catalog;
+
+import com.github.klefstad_teaching.cs122b.movies.util.LikePattern;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Pins what the trigram prefilter may rule out: only exact-folding texts
+ * missing a trigram of the term, never a text the collation could still
+ * match.
+ */
+public class TrigramIndexTest
+{
+    private static final int LOVE_ACTUALLY = 1;
+    private static final int THE_LOVER     = 2;
+    private static final int ALIEN         = 3;
+    private static final int NO_TITLE      = 4;
+    private static final int JAPANESE      = 5;
+    private static final int STRASSE       = 6;
+
+    private TrigramIndex index;
+
+    @BeforeEach
+    public void setup()
+    {
+        index = TrigramIndex.build(
+            new int[]{LOVE_ACTUALLY, THE_LOVER, ALIEN, NO_TITLE},
+            new String[]{"love actually", "the lover", "alien", null}
+        );
+    }
+
+    @Test
+    public void narrowsToTextsWithEveryTrigram()
+    {
+        assertArrayEquals(new int[]{LOVE_ACTUALLY, THE_LOVER}, index.candidates(LikePattern.contains("Love")));
+        assertArrayEquals(new int[]{THE_LOVER}, index.candidates(LikePattern.contains("lover")));
+    }
+
+    @Test
+    public void missingTrigramRulesEverythingOut()
+    {
+        assertArrayEquals(new int[0], index.candidates(LikePattern.contains("zombie")));
+    }
+
+    @Test
+    public void combinesWildcardFragments()
+    {
+        assertArrayEquals(new int[]{LOVE_ACTUALLY}, index.candidates(LikePattern.contains("love%ually")));
+    }
+
+    @Test
+    public void shortTermsDoNotNarrow()
+    {
+        assertNull(index.candidates(LikePattern.contains("lo")));
+        assertNull(index.candidates(LikePattern.contains("lo%er")));
+    }
+
+    @Test
+    public void inexactTermsDoNotNarrow()
+    {
+        assertNull(index.candidates(LikePattern.contains("\u5343\u3068\u5343\u5c0b")));
+    }
+
+    @Test
+    public void inexactTextsAreAlwaysCandidates()
+    {
+        TrigramIndex mixed = TrigramIndex.build(
+            new int[]{LOVE_ACTUALLY, JAPANESE, STRASSE},
+            new String[]{"love actually", LikePattern.fold("\u611b\u306e\u3080\u304d\u51fa\u3057"), LikePattern.fold("Stra\u00dfe")}
+        );
+
+        assertArrayEquals(new int[]{LOVE_ACTUALLY, JAPANESE}, mixed.candidates(LikePattern.contains("love")));
+        assertArrayEquals(new int[]{JAPANESE}, mixed.candidates(LikePattern.contains("zombie")));
+        assertArrayEquals(new int[]{JAPANESE, STRASSE}, mixed.candidates(LikePattern.contains("strass")));
+    }
+}
@@ -0,0 +1,139 @@
+package com.github.klefstad_teaching.cs122b.movies.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pins that a value loaded across an invalidation of its key is handed to
+ * its caller but never cached, however the invalidation happened.
+ */
+public class BoundedCacheTest
+{
+    @Test
+    public void cachesLoadedValue()
+    {
+        BoundedCache<String, String> cache = new BoundedCache<>(10);
+
+        assertEquals("v1", cache.get("k", () -> "v1"));
+        assertEquals("v1", cache.get("k", () -> "v2"));
+    }
+
+    @Test
+    public void invalidationDuringLoadIsNotUndone() throws Exception
+    {
+        BoundedCache<String, String> cache = new BoundedCache<>(10);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch invalidated = new CountDownLatch(1);
+
+        CompletableFuture<String> reader = CompletableFuture.supplyAsync(() -> cache.get("movie:1", () -> {
+            loading.countDown();
+            await(invalidated);
+            return "old title";
+        }));
+
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        cache.invalidate("movie:1");
+        invalidated.countDown();
+
+        assertEquals("old title", reader.get(5, TimeUnit.SECONDS));
+        assertNull(cache.getIfPresent("movie:1"));
+        assertEquals("new title", cache.get("movie:1", () -> "new title"));
+    }
+
+    @Test
+    public void clearDuringLoadIsNotUndone()
+    {
+        BoundedCache<String, String> cache = new BoundedCache<>(10);
+
+        cache.get("k", () -> {
+            cache.clear();
+            return "old";
+        });
+
+        assertNull(cache.getIfPresent("k"));
+    }
+
+    @Test
+    public void invalidateIfDuringLoadIsNotUndone()
+    {
+        BoundedCache<String, String> cache = new BoundedCache<>(10);
+
+        cache.get("k", () -> {
+            cache.invalidateIf(key -> key.startsWith("k"));
+            return "old";
+        });
+
+        assertNull(cache.getIfPresent("k"));
+    }
+
+    @Test
+    public void otherKeysInvalidationDoesNotBlockCaching()
+    {
+        BoundedCache<String, String> cache = new BoundedCache<>(10);
+
+        cache.get("k", () -> {
+            cache.invalidate("other");
+            return "v";
+        });
+
+        assertEquals("v", cache.getIfPresent("k"));
+    }
+
+    @Test
+    public void invalidationBeforeLoadDoesNotBlockCaching()
+    {
+        BoundedCache<String, String> cache = new BoundedCache<>(10);
+
+        cache.invalidate("k");
+        cache.get("k", () -> "v");
+
+        assertEquals("v", cache.getIfPresent("k"));
+    }
+
+    @Test
+    public void externalLoadChecksGeneration()
+    {
+        BoundedCache<String, String> cache = new BoundedCache<>(10);
+
+        long started = cache.generation();
+        cache.invalidate("k");
+        cache.put("k", "old", started);
+
+        assertNull(cache.getIfPresent("k"));
+
+        cache.put("k", "new", cache.generation());
+        assertEquals("new", cache.getIfPresent("k"));
+    }
+
+    @Test
+    public void forgottenInvalidationsStillBlockCaching()
+    {
+        BoundedCache<Integer, String> cache = new BoundedCache<>(2);
+
+        cache.get(0, () -> {
+            for (int key = 0; key < 10; key++)
+            {
+                cache.invalidate(key);
+            }
+            return "old";
+        });
+
+        assertNull(cache.getIfPresent(0));
+    }
+
+    private static void await(CountDownLatch latch)
+    {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
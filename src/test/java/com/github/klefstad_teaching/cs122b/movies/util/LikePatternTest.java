@@ -0,0 +1,167 @@
+package com.github.klefstad_teaching.cs122b.movies.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pins the folding and ordering rules the trigram prefilter and the
+ * in-memory catalog rely on to agree with MySQL's
+ * {@code utf8mb4_0900_ai_ci} comparisons.
+ */
+public class LikePatternTest
+{
+    @Test
+    public void foldLowerCasesAndStripsAccents()
+    {
+        assertEquals("amelie", LikePattern.fold("Am\u00e9lie"));
+        assertEquals("pokemon", LikePattern.fold("POK\u00c9MON"));
+        assertEquals("senor", LikePattern.fold("Se\u00f1or"));
+    }
+
+    @Test
+    public void foldUnifiesCompatibilityForms()
+    {
+        assertEquals("abc", LikePattern.fold("\uff21\uff22\uff23"));
+        assertEquals("fin", LikePattern.fold("\ufb01n"));
+    }
+
+    @Test
+    public void foldExpandsLettersTheCollationExpands()
+    {
+        assertEquals("strasse", LikePattern.fold("Stra\u00dfe"));
+        assertEquals("aeon", LikePattern.fold("\u00c6on"));
+        assertEquals("oeuvre", LikePattern.fold("\u0152uvre"));
+        assertEquals("oresund", LikePattern.fold("\u00d8resund"));
+        assertEquals("lodz", LikePattern.fold("\u0141\u00f3d\u017a"));
+    }
+
+    @Test
+    public void foldKeepsNull()
+    {
+        assertNull(LikePattern.fold(null));
+    }
+
+    @Test
+    public void isExactOnlyForAscii()
+    {
+        assertTrue(LikePattern.isExact(LikePattern.fold("Stra\u00dfe")));
+        assertTrue(LikePattern.isExact(""));
+        assertFalse(LikePattern.isExact(LikePattern.fold("\u5343\u3068\u5343\u5c0b")));
+        assertFalse(LikePattern.isExact(LikePattern.fold("\u00de\u00f3r")));
+    }
+
+    @Test
+    public void containsWithoutWildcardsIsALiteral()
+    {
+        LikePattern pattern = LikePattern.contains("Love");
+
+        assertEquals("love", pattern.literal());
+        assertEquals(List.of("love"), pattern.fragments());
+        assertTrue(pattern.matches(LikePattern.fold("Lovely, Still")));
+        assertTrue(pattern.matches(LikePattern.fold("Crazy, Stupid, LOVE.")));
+        assertFalse(pattern.matches(LikePattern.fold("Lov e")));
+        assertFalse(pattern.matches(null));
+    }
+
+    @Test
+    public void containsFoldsTheTerm()
+    {
+        assertTrue(LikePattern.contains("AM\u00c9LIE").matches(LikePattern.fold("Amelie")));
+        assertTrue(LikePattern.contains("strasse").matches(LikePattern.fold("Die Stra\u00dfe")));
+    }
+
+    @Test
+    public void containsHonoursWildcards()
+    {
+        LikePattern pattern = LikePattern.contains("l_ve%ly");
+
+        assertNull(pattern.literal());
+        assertEquals(List.of("l", "ve", "ly"), pattern.fragments());
+        assertTrue(pattern.matches("lovely"));
+        assertTrue(pattern.matches("a live and lonely night"));
+        assertFalse(pattern.matches("lvely"));
+        assertFalse(pattern.matches("love"));
+    }
+
+    @Test
+    public void containsHonoursEscapes()
+    {
+        LikePattern percent = LikePattern.contains("100\\%");
+        assertEquals(List.of("100%"), percent.fragments());
+        assertTrue(percent.matches("100% love"));
+        assertFalse(percent.matches("1000 loves"));
+
+        LikePattern underscore = LikePattern.contains("a\\_b");
+        assertTrue(underscore.matches("xa_bx"));
+        assertFalse(underscore.matches("xacbx"));
+    }
+
+    @Test
+    public void containsTreatsRegexCharactersLiterally()
+    {
+        LikePattern pattern = LikePattern.contains("(500) days%");
+
+        assertTrue(pattern.matches("(500) days of summer"));
+        assertFalse(pattern.matches("500 days of summer"));
+    }
+
+    @Test
+    public void compareSortsPunctuationThenDigitsThenLetters()
+    {
+        assertEquals(List.of("a b", "a-b", "a.b", "a(b", "a&b", "a$b", "a1b", "aab"),
+                     sorted("aab", "a1b", "a$b", "a&b", "a(b", "a.b", "a-b", "a b"));
+    }
+
+    @Test
+    public void compareDoesNotIgnorePunctuation()
+    {
+        assertTrue(LikePattern.compare("a-c", "ab") < 0);
+        assertTrue(LikePattern.compare("x-men", "xa") < 0);
+        assertTrue(LikePattern.compare("o'brien", "ob") < 0);
+    }
+
+    @Test
+    public void compareSortsPrefixFirst()
+    {
+        assertTrue(LikePattern.compare("alien", "aliens") < 0);
+        assertTrue(LikePattern.compare("alien", "alien ") < 0);
+        assertEquals(0, LikePattern.compare("", ""));
+    }
+
+    @Test
+    public void compareEquatesWhatFoldsAlike()
+    {
+        assertEquals(0, LikePattern.compare(LikePattern.fold("Am\u00e9lie"), LikePattern.fold("AMELIE")));
+        assertEquals(0, LikePattern.compare(LikePattern.fold("\u00c6on Flux"), LikePattern.fold("aeon flux")));
+        assertEquals(0, LikePattern.compare(LikePattern.fold("\ufb01nding"), LikePattern.fold("Finding")));
+    }
+
+    @Test
+    public void compareKeepsTypographicMarksWithTheirAsciiForms()
+    {
+        assertTrue(LikePattern.compare("a\u2013b", "a,b") < 0);
+        assertTrue(LikePattern.compare("a-b", "a\u2013b") < 0);
+        assertTrue(LikePattern.compare("a\u2019b", "a(b") < 0);
+        assertTrue(LikePattern.compare("a'b", "a\u2019b") < 0);
+    }
+
+    @Test
+    public void compareSortsOtherScriptsAfterLetters()
+    {
+        assertTrue(LikePattern.compare("zz", LikePattern.fold("\u5343\u3068\u5343\u5c0b")) < 0);
+        assertTrue(LikePattern.compare(LikePattern.fold("\u0391\u03b8\u03ae\u03bd\u03b1"), LikePattern.fold("\u041c\u043e\u0441\u043a\u0432\u0430")) < 0);
+    }
+
+    private static List<String> sorted(String... values)
+    {
+        return Arrays.stream(values).sorted(LikePattern::compare).collect(Collectors.toList());
+    }
+}